@@ -0,0 +1,211 @@
+package no.hvl.past.graph;
+
+import no.hvl.past.graph.elements.Triple;
+import no.hvl.past.names.Name;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * The automorphism group of a graph, i.e. the renamings of nodes and edges that map the graph onto itself,
+ * represented by a stabilizer chain: a sequence of base elements b1 ... bk together with
+ * the orbit of every bi under the automorphisms that fix b1 ... bi-1
+ * and, for every element of such an orbit, an automorphism (fixing b1 ... bi-1) that maps bi onto it.
+ *
+ * Whether two elements lie in the same orbit is decided by comparing the canonical forms (see {@link CanonicalForm})
+ * of the graph with edges subdivided into nodes of their own and the base elements individualized.
+ * Every automorphism is the composition of one automorphism per base element, see {@link #elements()}.
+ */
+public final class AutomorphismGroup {
+
+    private final Name[] elements;
+    private final List<Integer> base = new ArrayList<>();
+    private final List<int[]> orbits = new ArrayList<>();
+    private final List<int[][]> transversals = new ArrayList<>();
+
+    private AutomorphismGroup(Name[] elements) {
+        this.elements = elements;
+    }
+
+    /**
+     * The base elements in the order of the stabilizer chain.
+     */
+    public List<Name> getBase() {
+        List<Name> result = new ArrayList<>();
+        base.forEach(b -> result.add(elements[b]));
+        return result;
+    }
+
+    /**
+     * The orbit of the i-th base element under the automorphisms fixing the base elements before it,
+     * which starts with the base element itself.
+     */
+    public List<Name> basicOrbit(int i) {
+        List<Name> result = new ArrayList<>();
+        for (int element : orbits.get(i)) {
+            result.add(elements[element]);
+        }
+        return result;
+    }
+
+    /**
+     * The number of automorphisms (saturating at {@link Long#MAX_VALUE}).
+     */
+    public long order() {
+        long result = 1;
+        for (int[] orbit : orbits) {
+            if (result > Long.MAX_VALUE / orbit.length) {
+                return Long.MAX_VALUE;
+            }
+            result *= orbit.length;
+        }
+        return result;
+    }
+
+    public boolean isTrivial() {
+        return base.isEmpty();
+    }
+
+    /**
+     * Enumerates all automorphisms lazily as mappings of the names of nodes and edges, starting with the identity.
+     */
+    public Stream<Map<Name, Name>> elements() {
+        Stream<int[]> result = Stream.<int[]>of(identity());
+        for (int level = base.size() - 1; level >= 0; level--) {
+            int[][] transversal = transversals.get(level);
+            result = result.flatMap(g -> Arrays.stream(transversal).map(u -> compose(u, g)));
+        }
+        return result.map(this::toMap);
+    }
+
+    private int[] identity() {
+        int[] result = new int[elements.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = i;
+        }
+        return result;
+    }
+
+    /**
+     * The permutation x -> first(second(x)).
+     */
+    private static int[] compose(int[] first, int[] second) {
+        int[] result = new int[second.length];
+        for (int i = 0; i < second.length; i++) {
+            result[i] = first[second[i]];
+        }
+        return result;
+    }
+
+    private Map<Name, Name> toMap(int[] permutation) {
+        Map<Name, Name> result = new LinkedHashMap<>();
+        for (int i = 0; i < permutation.length; i++) {
+            result.put(elements[i], elements[permutation[i]]);
+        }
+        return result;
+    }
+
+    /**
+     * Computes the automorphism group of the given graph, base elements are chosen in the order of {@link Graph#elements()}.
+     */
+    public static AutomorphismGroup of(Graph graph) {
+        Map<Name, Integer> index = new LinkedHashMap<>();
+        List<Triple> edgeList = new ArrayList<>();
+        graph.elements().forEach(t -> {
+            if (t.isNode()) {
+                index.putIfAbsent(t.getLabel(), index.size());
+            } else {
+                edgeList.add(t);
+            }
+        });
+        for (Triple edge : edgeList) {
+            index.putIfAbsent(edge.getSource(), index.size());
+            index.putIfAbsent(edge.getTarget(), index.size());
+        }
+        int nodeCount = index.size();
+        for (Triple edge : edgeList) {
+            index.putIfAbsent(edge.getLabel(), index.size());
+        }
+        AutomorphismGroup group = new AutomorphismGroup(index.keySet().toArray(new Name[0]));
+        int n = group.elements.length;
+
+        // every edge becomes a node in between its source and target
+        int[] sources = new int[edgeList.size() * 2];
+        int[] targets = new int[edgeList.size() * 2];
+        for (int i = 0; i < edgeList.size(); i++) {
+            Triple edge = edgeList.get(i);
+            int subdivision = index.get(edge.getLabel());
+            sources[2 * i] = index.get(edge.getSource());
+            targets[2 * i] = subdivision;
+            sources[2 * i + 1] = subdivision;
+            targets[2 * i + 1] = index.get(edge.getTarget());
+        }
+        CanonicalForm.Labelling labelling = new CanonicalForm.Labelling(n, sources, targets);
+
+        List<Integer> prefix = new ArrayList<>();
+        for (int candidate = 0; candidate < n; candidate++) {
+            int[] candidateLabels = labelling.compute(individualized(n, nodeCount, prefix, candidate));
+            long[] candidateCode = labelling.code();
+            List<Integer> orbit = new ArrayList<>();
+            List<int[]> transversal = new ArrayList<>();
+            orbit.add(candidate);
+            transversal.add(group.identity());
+            boolean isNode = candidate < nodeCount;
+            for (int other = 0; other < n; other++) {
+                if (other == candidate || (other < nodeCount) != isNode || prefix.contains(other)) {
+                    continue;
+                }
+                int[] otherLabels = labelling.compute(individualized(n, nodeCount, prefix, other));
+                if (Arrays.equals(candidateCode, labelling.code())) {
+                    orbit.add(other);
+                    transversal.add(mapping(candidateLabels, otherLabels));
+                }
+            }
+            if (orbit.size() > 1) {
+                prefix.add(candidate);
+                group.base.add(candidate);
+                group.orbits.add(orbit.stream().mapToInt(Integer::intValue).toArray());
+                group.transversals.add(transversal.toArray(new int[0][]));
+            }
+        }
+        return group;
+    }
+
+    /**
+     * The initial colouring where the prefix and then the given element have colours on their own,
+     * followed by the classes of the remaining nodes and of the remaining (subdivided) edges.
+     */
+    private static int[] individualized(int n, int nodeCount, List<Integer> prefix, int element) {
+        int[] colours = new int[n];
+        int special = prefix.size() + 1;
+        boolean remainingNodes = false;
+        for (int v = 0; v < n; v++) {
+            if (v != element && !prefix.contains(v) && v < nodeCount) {
+                remainingNodes = true;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            colours[v] = v < nodeCount || !remainingNodes ? special : special + 1;
+        }
+        for (int i = 0; i < prefix.size(); i++) {
+            colours[prefix.get(i)] = i;
+        }
+        colours[element] = prefix.size();
+        return colours;
+    }
+
+    /**
+     * The automorphism mapping every element to the element with the same label in the other labelling.
+     */
+    private static int[] mapping(int[] labels, int[] otherLabels) {
+        int[] byLabel = new int[labels.length];
+        for (int v = 0; v < labels.length; v++) {
+            byLabel[otherLabels[v]] = v;
+        }
+        int[] result = new int[labels.length];
+        for (int v = 0; v < labels.length; v++) {
+            result[v] = byLabel[labels[v]];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,194 @@
+package no.hvl.past.graph;
+
+import no.hvl.past.graph.elements.Triple;
+import no.hvl.past.logic.Formula;
+import no.hvl.past.names.Name;
+import no.hvl.past.names.NameDeserializer;
+import no.hvl.past.util.ByteUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Reads graphs, graph morphisms and sketches from a stream that has been written by {@link BinaryGraphWriter}.
+ * The records must be read in the order in which they have been written.
+ *
+ * Since diagram labels are written by their name only, reading sketches requires a function that
+ * resolves label names to the actual labels (e.g. the predicates and operations of a modelling language).
+ */
+public class BinaryGraphReader implements Closeable {
+
+    private final PushbackInputStream stream;
+    private final DataInputStream in;
+    private final Function<Name, Optional<Formula<Graph>>> labels;
+    private final NameDeserializer deserializer = new NameDeserializer();
+    private final List<Name> dictionary = new ArrayList<>();
+    private final List<Graph> readGraphs = new ArrayList<>();
+
+    public BinaryGraphReader(InputStream in) throws IOException {
+        this(in, name -> Optional.empty());
+    }
+
+    public BinaryGraphReader(InputStream in, Function<Name, Optional<Formula<Graph>>> labels) throws IOException {
+        this.stream = new PushbackInputStream(new BufferedInputStream(in));
+        this.in = new DataInputStream(stream);
+        this.labels = labels;
+        if (this.in.readInt() != BinaryGraphWriter.MAGIC) {
+            throw new IOException("Not a binary graph stream");
+        }
+        int version = this.in.readUnsignedByte();
+        if (version != BinaryGraphWriter.VERSION) {
+            throw new IOException("Unsupported binary graph version " + version);
+        }
+    }
+
+    /**
+     * Returns true if there is another record in the stream.
+     */
+    public boolean hasNext() throws IOException {
+        int next = stream.read();
+        if (next < 0) {
+            return false;
+        }
+        stream.unread(next);
+        return true;
+    }
+
+    /**
+     * Reads the next record, which is either a {@link Graph}, a {@link GraphMorphism} or a {@link Sketch}.
+     */
+    public Element read() throws IOException {
+        byte kind = in.readByte();
+        readDictionary();
+        switch (kind) {
+            case BinaryGraphWriter.GRAPH_RECORD:
+                return readGraph(in);
+            case BinaryGraphWriter.MORPHISM_RECORD:
+                return readMorphism(in);
+            case BinaryGraphWriter.SKETCH_RECORD:
+                return readSketch(in);
+            default:
+                throw new IOException("Unknown record kind " + kind);
+        }
+    }
+
+    public Graph readGraph() throws IOException {
+        return expect(Graph.class);
+    }
+
+    public GraphMorphism readMorphism() throws IOException {
+        return expect(GraphMorphism.class);
+    }
+
+    public Sketch readSketch() throws IOException {
+        return expect(Sketch.class);
+    }
+
+    private <E extends Element> E expect(Class<E> type) throws IOException {
+        Element result = read();
+        if (!type.isInstance(result)) {
+            throw new IOException("Expected a " + type.getSimpleName() + " but found " + result.getClass().getSimpleName());
+        }
+        return type.cast(result);
+    }
+
+    private void readDictionary() throws IOException {
+        int count = length(in);
+        byte[] bytes = new byte[length(in)];
+        in.readFully(bytes);
+        try {
+            dictionary.addAll(deserializer.deserialize(ByteBuffer.wrap(bytes), count));
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt name dictionary", e);
+        }
+    }
+
+    private static int length(DataInput data) throws IOException {
+        long value = ByteUtils.readVarLong(data);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Invalid length " + value);
+        }
+        return (int) value;
+    }
+
+    private Name readName(DataInput data) throws IOException {
+        return name(ByteUtils.readVarLong(data));
+    }
+
+    private Name name(long id) throws IOException {
+        if (id < 0 || id >= dictionary.size()) {
+            throw new IOException("Unknown name reference " + id);
+        }
+        return dictionary.get((int) id);
+    }
+
+    private Graph readGraphRef(DataInput data) throws IOException {
+        long ref = ByteUtils.readVarLong(data);
+        if (ref == 0) {
+            return readGraph(data);
+        }
+        if (ref > readGraphs.size()) {
+            throw new IOException("Unknown graph reference " + ref);
+        }
+        return readGraphs.get((int) ref - 1);
+    }
+
+    private Graph readGraph(DataInput data) throws IOException {
+        Name name = readName(data);
+        int count = length(data);
+        Set<Triple> elements = new LinkedHashSet<>();
+        long label = 0;
+        for (int i = 0; i < count; i++) {
+            long head = ByteUtils.readVarLong(data);
+            label += head >>> 1;
+            if ((head & 1) == 1) {
+                elements.add(Triple.node(name(label)));
+            } else {
+                Name source = name(label + ByteUtils.unZigZag(ByteUtils.readVarLong(data)));
+                Name target = name(label + ByteUtils.unZigZag(ByteUtils.readVarLong(data)));
+                elements.add(new Triple(source, name(label), target));
+            }
+        }
+        Graph result = new GraphImpl(name, elements);
+        readGraphs.add(result);
+        return result;
+    }
+
+    private GraphMorphism readMorphism(DataInput data) throws IOException {
+        Name name = readName(data);
+        Graph domain = readGraphRef(data);
+        Graph codomain = readGraphRef(data);
+        int count = length(data);
+        Map<Name, Name> mapping = new LinkedHashMap<>();
+        long from = 0;
+        long to = 0;
+        for (int i = 0; i < count; i++) {
+            from += ByteUtils.readVarLong(data);
+            to += ByteUtils.unZigZag(ByteUtils.readVarLong(data));
+            mapping.put(name(from), name(to));
+        }
+        return new GraphMorphismImpl(name, domain, codomain, mapping);
+    }
+
+    private Sketch readSketch(DataInput data) throws IOException {
+        Name name = readName(data);
+        Graph carrier = readGraphRef(data);
+        int count = length(data);
+        List<Diagram> diagrams = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Name diagramName = readName(data);
+            Name labelName = readName(data);
+            Formula<Graph> label = labels.apply(labelName)
+                    .orElseThrow(() -> new IOException("Unknown diagram label " + labelName.printRaw()));
+            diagrams.add(new DiagramImpl(diagramName, label, readMorphism(data)));
+        }
+        return new DiagrammaticGraph(name, carrier, diagrams);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
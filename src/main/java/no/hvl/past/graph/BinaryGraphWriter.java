@@ -0,0 +1,183 @@
+package no.hvl.past.graph;
+
+import no.hvl.past.graph.elements.Triple;
+import no.hvl.past.graph.elements.Tuple;
+import no.hvl.past.logic.Formula;
+import no.hvl.past.names.Name;
+import no.hvl.past.names.NameSerializer;
+import no.hvl.past.names.NameTable;
+import no.hvl.past.util.ByteUtils;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Writes graphs, graph morphisms and sketches into a compact binary stream,
+ * which can be read with {@link BinaryGraphReader}.
+ *
+ * The stream starts with a magic number and a version followed by a sequence of records.
+ * Every record consists of
+ * <ul>
+ *     <li>its kind (graph, morphism or sketch),</li>
+ *     <li>a name dictionary section with all names that have not been written in a previous record
+ *     (count, byte length and the names as written by {@link NameSerializer}),</li>
+ *     <li>the body, where names are referred to by their position in the dictionary.</li>
+ * </ul>
+ * The dictionary is shared by all records of a stream, thus e.g. the names of a type graph are only written once
+ * for all its instances. Likewise, a graph that has already been written (as a record or as domain/codomain of a morphism)
+ * is only referred to by its position.
+ *
+ * Within a body triples are sorted by their label and stored as the difference to the previous label;
+ * source and target are stored as difference to the label. Mappings are sorted by their domain element
+ * and stored as differences to the previous mapping. All numbers are variable length integers,
+ * so that the typical record only needs a few bytes per triple.
+ */
+public class BinaryGraphWriter implements Closeable, Flushable {
+
+    static final int MAGIC = 0x4D444742; // MDGB
+    static final int VERSION = 1;
+
+    static final byte GRAPH_RECORD = 1;
+    static final byte MORPHISM_RECORD = 2;
+    static final byte SKETCH_RECORD = 3;
+
+    private final DataOutputStream out;
+    private final NameSerializer serializer = new NameSerializer();
+    private final NameTable dictionary = new NameTable();
+    private final Map<Graph, Integer> writtenGraphs = new IdentityHashMap<>();
+    // every written graph gets the next position, even if the same instance has been written before
+    private int graphCount = 0;
+
+    // the state of the record that is currently written
+    private final List<Name> newNames = new ArrayList<>();
+    private int writtenNames = 0;
+
+    public BinaryGraphWriter(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+    }
+
+    public void write(Graph graph) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeGraph(graph, new DataOutputStream(body));
+        writeRecord(GRAPH_RECORD, body);
+    }
+
+    public void write(GraphMorphism morphism) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeMorphism(morphism, new DataOutputStream(body));
+        writeRecord(MORPHISM_RECORD, body);
+    }
+
+    /**
+     * Writes the given sketch.
+     * The labels of the diagrams are written by their names, see {@link BinaryGraphReader}.
+     */
+    public void write(Sketch sketch) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(body);
+        writeName(sketch.getName(), data);
+        writeGraphRef(sketch.carrier(), data);
+        List<Diagram> diagrams = new ArrayList<>();
+        sketch.diagrams().forEach(diagrams::add);
+        ByteUtils.writeVarLong(data, diagrams.size());
+        for (Diagram diagram : diagrams) {
+            writeName(diagram.getName(), data);
+            writeName(labelName(diagram.label()), data);
+            writeMorphism(diagram.binding(), data);
+        }
+        writeRecord(SKETCH_RECORD, body);
+    }
+
+    private static Name labelName(Formula<Graph> label) {
+        if (label instanceof Element) {
+            return ((Element) label).getName();
+        }
+        throw new IllegalArgumentException("The diagram label " + label + " cannot be written since it has no name");
+    }
+
+    private void writeRecord(byte kind, ByteArrayOutputStream body) throws IOException {
+        ByteArrayOutputStream names = new ByteArrayOutputStream();
+        DataOutputStream nameData = new DataOutputStream(names);
+        for (Name n : newNames) {
+            serializer.serialize(n, nameData);
+        }
+        out.writeByte(kind);
+        ByteUtils.writeVarLong(out, newNames.size());
+        ByteUtils.writeVarLong(out, names.size());
+        names.writeTo(out);
+        body.writeTo(out);
+        newNames.clear();
+    }
+
+    private int nameId(Name name) {
+        int id = dictionary.idOf(name);
+        if (id == writtenNames) {
+            newNames.add(name);
+            writtenNames++;
+        }
+        return id;
+    }
+
+    private void writeName(Name name, DataOutput data) throws IOException {
+        ByteUtils.writeVarLong(data, nameId(name));
+    }
+
+    private void writeGraphRef(Graph graph, DataOutput data) throws IOException {
+        Integer ref = writtenGraphs.get(graph);
+        if (ref != null) {
+            ByteUtils.writeVarLong(data, ref + 1);
+        } else {
+            ByteUtils.writeVarLong(data, 0);
+            writeGraph(graph, data);
+        }
+    }
+
+    private void writeGraph(Graph graph, DataOutput data) throws IOException {
+        writeName(graph.getName(), data);
+        List<int[]> triples = new ArrayList<>();
+        graph.elements().forEach(t -> triples.add(new int[]{nameId(t.getLabel()), nameId(t.getSource()), nameId(t.getTarget())}));
+        triples.sort(Comparator.comparingInt(t -> t[0]));
+        ByteUtils.writeVarLong(data, triples.size());
+        int previous = 0;
+        for (int[] t : triples) {
+            boolean isNode = t[1] == t[0] && t[2] == t[0];
+            ByteUtils.writeVarLong(data, ((long) (t[0] - previous) << 1) | (isNode ? 1 : 0));
+            if (!isNode) {
+                ByteUtils.writeVarLong(data, ByteUtils.zigZag(t[1] - t[0]));
+                ByteUtils.writeVarLong(data, ByteUtils.zigZag(t[2] - t[0]));
+            }
+            previous = t[0];
+        }
+        writtenGraphs.put(graph, graphCount++);
+    }
+
+    private void writeMorphism(GraphMorphism morphism, DataOutput data) throws IOException {
+        writeName(morphism.getName(), data);
+        writeGraphRef(morphism.domain(), data);
+        writeGraphRef(morphism.codomain(), data);
+        List<int[]> mappings = new ArrayList<>();
+        morphism.mappings().forEach(t -> mappings.add(new int[]{nameId(t.getDomain()), nameId(t.getCodomain())}));
+        mappings.sort(Comparator.comparingInt(m -> m[0]));
+        ByteUtils.writeVarLong(data, mappings.size());
+        int previousFrom = 0;
+        int previousTo = 0;
+        for (int[] m : mappings) {
+            ByteUtils.writeVarLong(data, m[0] - previousFrom);
+            ByteUtils.writeVarLong(data, ByteUtils.zigZag(m[1] - previousTo));
+            previousFrom = m[0];
+            previousTo = m[1];
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
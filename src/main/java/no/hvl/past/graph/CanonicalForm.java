@@ -0,0 +1,431 @@
+package no.hvl.past.graph;
+
+import no.hvl.past.graph.elements.Triple;
+import no.hvl.past.names.Name;
+import no.hvl.past.util.ByteUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * The canonical form of a graph, which is the same for two graphs if and only if they are isomorphic,
+ * i.e. equal modulo a renaming of nodes and edges.
+ *
+ * The canonical labelling of the nodes is computed by colour refinement (1-dimensional Weisfeiler-Lehman),
+ * where the colour of a node is refined by the multisets of colours of its successors and predecessors
+ * until the partition is stable, and individualization-refinement, which repeatedly picks the first non-singleton colour class,
+ * gives each of its nodes a colour on its own in turn and refines again.
+ * Among the discrete colourings found in this way, the one with the smallest edge list is canonical.
+ * Automorphisms detected on the way are used to skip equivalent branches.
+ *
+ * Two forms are equal if their canonical edge lists are equal, hence the form can be used as key in isomorphism-keyed caches,
+ * additionally every form has a 128-bit hash of the canonical edge list.
+ */
+public final class CanonicalForm {
+
+    private static final long HIGH_SEED = 0x9E3779B97F4A7C15L;
+    private static final long LOW_SEED = 0xC2B2AE3D27D4EB4FL;
+
+    private final Name[] nodes;
+    private final Triple[] edges;
+    private final long[] code;
+    private final long hashHigh;
+    private final long hashLow;
+
+    private CanonicalForm(Name[] nodes, Triple[] edges, long[] code) {
+        this.nodes = nodes;
+        this.edges = edges;
+        this.code = code;
+        byte[] bytes = toBytes(code);
+        this.hashHigh = ByteUtils.hash64(bytes, 0, bytes.length, HIGH_SEED);
+        this.hashLow = ByteUtils.hash64(bytes, 0, bytes.length, LOW_SEED);
+    }
+
+    /**
+     * The elements of the graph in canonical order: first the nodes by canonical label,
+     * then the edges ordered by the canonical labels of their source and target.
+     */
+    public List<Triple> getTriples() {
+        List<Triple> result = new ArrayList<>(nodes.length + edges.length);
+        for (Name node : nodes) {
+            result.add(Triple.node(node));
+        }
+        result.addAll(Arrays.asList(edges));
+        return result;
+    }
+
+    public long getHashHigh() {
+        return hashHigh;
+    }
+
+    public long getHashLow() {
+        return hashLow;
+    }
+
+    /**
+     * The 128-bit canonical hash as 32 hexadecimal digits.
+     */
+    public String hashString() {
+        return String.format("%016x%016x", hashHigh, hashLow);
+    }
+
+    public boolean isIsomorphicTo(CanonicalForm other) {
+        return equals(other);
+    }
+
+    /**
+     * An isomorphism from the graph of this form to the graph of the other form if they are isomorphic,
+     * given as a mapping of the names of nodes and edges.
+     */
+    public Optional<Map<Name, Name>> isomorphism(CanonicalForm other) {
+        if (!isIsomorphicTo(other)) {
+            return Optional.empty();
+        }
+        Map<Name, Name> result = new LinkedHashMap<>();
+        for (int i = 0; i < nodes.length; i++) {
+            result.put(nodes[i], other.nodes[i]);
+        }
+        for (int i = 0; i < edges.length; i++) {
+            result.put(edges[i].getLabel(), other.edges[i].getLabel());
+        }
+        return Optional.of(result);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CanonicalForm)) {
+            return false;
+        }
+        CanonicalForm other = (CanonicalForm) o;
+        return hashHigh == other.hashHigh && hashLow == other.hashLow && Arrays.equals(code, other.code);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(hashLow);
+    }
+
+    @Override
+    public String toString() {
+        return "CanonicalForm(" + nodes.length + " nodes, " + edges.length + " edges, " + hashString() + ")";
+    }
+
+    /**
+     * The code in little endian byte order, the input of the two seeded XXH64 hashes.
+     */
+    private static byte[] toBytes(long[] code) {
+        ByteBuffer buffer = ByteBuffer.allocate(code.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (long value : code) {
+            buffer.putLong(value);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Computes the canonical form of the given graph.
+     * The ends of dangling edges are treated as nodes.
+     */
+    public static CanonicalForm of(Graph graph) {
+        Map<Name, Integer> index = new LinkedHashMap<>();
+        List<Triple> edgeList = new ArrayList<>();
+        graph.elements().forEach(t -> {
+            if (t.isNode()) {
+                index.putIfAbsent(t.getLabel(), index.size());
+            } else {
+                edgeList.add(t);
+            }
+        });
+        for (Triple edge : edgeList) {
+            index.putIfAbsent(edge.getSource(), index.size());
+            index.putIfAbsent(edge.getTarget(), index.size());
+        }
+        Name[] names = index.keySet().toArray(new Name[0]);
+        int[] sources = new int[edgeList.size()];
+        int[] targets = new int[edgeList.size()];
+        for (int i = 0; i < edgeList.size(); i++) {
+            sources[i] = index.get(edgeList.get(i).getSource());
+            targets[i] = index.get(edgeList.get(i).getTarget());
+        }
+        int[] labelling = new Labelling(names.length, sources, targets).compute(new int[names.length]);
+
+        Name[] canonicalNodes = new Name[names.length];
+        for (int v = 0; v < names.length; v++) {
+            canonicalNodes[labelling[v]] = names[v];
+        }
+        Integer[] order = new Integer[edgeList.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> edgeCode(labelling, sources[i], targets[i], names.length)));
+        Triple[] canonicalEdges = new Triple[order.length];
+        long[] code = new long[order.length + 1];
+        code[0] = names.length;
+        for (int i = 0; i < order.length; i++) {
+            canonicalEdges[i] = edgeList.get(order[i]);
+            code[i + 1] = edgeCode(labelling, sources[order[i]], targets[order[i]], names.length);
+        }
+        return new CanonicalForm(canonicalNodes, canonicalEdges, code);
+    }
+
+    private static long edgeCode(int[] labelling, int source, int target, int nodeCount) {
+        return (long) labelling[source] * nodeCount + labelling[target];
+    }
+
+    /**
+     * The search for the canonical labelling over the nodes 0 .. n-1 with the given edges.
+     */
+    static final class Labelling {
+        private final int n;
+        private final int[] sources;
+        private final int[] targets;
+        private final int[][] successors;
+        private final int[][] predecessors;
+        private final List<int[]> automorphisms = new ArrayList<>();
+        private int[] firstLeaf;
+        private long[] firstCode;
+        private int[] bestLeaf;
+        private long[] bestCode;
+        private int[] firstPath;
+
+        Labelling(int n, int[] sources, int[] targets) {
+            this.n = n;
+            this.sources = sources;
+            this.targets = targets;
+            int[] outDegree = new int[n];
+            int[] inDegree = new int[n];
+            for (int i = 0; i < sources.length; i++) {
+                outDegree[sources[i]]++;
+                inDegree[targets[i]]++;
+            }
+            this.successors = new int[n][];
+            this.predecessors = new int[n][];
+            for (int v = 0; v < n; v++) {
+                successors[v] = new int[outDegree[v]];
+                predecessors[v] = new int[inDegree[v]];
+            }
+            for (int i = 0; i < sources.length; i++) {
+                successors[sources[i]][--outDegree[sources[i]]] = targets[i];
+                predecessors[targets[i]][--inDegree[targets[i]]] = sources[i];
+            }
+        }
+
+        /**
+         * Computes the canonical labelling that respects the given initial colouring, whose colours must be ranks 0 .. k-1,
+         * i.e. nodes with smaller colours get smaller labels.
+         */
+        int[] compute(int[] initialColours) {
+            int[] colours = initialColours.clone();
+            firstLeaf = null;
+            automorphisms.clear();
+            refine(colours);
+            search(colours, new int[0]);
+            return bestLeaf;
+        }
+
+        /**
+         * The sorted edge list under the last computed labelling.
+         */
+        long[] code() {
+            return bestCode;
+        }
+
+        /**
+         * Refines the given colouring, whose colours are ranks 0 .. k-1, until it is stable.
+         * The new colours are again ranks, ordered by the old colour first, thus refinement never reorders classes.
+         */
+        private void refine(int[] colours) {
+            int classes = countClasses(colours);
+            while (classes < n) {
+                int[][] signatures = new int[n][];
+                for (int v = 0; v < n; v++) {
+                    int[] signature = new int[2 + successors[v].length + predecessors[v].length];
+                    signature[0] = colours[v];
+                    int k = 1;
+                    for (int w : successors[v]) {
+                        signature[k++] = colours[w];
+                    }
+                    Arrays.sort(signature, 1, k);
+                    signature[k++] = -1;
+                    int start = k;
+                    for (int w : predecessors[v]) {
+                        signature[k++] = colours[w];
+                    }
+                    Arrays.sort(signature, start, k);
+                    signatures[v] = signature;
+                }
+                Integer[] order = new Integer[n];
+                for (int v = 0; v < n; v++) {
+                    order[v] = v;
+                }
+                Arrays.sort(order, (v, w) -> Arrays.compare(signatures[v], signatures[w]));
+                int rank = 0;
+                for (int i = 0; i < n; i++) {
+                    if (i > 0 && Arrays.compare(signatures[order[i - 1]], signatures[order[i]]) != 0) {
+                        rank++;
+                    }
+                    colours[order[i]] = rank;
+                }
+                if (rank + 1 == classes) {
+                    return;
+                }
+                classes = rank + 1;
+            }
+        }
+
+        private int countClasses(int[] colours) {
+            boolean[] used = new boolean[n];
+            int count = 0;
+            for (int colour : colours) {
+                if (!used[colour]) {
+                    used[colour] = true;
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Explores the individualizations below the given (stable) colouring.
+         * Returns the depth to which the search has to return, which is smaller than the current depth
+         * if an automorphism has shown that the remaining branches are equivalent to ones already explored.
+         */
+        private int search(int[] colours, int[] path) {
+            int cell = targetCell(colours);
+            if (cell < 0) {
+                return leaf(colours, path);
+            }
+            List<Integer> explored = new ArrayList<>();
+            for (int v = 0; v < n; v++) {
+                if (colours[v] != cell || isEquivalentToExplored(v, explored, path)) {
+                    continue;
+                }
+                explored.add(v);
+                int[] child = colours.clone();
+                for (int w = 0; w < n; w++) {
+                    if (child[w] > cell || (child[w] == cell && w != v)) {
+                        child[w]++;
+                    }
+                }
+                refine(child);
+                int[] childPath = Arrays.copyOf(path, path.length + 1);
+                childPath[path.length] = v;
+                int jump = search(child, childPath);
+                if (jump < path.length) {
+                    return jump;
+                }
+            }
+            return path.length;
+        }
+
+        /**
+         * The smallest colour with more than one node, -1 if the colouring is discrete.
+         */
+        private int targetCell(int[] colours) {
+            int[] sizes = new int[n];
+            for (int colour : colours) {
+                sizes[colour]++;
+            }
+            for (int colour = 0; colour < n; colour++) {
+                if (sizes[colour] > 1) {
+                    return colour;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Checks whether some automorphism fixing the path maps an explored node onto the given one,
+         * by computing the orbit of the given node under the automorphisms found so far that fix the path.
+         */
+        private boolean isEquivalentToExplored(int v, List<Integer> explored, int[] path) {
+            if (explored.isEmpty() || automorphisms.isEmpty()) {
+                return false;
+            }
+            List<int[]> stabilizing = new ArrayList<>();
+            for (int[] automorphism : automorphisms) {
+                boolean fixes = true;
+                for (int p : path) {
+                    if (automorphism[p] != p) {
+                        fixes = false;
+                        break;
+                    }
+                }
+                if (fixes) {
+                    stabilizing.add(automorphism);
+                }
+            }
+            boolean[] orbit = new boolean[n];
+            Deque<Integer> queue = new ArrayDeque<>();
+            orbit[v] = true;
+            queue.add(v);
+            while (!queue.isEmpty()) {
+                int w = queue.poll();
+                for (int[] automorphism : stabilizing) {
+                    int image = automorphism[w];
+                    if (!orbit[image]) {
+                        orbit[image] = true;
+                        queue.add(image);
+                    }
+                }
+            }
+            for (int e : explored) {
+                if (orbit[e]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int leaf(int[] labelling, int[] path) {
+            long[] code = new long[sources.length];
+            for (int i = 0; i < sources.length; i++) {
+                code[i] = (long) labelling[sources[i]] * n + labelling[targets[i]];
+            }
+            Arrays.sort(code);
+            if (firstLeaf == null) {
+                firstLeaf = labelling;
+                firstCode = code;
+                firstPath = path;
+                bestLeaf = labelling;
+                bestCode = code;
+                return path.length;
+            }
+            if (Arrays.equals(code, firstCode)) {
+                automorphisms.add(automorphism(labelling, firstLeaf));
+                // the branch is equivalent to the first path, return to where it leaves the first path
+                int common = 0;
+                while (common < path.length && common < firstPath.length && path[common] == firstPath[common]) {
+                    common++;
+                }
+                return common;
+            }
+            int comparison = Arrays.compare(code, bestCode);
+            if (comparison == 0) {
+                automorphisms.add(automorphism(labelling, bestLeaf));
+            } else if (comparison < 0) {
+                bestLeaf = labelling;
+                bestCode = code;
+            }
+            return path.length;
+        }
+
+        /**
+         * The automorphism mapping every node to the node with the same label in the other labelling.
+         */
+        private int[] automorphism(int[] labelling, int[] other) {
+            int[] byLabel = new int[n];
+            for (int v = 0; v < n; v++) {
+                byLabel[other[v]] = v;
+            }
+            int[] result = new int[n];
+            for (int v = 0; v < n; v++) {
+                result[v] = byLabel[labelling[v]];
+            }
+            return result;
+        }
+    }
+}
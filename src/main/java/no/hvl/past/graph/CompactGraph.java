@@ -0,0 +1,338 @@
+package no.hvl.past.graph;
+
+import no.hvl.past.graph.elements.Triple;
+import no.hvl.past.names.Name;
+
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A read-optimized, immutable graph for graphs that are built once and queried many times,
+ * e.g. type graphs or loaded instance models.
+ *
+ * All names get a dense id from a graph-local dictionary and the triples are
+ * stored as parallel int arrays over the name ids (the labels come first, thus the
+ * position of a triple is the id of its label).
+ * The dictionary is an array of the names together with an open addressing table
+ * from {@link Name#fingerprint()} to id, i.e. it does not need an object per entry.
+ * Outgoing and incoming adjacency is kept in compressed sparse row (CSR) form, i.e.
+ * an offset array over the name ids pointing into an array of triple positions.
+ * Triple objects are only created when they are handed out.
+ */
+public final class CompactGraph implements Graph, Iterable<Triple> {
+
+    private static final int NONE = -1;
+
+    /**
+     * The names by id and a linear probing table of their fingerprints and ids (NONE for free slots),
+     * which is kept at most three quarters full.
+     * Names are only added while the graph is constructed.
+     */
+    private static final class Dictionary {
+        private Name[] names;
+        private int size = 0;
+        private long[] fingerprints;
+        private int[] slots;
+
+        private Dictionary(int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(8, expectedSize + expectedSize / 3)) << 1;
+            this.names = new Name[Math.max(16, expectedSize)];
+            this.fingerprints = new long[capacity];
+            this.slots = new int[capacity];
+            Arrays.fill(slots, NONE);
+        }
+
+        private Name get(int id) {
+            return names[id];
+        }
+
+        /**
+         * Returns the id of the given name or NONE if it is not in the dictionary.
+         */
+        private int lookup(Name name) {
+            long fingerprint = name.fingerprint();
+            int mask = slots.length - 1;
+            for (int slot = (int) fingerprint & mask; slots[slot] != NONE; slot = (slot + 1) & mask) {
+                if (fingerprints[slot] == fingerprint && names[slots[slot]].equals(name)) {
+                    return slots[slot];
+                }
+            }
+            return NONE;
+        }
+
+        /**
+         * Returns the id of the given name, adding it if necessary.
+         */
+        private int idOf(Name name) {
+            long fingerprint = name.fingerprint();
+            int mask = slots.length - 1;
+            int slot = (int) fingerprint & mask;
+            for (; slots[slot] != NONE; slot = (slot + 1) & mask) {
+                if (fingerprints[slot] == fingerprint && names[slots[slot]].equals(name)) {
+                    return slots[slot];
+                }
+            }
+            if (size == names.length) {
+                names = Arrays.copyOf(names, 2 * names.length);
+            }
+            int id = size++;
+            names[id] = name;
+            fingerprints[slot] = fingerprint;
+            slots[slot] = id;
+            if (4 * size > 3 * slots.length) {
+                rehash();
+            }
+            return id;
+        }
+
+        private void rehash() {
+            long[] oldFingerprints = fingerprints;
+            int[] oldSlots = slots;
+            fingerprints = new long[2 * oldSlots.length];
+            slots = new int[2 * oldSlots.length];
+            Arrays.fill(slots, NONE);
+            int mask = slots.length - 1;
+            for (int old = 0; old < oldSlots.length; old++) {
+                if (oldSlots[old] != NONE) {
+                    int slot = (int) oldFingerprints[old] & mask;
+                    while (slots[slot] != NONE) {
+                        slot = (slot + 1) & mask;
+                    }
+                    slots[slot] = oldSlots[old];
+                    fingerprints[slot] = oldFingerprints[old];
+                }
+            }
+        }
+
+        private void trim() {
+            names = Arrays.copyOf(names, size);
+        }
+    }
+
+    private final Name name;
+    private final Dictionary names;
+
+    // the triples: labels are interned first, thus triple i has the label with id i
+    // and is given by (source[i], i, target[i]).
+    private final int[] source;
+    private final int[] target;
+
+    // CSR adjacency: the triples with source (target) id n are
+    // outTriples[outOffsets[n]] ... outTriples[outOffsets[n + 1] - 1]
+    private final int[] outOffsets;
+    private final int[] outTriples;
+    private final int[] inOffsets;
+    private final int[] inTriples;
+
+    private final int nodeCount;
+
+    private CompactGraph(Name name, Collection<Triple> triples) {
+        this.name = name;
+        this.names = new Dictionary(triples.size());
+        int count = 0;
+        for (Triple t : triples) {
+            if (names.idOf(t.getLabel()) == count) {
+                count++;
+            }
+        }
+        int[] src = new int[count];
+        int[] trg = new int[count];
+        int nodes = 0;
+        int i = 0;
+        for (Triple t : triples) {
+            if (names.lookup(t.getLabel()) == i) {
+                // duplicate labels are dropped, the first triple with a label wins.
+                src[i] = names.idOf(t.getSource());
+                trg[i] = names.idOf(t.getTarget());
+                if (t.isNode()) {
+                    nodes++;
+                }
+                i++;
+            }
+        }
+        this.source = src;
+        this.target = trg;
+        this.nodeCount = nodes;
+        names.trim();
+
+        int nameCount = names.size;
+
+        this.outOffsets = new int[nameCount + 1];
+        this.outTriples = new int[count];
+        buildRows(this.source, this.outOffsets, this.outTriples);
+        this.inOffsets = new int[nameCount + 1];
+        this.inTriples = new int[count];
+        buildRows(this.target, this.inOffsets, this.inTriples);
+    }
+
+    /**
+     * Counting sort of the triple positions by the given key (source or target id).
+     */
+    static void buildRows(int[] key, int[] offsets, int[] rows) {
+        for (int k : key) {
+            offsets[k + 1]++;
+        }
+        for (int n = 1; n < offsets.length; n++) {
+            offsets[n] += offsets[n - 1];
+        }
+        int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+        for (int t = 0; t < key.length; t++) {
+            rows[next[key[t]]++] = t;
+        }
+    }
+
+    private Triple triple(int i) {
+        Name l = names.get(i);
+        if (isNodeTriple(i)) {
+            return Triple.node(l);
+        }
+        return new Triple(names.get(source[i]), l, names.get(target[i]));
+    }
+
+    private boolean isNodeTriple(int i) {
+        return source[i] == i && target[i] == i;
+    }
+
+    private int tripleOf(Name labelName) {
+        int id = names.lookup(labelName);
+        return id < source.length ? id : NONE;
+    }
+
+    private Stream<Triple> row(int[] offsets, int[] rows, Name node) {
+        int id = names.lookup(node);
+        if (id < 0) {
+            return Stream.empty();
+        }
+        return IntStream.range(offsets[id], offsets[id + 1]).mapToObj(p -> triple(rows[p]));
+    }
+
+    /**
+     * The number of triples (nodes and edges) in this graph.
+     */
+    public int size() {
+        return source.length;
+    }
+
+    @Override
+    public Name getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isInfinite() {
+        return false;
+    }
+
+    @Override
+    public Stream<Triple> elements() {
+        return IntStream.range(0, source.length).mapToObj(this::triple);
+    }
+
+    @Override
+    public Iterator<Triple> iterator() {
+        return elements().iterator();
+    }
+
+    @Override
+    public Optional<Triple> get(Name label) {
+        int i = tripleOf(label);
+        return i == NONE ? Optional.empty() : Optional.of(triple(i));
+    }
+
+    @Override
+    public boolean contains(Triple edge) {
+        int i = tripleOf(edge.getLabel());
+        return i != NONE &&
+                names.lookup(edge.getSource()) == source[i] &&
+                names.lookup(edge.getTarget()) == target[i];
+    }
+
+    @Override
+    public boolean containsNode(Name node) {
+        int i = tripleOf(node);
+        return i != NONE && isNodeTriple(i);
+    }
+
+    @Override
+    public boolean isNode(Name name) {
+        return containsNode(name);
+    }
+
+    @Override
+    public boolean isEdge(Name name) {
+        int i = tripleOf(name);
+        return i != NONE && !isNodeTriple(i);
+    }
+
+    @Override
+    public boolean mentions(Name name) {
+        return names.lookup(name) != NONE;
+    }
+
+    @Override
+    public Stream<Name> nodes() {
+        return IntStream.range(0, source.length).filter(this::isNodeTriple).mapToObj(names::get);
+    }
+
+    @Override
+    public Stream<Triple> edges() {
+        return IntStream.range(0, source.length).filter(i -> !isNodeTriple(i)).mapToObj(this::triple);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return source.length == 0;
+    }
+
+    @Override
+    public boolean isDiscrete() {
+        return nodeCount == source.length;
+    }
+
+    @Override
+    public Stream<Triple> outgoing(Name fromNode) {
+        return row(outOffsets, outTriples, fromNode);
+    }
+
+    @Override
+    public Stream<Triple> incoming(Name toNode) {
+        return row(inOffsets, inTriples, toNode);
+    }
+
+    @Override
+    public List<Triple> availableActions(Name current) {
+        int id = names.lookup(current);
+        if (id < 0) {
+            return new ArrayList<>();
+        }
+        List<Triple> result = new ArrayList<>(outOffsets[id + 1] - outOffsets[id]);
+        for (int p = outOffsets[id]; p < outOffsets[id + 1]; p++) {
+            result.add(triple(outTriples[p]));
+        }
+        return result;
+    }
+
+
+    // Factory methods
+
+    /**
+     * Creates a compact graph from the given triples.
+     * As in {@link GraphImpl}, labels are expected to be unique.
+     */
+    public static CompactGraph create(Name name, Collection<Triple> elements) {
+        return new CompactGraph(name, elements);
+    }
+
+    /**
+     * Copies the given graph into a compact representation.
+     */
+    public static CompactGraph materialize(Graph graph) {
+        if (graph instanceof CompactGraph) {
+            return (CompactGraph) graph;
+        }
+        List<Triple> elements = new ArrayList<>();
+        graph.elements().forEach(elements::add);
+        return new CompactGraph(graph.getName(), elements);
+    }
+}
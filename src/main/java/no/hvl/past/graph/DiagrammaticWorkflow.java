@@ -17,6 +17,7 @@ public class DiagrammaticWorkflow implements GraphMorphism {
     private final Map<Diagram, DiagramActivityNode> domainDiagrams;
     private final Map<Name, Name> newMappings;
     private final Set<Triple> newElements;
+    private final InstanceIndex newElementIndex;
     private final ExecutionContext executionContext;
     private boolean isExecuted = false;
 
@@ -59,13 +60,14 @@ public class DiagrammaticWorkflow implements GraphMorphism {
                                     Name src = pullback.getSecond().map(inst.getSource()).orElse(inst.getSource());
                                     Name trg = pullback.getSecond().map(inst.getTarget()).orElse(inst.getTarget());
                                     Triple edge = Triple.edge(src, inst.getLabel(), trg);
-                                    target.newElements.add(edge);
-                                    target.newMappings.put(inst.getLabel(), type.binding().map(triple.getLabel()).get());
+                                    if (!target.morphism.definedAt(edge.getLabel())) {
+                                        // the operation may return edges that have been there before
+                                        target.addNewElement(edge, type.binding().map(triple.getLabel()).get());
+                                    }
                                 } else {
                                     if (!pullback.getRight().definedAt(inst)) {
                                         // only if it is truly new!
-                                        target.newElements.add(inst);
-                                        target.newMappings.put(inst.getLabel(), type.binding().map(triple.getLabel()).get());
+                                        target.addNewElement(inst, type.binding().map(triple.getLabel()).get());
                                     }
                                 }
                             });
@@ -94,6 +96,17 @@ public class DiagrammaticWorkflow implements GraphMorphism {
         this.domainDiagrams = new HashMap<>();
         this.newMappings = new HashMap<>();
         this.newElements = new HashSet<>();
+        this.newElementIndex = new InstanceIndex();
+    }
+
+    /**
+     * Adds an element that has been derived by an operation, it is typed over the given codomain label.
+     */
+    private void addNewElement(Triple element, Name type) {
+        if (this.newElements.add(element)) {
+            this.newElementIndex.add(element, type);
+        }
+        this.newMappings.put(element.getLabel(), type);
     }
 
     public DiagrammaticWorkflow execute() throws GraphError {
@@ -161,6 +174,39 @@ public class DiagrammaticWorkflow implements GraphMorphism {
         }
     }
 
+    /**
+     * Returns true if the given triple is an element of the codomain.
+     */
+    private boolean isType(Triple type) {
+        return codomain().get(type.getLabel()).map(type::equals).orElse(false);
+    }
+
+    // The queries combine the (indexed) instances of the original morphism with the index of the derived elements.
+
+    @Override
+    public Stream<Triple> preimage(Triple to) {
+        if (!isType(to)) {
+            return Stream.empty();
+        }
+        return Stream.concat(morphism.preimage(to), newElementIndex.instances(to.getLabel()));
+    }
+
+    @Override
+    public Stream<Triple> allOutgoingInstances(Triple type, Name src) {
+        if (!isType(type)) {
+            return Stream.empty();
+        }
+        return Stream.concat(morphism.allOutgoingInstances(type, src), newElementIndex.outgoing(type.getLabel(), src));
+    }
+
+    @Override
+    public Stream<Triple> allIncomingInstances(Triple type, Name trg) {
+        if (!isType(type)) {
+            return Stream.empty();
+        }
+        return Stream.concat(morphism.allIncomingInstances(type, trg), newElementIndex.incoming(type.getLabel(), trg));
+    }
+
     @Override
     public Name getName() {
         return name;
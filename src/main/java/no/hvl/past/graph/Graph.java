@@ -7,11 +7,14 @@ import no.hvl.past.logic.Formula;
 import no.hvl.past.logic.Model;
 import no.hvl.past.logic.Signature;
 import no.hvl.past.names.Name;
+import no.hvl.past.searching.ParallelBreadthFirstSearch;
+import no.hvl.past.searching.SearchBudget;
 import no.hvl.past.searching.SearchEngine;
 import no.hvl.past.searching.StateSpace;
 import no.hvl.past.util.StreamExt;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -145,17 +148,30 @@ public interface Graph extends Element, StateSpace<Name, Triple>, Signature, For
 
     /**
      * Checks if there exists a connection between the two given nodes
-     * via searching.
+     * via searching from both ends.
      */
     default boolean existsPath(Name fromNode, Name toNode) {
         if (fromNode.equals(toNode)) {
             return true;
         }
         return new SearchEngine<>(this)
-                .simpleSearch(fromNode, node -> node.equals(toNode))
+                .bidirectionalSearch(fromNode, toNode, SearchBudget.unlimited())
+                .getResult()
                 .isPresent();
     }
 
+    /**
+     * All nodes that can be reached from one of the given nodes (including them),
+     * searching the levels of the breadth first search in parallel.
+     */
+    default Set<Name> reachableNodes(Collection<Name> fromNodes) {
+        return reachableNodes(fromNodes, ForkJoinPool.commonPool());
+    }
+
+    default Set<Name> reachableNodes(Collection<Name> fromNodes, ForkJoinPool pool) {
+        return new ParallelBreadthFirstSearch<>(this, pool).reachable(fromNodes);
+    }
+
     @Override
    default boolean isSyntacticallyCorrect(Model<? extends Signature> model) {
         if (model instanceof GraphMorphism) {
@@ -219,6 +235,24 @@ public interface Graph extends Element, StateSpace<Name, Triple>, Signature, For
         return Optional.empty();
     }
 
+    @Override
+    default boolean isReversible() {
+        return true;
+    }
+
+    @Override
+    default List<Triple> incomingActions(Name current) {
+        return this.incoming(current).collect(Collectors.toList());
+    }
+
+    @Override
+    default Optional<Name> revertAction(Name current, Triple action) {
+        if (action.getTarget().equals(current)) {
+            return Optional.of(action.getSource());
+        }
+        return Optional.empty();
+    }
+
 
     // From Formula
 
@@ -352,4 +386,18 @@ public interface Graph extends Element, StateSpace<Name, Triple>, Signature, For
     default boolean isInvariant(Name node1, Name node2) {
         return node1.equals(node2);
     }
+
+    /**
+     * The canonical form of this graph, which is equal for isomorphic graphs.
+     */
+    default CanonicalForm canonicalForm() {
+        return CanonicalForm.of(this);
+    }
+
+    /**
+     * Returns true if this graph is equal to the other one modulo renaming of nodes and edges.
+     */
+    default boolean isIsomorphicTo(Graph other) {
+        return canonicalForm().isIsomorphicTo(other.canonicalForm());
+    }
 }
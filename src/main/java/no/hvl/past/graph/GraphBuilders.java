@@ -44,7 +44,7 @@ public class GraphBuilders {
     private final List<GraphError.GraphErrorReportDetails> errors = new ArrayList<>();
 
     private final Set<Name> nodeAggregator = new HashSet<>();
-    private final Set<Triple> edgeAggregator = new HashSet<>();
+    private final Set<Triple> edgeAggregator = new LinkedHashSet<>();
     private final List<Graph> graphAggregator = new ArrayList<>();
     private final Map<Name, Name> bindingAggregator = new HashMap<>();
     private final List<GraphMorphism> morphismAggregator = new ArrayList<>();
@@ -156,7 +156,6 @@ public class GraphBuilders {
             }
         }
 
-        elements.addAll(edgeAggregator);
         Graph base = new GraphImpl(name, elements);
         Graph constructed  = base;
         if (!this.bindingAggregator.isEmpty()) {
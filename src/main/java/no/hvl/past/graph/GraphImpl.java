@@ -14,11 +14,50 @@ import java.util.stream.Stream;
 /**
  * A straightforward concrete implementation of an AbstractGraph.
  * It is simply comprised of set of all triples.
+ * Since the set of triples is fixed after construction, the adjacency of every node
+ * (outgoing and incoming triples) is indexed lazily on the first navigational access.
  */
 public class GraphImpl implements StateSpace<Name, Triple>, Graph, Iterable<Triple> {
 
+    /**
+     * Source and target adjacency of all triples together with a separate list of nodes and edges.
+     * It is immutable once built.
+     */
+    private static class AdjacencyIndex {
+        private final Map<Name, List<Triple>> outgoing;
+        private final Map<Name, List<Triple>> incoming;
+        private final List<Name> nodes;
+        private final List<Triple> edges;
+
+        private AdjacencyIndex(Collection<Triple> elements) {
+            this.outgoing = new HashMap<>();
+            this.incoming = new HashMap<>();
+            this.nodes = new ArrayList<>();
+            this.edges = new ArrayList<>();
+            for (Triple t : elements) {
+                this.outgoing.computeIfAbsent(t.getSource(), k -> new ArrayList<>(2)).add(t);
+                this.incoming.computeIfAbsent(t.getTarget(), k -> new ArrayList<>(2)).add(t);
+                if (t.isNode()) {
+                    this.nodes.add(t.getLabel());
+                } else {
+                    this.edges.add(t);
+                }
+            }
+        }
+
+        private Stream<Triple> outgoing(Name node) {
+            return this.outgoing.getOrDefault(node, Collections.emptyList()).stream();
+        }
+
+        private Stream<Triple> incoming(Name node) {
+            return this.incoming.getOrDefault(node, Collections.emptyList()).stream();
+        }
+    }
+
     private final Name name;
     private final Map<Name, Triple> elements;
+    private volatile AdjacencyIndex index;
+    private volatile ReachabilityIndex reachability;
 
     public GraphImpl(Name name, Set<Triple> elements) {
         this.name = name;
@@ -53,7 +92,88 @@ public class GraphImpl implements StateSpace<Name, Triple>, Graph, Iterable<Trip
 
     @Override
     public boolean contains(Triple triple) {
-        return this.elements.containsValue(triple);
+        return triple.equals(this.elements.get(triple.getLabel()));
+    }
+
+    @Override
+    public boolean containsNode(Name node) {
+        Triple t = this.elements.get(node);
+        return t != null && t.isNode();
+    }
+
+    @Override
+    public boolean isNode(Name name) {
+        return containsNode(name);
+    }
+
+    @Override
+    public boolean isEdge(Name name) {
+        Triple t = this.elements.get(name);
+        return t != null && t.isEddge();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.elements.isEmpty();
+    }
+
+    @Override
+    public Stream<Name> nodes() {
+        return getIndex().nodes.stream();
+    }
+
+    @Override
+    public Stream<Triple> edges() {
+        return getIndex().edges.stream();
+    }
+
+    @Override
+    public boolean isDiscrete() {
+        return getIndex().edges.isEmpty();
+    }
+
+    @Override
+    public Stream<Triple> outgoing(Name fromNode) {
+        return getIndex().outgoing(fromNode);
+    }
+
+    @Override
+    public Stream<Triple> incoming(Name toNode) {
+        return getIndex().incoming(toNode);
+    }
+
+    @Override
+    public List<Triple> availableActions(Name current) {
+        return new ArrayList<>(getIndex().outgoing.getOrDefault(current, Collections.emptyList()));
+    }
+
+    /**
+     * Returns the adjacency index, building it on first use.
+     */
+    private AdjacencyIndex getIndex() {
+        AdjacencyIndex result = this.index;
+        if (result == null) {
+            result = new AdjacencyIndex(this.elements.values());
+            this.index = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean existsPath(Name fromNode, Name toNode) {
+        return getReachability().reaches(fromNode, toNode);
+    }
+
+    /**
+     * Returns the reachability index, building it on first use.
+     */
+    private ReachabilityIndex getReachability() {
+        ReachabilityIndex result = this.reachability;
+        if (result == null) {
+            result = ReachabilityIndex.of(this);
+            this.reachability = result;
+        }
+        return result;
     }
 
     @Override
@@ -71,11 +191,11 @@ public class GraphImpl implements StateSpace<Name, Triple>, Graph, Iterable<Trip
     }
 
     public Set<Triple> getEdges() {
-        return edges().collect(Collectors.toSet());
+        return new HashSet<>(getIndex().edges);
     }
 
     public Set<Name> getNodes() {
-        return nodes().collect(Collectors.toSet());
+        return new HashSet<>(getIndex().nodes);
     }
 
 
@@ -143,45 +263,90 @@ public class GraphImpl implements StateSpace<Name, Triple>, Graph, Iterable<Trip
         return result;
     }
 
+    /**
+     * Builds the Hasse diagram of the strict partial order given by the predicate.
+     * All pairs of elements have to be compared, but the transitive reduction afterwards visits the elements
+     * in reverse topological order. This order sorts the elements by the number of elements below them:
+     * every element comes after all elements below it, since it has strictly more elements below it.
+     * The reduction keeps a bitset of everything above every element: an edge to a bigger element is a covering edge
+     * if and only if that element is not above one of the covering edges found before it.
+     */
     private static <E> GraphImpl hasseDiagrammInternal(
             Name resultGraphName,
             Collection<E> elements,
             BiPredicate<E, E> canAddEdge,
             Function<E, Name> nameGiver,
             boolean withTransitive) {
-        Set<Triple> preResult = new HashSet<>();
-        for (E e1 : elements) {
-            for (E e2 : elements) {
-                if (canAddEdge.test(e1, e2)) {
-                    preResult.add(new Triple(nameGiver.apply(e1), nameGiver.apply(e1).subTypeOf(nameGiver.apply(e2)), nameGiver.apply(e2)));
+        List<E> distinct = new ArrayList<>(new LinkedHashSet<>(elements));
+        int n = distinct.size();
+        Name[] names = new Name[n];
+        for (int i = 0; i < n; i++) {
+            names[i] = nameGiver.apply(distinct.get(i));
+        }
+        List<List<Integer>> above = new ArrayList<>(n);
+        int[] below = new int[n];
+        for (int i = 0; i < n; i++) {
+            List<Integer> bigger = new ArrayList<>();
+            for (int j = 0; j < n; j++) {
+                if (i != j && canAddEdge.test(distinct.get(i), distinct.get(j))) {
+                    bigger.add(j);
+                    below[j]++;
                 }
             }
+            above.add(bigger);
         }
         Set<Triple> result = new HashSet<>();
-        elements.stream().map(e -> Triple.node(nameGiver.apply(e))).forEach(result::add);
+        for (Name node : names) {
+            result.add(Triple.node(node));
+        }
         if (withTransitive) {
-            result.addAll(preResult);
-        } else {
-            preResult.stream()
-                    .filter(t ->
-                            elements.stream()
-                                    .map(e -> nameGiver.apply(e))
-                                    .filter(n ->!n.equals(t.getSource()))
-                                    .filter(n ->!n.equals(t.getTarget()))
-                                    .filter(n -> preResult.stream().filter(t2 -> !t2.equals(t)).anyMatch(t2 -> t2.getSource().equals(t.getSource()) && t2.getTarget().equals(n)))
-                                    .noneMatch(n -> preResult.stream().filter(t2 -> !t2.equals(t)).anyMatch(t2 -> t2.getSource().equals(n) && t2.getTarget().equals(t.getTarget())))
-                    )
-                    .forEach(result::add);
+            for (int i = 0; i < n; i++) {
+                for (int j : above.get(i)) {
+                    result.add(hasseEdge(names[i], names[j]));
+                }
+            }
+            return new GraphImpl(resultGraphName, result);
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> below[i]));
+        int[] position = new int[n];
+        for (int k = 0; k < n; k++) {
+            position[order[k]] = k;
+        }
+        BitSet[] reachable = new BitSet[n];
+        for (int k = n - 1; k >= 0; k--) {
+            int i = order[k];
+            BitSet upSet = new BitSet(n);
+            List<Integer> bigger = above.get(i);
+            bigger.sort(Comparator.comparingInt(j -> position[j]));
+            for (int j : bigger) {
+                if (!upSet.get(j)) {
+                    result.add(hasseEdge(names[i], names[j]));
+                    upSet.set(j);
+                    upSet.or(reachable[j]);
+                }
+            }
+            reachable[i] = upSet;
         }
         return new GraphImpl(resultGraphName, result);
     }
 
+    private static Triple hasseEdge(Name lower, Name upper) {
+        return new Triple(lower, lower.subTypeOf(upper), upper);
+    }
+
+    /**
+     * Builds the Hasse diagram of elements that are totally ordered by their natural order.
+     */
     public static <E extends Comparable<E>> GraphImpl hasseDiagramm(
             Name name,
             Collection<E> elements,
             Function<E, Name> nameGiver,
             boolean withTransitive) {
-        return hasseDiagrammInternal(name, elements, (e1, e2) -> e1.compareTo(e2) < 0, nameGiver, withTransitive);
+        return hasseDiagrammOfTotalOrder(name, elements, Comparator.naturalOrder(), nameGiver, withTransitive);
     }
 
     public static <E> GraphImpl hasseDiagramm(
@@ -193,6 +358,36 @@ public class GraphImpl implements StateSpace<Name, Triple>, Graph, Iterable<Trip
         return hasseDiagrammInternal(graphName, elements, (e1, e2) -> comparator.cmp(e1, e2).equals(ProperComparator.CompareResult.LESS_THAN), nameGiver, withTransitive);
     }
 
+    /**
+     * Builds the Hasse diagram for a comparator that is known to be a total order,
+     * which only requires sorting the elements: every element is covered by the elements of the next bigger class of equal elements.
+     */
+    public static <E> GraphImpl hasseDiagrammOfTotalOrder(
+            Name graphName,
+            Collection<E> elements,
+            Comparator<? super E> order,
+            Function<E, Name> nameGiver,
+            boolean withTransitive) {
+        List<E> sorted = new ArrayList<>(new LinkedHashSet<>(elements));
+        sorted.sort(order);
+        Name[] names = new Name[sorted.size()];
+        Set<Triple> result = new HashSet<>();
+        int previousStart = 0;
+        int start = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            if (i > 0 && order.compare(sorted.get(i - 1), sorted.get(i)) != 0) {
+                previousStart = start;
+                start = i;
+            }
+            names[i] = nameGiver.apply(sorted.get(i));
+            result.add(Triple.node(names[i]));
+            for (int j = withTransitive ? 0 : previousStart; j < start; j++) {
+                result.add(hasseEdge(names[j], names[i]));
+            }
+        }
+        return new GraphImpl(graphName, result);
+    }
+
     public static GraphImpl materialize(Graph graph) {
         Name name = graph.getName();
         Set<Triple> elements = new HashSet<>();
@@ -200,4 +395,15 @@ public class GraphImpl implements StateSpace<Name, Triple>, Graph, Iterable<Trip
         return new GraphImpl(name, elements);
     }
 
+    /**
+     * Materializes the given graph, if readOnly is set, the result is a {@link CompactGraph},
+     * which uses considerably less memory but does not expose the mutable-friendly API of GraphImpl.
+     */
+    public static Graph materialize(Graph graph, boolean readOnly) {
+        if (readOnly) {
+            return CompactGraph.materialize(graph);
+        }
+        return materialize(graph);
+    }
+
 }
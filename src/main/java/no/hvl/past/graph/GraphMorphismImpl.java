@@ -6,6 +6,7 @@ import no.hvl.past.names.Name;
 
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 public class GraphMorphismImpl implements GraphMorphism, Iterable<Tuple> {
@@ -15,6 +16,13 @@ public class GraphMorphismImpl implements GraphMorphism, Iterable<Tuple> {
     private final Graph codomain;
     private final Map<Name, Name> mapping;
 
+    /**
+     * The fibres of this morphism, i.e. the inverse of the mapping restricted to the elements of the domain,
+     * grouped by type (= codomain label) as well as by type and source/target, see {@link InstanceIndex}.
+     * It is built on first use and, like the domain graph, it is assumed not to change afterwards.
+     */
+    private volatile InstanceIndex fibres;
+
     public GraphMorphismImpl(Name name, Graph domain, Graph codomain, Map<Name, Name> mapping) {
         this.name = name;
         this.domain = domain;
@@ -68,6 +76,72 @@ public class GraphMorphismImpl implements GraphMorphism, Iterable<Tuple> {
         return Optional.empty();
     }
 
+    private InstanceIndex getFibres() {
+        InstanceIndex result = this.fibres;
+        if (result == null) {
+            InstanceIndex index = new InstanceIndex();
+            domain.elements().forEach(t -> {
+                Name image = mapping.get(t.getLabel());
+                if (image != null) {
+                    index.add(t, image);
+                }
+            });
+            result = index;
+            this.fibres = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the given triple is an element of the codomain,
+     * in which case all instances of its label are mapped to it.
+     */
+    private boolean isType(Triple type) {
+        return codomain.get(type.getLabel()).map(type::equals).orElse(false);
+    }
+
+    @Override
+    public Stream<Triple> preimage(Triple to) {
+        if (isType(to)) {
+            return getFibres().instances(to.getLabel());
+        }
+        return Stream.empty();
+    }
+
+    @Override
+    public Stream<Triple> selectByLabel(Name toLabelName) {
+        if (codomain.get(toLabelName).isPresent()) {
+            return getFibres().instances(toLabelName);
+        }
+        return Stream.empty();
+    }
+
+    @Override
+    public Stream<Triple> allOutgoingInstances(Triple type, Name src) {
+        if (isType(type)) {
+            return getFibres().outgoing(type.getLabel(), src);
+        }
+        return Stream.empty();
+    }
+
+    @Override
+    public Stream<Triple> allIncomingInstances(Triple type, Name trg) {
+        if (isType(type)) {
+            return getFibres().incoming(type.getLabel(), trg);
+        }
+        return Stream.empty();
+    }
+
+    @Override
+    public boolean isMonic() {
+        return codomain.elements().allMatch(t -> preimage(t).limit(2).count() <= 1);
+    }
+
+    @Override
+    public boolean isEpic() {
+        return codomain.elements().allMatch(t -> preimage(t).findAny().isPresent());
+    }
+
     @Override
     public Spliterator<Tuple> spliterator() {
         return this.mapping.entrySet().stream().map(e -> new Tuple(e.getKey(), e.getValue())).collect(Collectors.toSet()).spliterator();
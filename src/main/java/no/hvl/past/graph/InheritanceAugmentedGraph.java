@@ -12,6 +12,7 @@ public class InheritanceAugmentedGraph implements InheritanceGraph {
     private final Graph graph;
     private final Set<Tuple> inheritanceEdges;
     private final Set<Tuple> directInheritanceEdges;
+    private volatile ReachabilityIndex hierarchy;
 
 
     public InheritanceAugmentedGraph(Graph graph, Set<Tuple> inheritanceEdges) {
@@ -26,7 +27,24 @@ public class InheritanceAugmentedGraph implements InheritanceGraph {
         if (subnode.equals(supernode)) {
             return isNode(subnode);
         }
-        return inheritanceEdges.stream().anyMatch(t -> t.getDomain().equals(subnode) && t.getCodomain().equals(supernode));
+        return getHierarchy().reaches(subnode, supernode);
+    }
+
+    /**
+     * Returns the reachability index of the inheritance relation, building it on first use.
+     */
+    private ReachabilityIndex getHierarchy() {
+        ReachabilityIndex result = this.hierarchy;
+        if (result == null) {
+            result = ReachabilityIndex.of(directInheritanceEdges);
+            this.hierarchy = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean existsPath(Name fromNode, Name toNode) {
+        return graph.existsPath(fromNode, toNode);
     }
 
     @Override
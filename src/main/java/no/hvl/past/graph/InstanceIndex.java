@@ -0,0 +1,54 @@
+package no.hvl.past.graph;
+
+import no.hvl.past.graph.elements.Triple;
+import no.hvl.past.names.Name;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * An index over the instances of a typed graph (i.e. the domain elements of a graph morphism),
+ * which groups the instances by their type (the label they are mapped to) and additionally
+ * by type and source as well as by type and target.
+ * Thus, navigating along typed edges, as in {@link GraphMorphism#allOutgoingInstances(Triple, Name)},
+ * costs time proportional to the size of the result.
+ */
+final class InstanceIndex {
+
+    private final Map<Name, List<Triple>> byType = new HashMap<>();
+    private final Map<Name, Map<Name, List<Triple>>> byTypeAndSource = new HashMap<>();
+    private final Map<Name, Map<Name, List<Triple>>> byTypeAndTarget = new HashMap<>();
+
+    /**
+     * Adds the given instance with the given type.
+     */
+    void add(Triple instance, Name type) {
+        byType.computeIfAbsent(type, k -> new ArrayList<>()).add(instance);
+        byTypeAndSource.computeIfAbsent(type, k -> new HashMap<>())
+                .computeIfAbsent(instance.getSource(), k -> new ArrayList<>())
+                .add(instance);
+        byTypeAndTarget.computeIfAbsent(type, k -> new HashMap<>())
+                .computeIfAbsent(instance.getTarget(), k -> new ArrayList<>())
+                .add(instance);
+    }
+
+    Stream<Triple> instances(Name type) {
+        return byType.getOrDefault(type, Collections.emptyList()).stream();
+    }
+
+    Stream<Triple> outgoing(Name type, Name source) {
+        return lookup(byTypeAndSource, type, source);
+    }
+
+    Stream<Triple> incoming(Name type, Name target) {
+        return lookup(byTypeAndTarget, type, target);
+    }
+
+    private static Stream<Triple> lookup(Map<Name, Map<Name, List<Triple>>> index, Name type, Name key) {
+        Map<Name, List<Triple>> buckets = index.get(type);
+        if (buckets == null) {
+            return Stream.empty();
+        }
+        return buckets.getOrDefault(key, Collections.emptyList()).stream();
+    }
+}
@@ -0,0 +1,622 @@
+package no.hvl.past.graph;
+
+import no.hvl.past.graph.elements.Triple;
+import no.hvl.past.names.Name;
+import no.hvl.past.names.NameDeserializer;
+import no.hvl.past.names.NameSerializer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * An immutable graph that lives in a memory-mapped file instead of on the heap.
+ * It is meant for instance graphs that are too big to be loaded into a {@link GraphImpl}.
+ * A graph is written once with {@link #write(Graph, Path)} or, without building it on the heap first,
+ * with a {@link Builder}, and can afterwards be
+ * (re-)opened with {@link #open(Path)} without parsing anything:
+ * the operating system pages in the parts of the file that are actually queried.
+ *
+ * The file has the same structure as a {@link CompactGraph}, i.e. names are given dense ids
+ * (the labels first, thus the position of a triple is the id of its label) and the adjacency
+ * is stored in CSR form. It consists of the following sections:
+ * <ol>
+ *     <li>a fixed header (magic number, version, counts and section positions)</li>
+ *     <li>the name offsets: for each name id the position of its bytes in the name data section</li>
+ *     <li>the triples as fixed-width records (source id, label id, target id)</li>
+ *     <li>the outgoing and the incoming adjacency (offsets over name ids and triple positions)</li>
+ *     <li>an open addressing hash table from {@link Name#fingerprint()} to name id</li>
+ *     <li>the name data, i.e. all names as written by {@link NameSerializer}</li>
+ * </ol>
+ * All numbers are big endian and sections containing longs are 8-byte aligned.
+ *
+ * Names are decoded whenever they are handed out, nothing is cached on the heap.
+ */
+public final class MappedGraph implements Graph, Iterable<Triple> {
+
+    private static final int MAGIC = 0x4D444747; // MDGG
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 72;
+    private static final int NONE = -1;
+
+    private final Region region;
+    private final NameDeserializer deserializer = new NameDeserializer();
+
+    private final int tripleCount;
+    private final int nameCount;
+    private final int nodeCount;
+    private final int hashCapacity;
+
+    private final long nameOffsetsPos;
+    private final long triplesPos;
+    private final long outPos;
+    private final long inPos;
+    private final long hashPos;
+    private final long nameDataPos;
+
+    private final Name name;
+
+    private MappedGraph(Region region) throws IOException {
+        this.region = region;
+        if (region.size < HEADER_SIZE || region.getInt(0) != MAGIC) {
+            throw new IOException("Not a mapped graph file");
+        }
+        if (region.getInt(4) != VERSION) {
+            throw new IOException("Unsupported mapped graph version " + region.getInt(4));
+        }
+        this.tripleCount = region.getInt(8);
+        this.nameCount = region.getInt(12);
+        this.nodeCount = region.getInt(16);
+        this.hashCapacity = region.getInt(20);
+        this.nameOffsetsPos = region.getLong(24);
+        this.triplesPos = region.getLong(32);
+        this.outPos = region.getLong(40);
+        this.inPos = region.getLong(48);
+        this.hashPos = region.getLong(56);
+        this.nameDataPos = region.getLong(64);
+        // the graph name is stored behind all other names
+        this.name = name(nameCount);
+    }
+
+    /**
+     * Maps the given file into memory in chunks, the chunks stay valid until they are garbage collected.
+     */
+    private static final class Region {
+
+        private static final int CHUNK_BITS = 30;
+        private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+
+        private final MappedByteBuffer[] chunks;
+        private final long size;
+
+        private Region(FileChannel channel) throws IOException {
+            this.size = channel.size();
+            int count = (int) ((size + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+            this.chunks = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = (long) i << CHUNK_BITS;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, size - start));
+            }
+        }
+
+        // ints and longs are aligned and thus never cross a chunk boundary
+
+        int getInt(long pos) {
+            return chunks[(int) (pos >>> CHUNK_BITS)].getInt((int) (pos & (CHUNK_SIZE - 1)));
+        }
+
+        long getLong(long pos) {
+            return chunks[(int) (pos >>> CHUNK_BITS)].getLong((int) (pos & (CHUNK_SIZE - 1)));
+        }
+
+        void get(long pos, byte[] target) {
+            int done = 0;
+            while (done < target.length) {
+                MappedByteBuffer chunk = chunks[(int) ((pos + done) >>> CHUNK_BITS)];
+                int offset = (int) ((pos + done) & (CHUNK_SIZE - 1));
+                int n = Math.min(target.length - done, chunk.capacity() - offset);
+                chunk.get(offset, target, done, n);
+                done += n;
+            }
+        }
+    }
+
+    private Name name(int id) {
+        long from = region.getLong(nameOffsetsPos + 8L * id);
+        long to = region.getLong(nameOffsetsPos + 8L * (id + 1));
+        byte[] bytes = new byte[(int) (to - from)];
+        region.get(nameDataPos + from, bytes);
+        return deserializer.deserialize(ByteBuffer.wrap(bytes));
+    }
+
+    private int lookup(Name name) {
+        if (nameCount == 0) {
+            return NONE;
+        }
+        long fingerprint = name.fingerprint();
+        long idsPos = hashPos + 8L * hashCapacity;
+        int mask = hashCapacity - 1;
+        int slot = (int) fingerprint & mask;
+        while (true) {
+            int id = region.getInt(idsPos + 4L * slot);
+            if (id == NONE) {
+                return NONE;
+            }
+            if (region.getLong(hashPos + 8L * slot) == fingerprint && name(id).equals(name)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int sourceOf(int i) {
+        return region.getInt(triplesPos + 12L * i);
+    }
+
+    private int targetOf(int i) {
+        return region.getInt(triplesPos + 12L * i + 8);
+    }
+
+    private boolean isNodeTriple(int i) {
+        return sourceOf(i) == i && targetOf(i) == i;
+    }
+
+    private Triple triple(int i) {
+        Name label = name(i);
+        int src = sourceOf(i);
+        int trg = targetOf(i);
+        if (src == i && trg == i) {
+            return Triple.node(label);
+        }
+        return new Triple(name(src), label, name(trg));
+    }
+
+    private int tripleOf(Name label) {
+        int id = lookup(label);
+        return id < tripleCount ? id : NONE;
+    }
+
+    private Stream<Triple> row(long pos, Name node) {
+        int id = lookup(node);
+        if (id < 0) {
+            return Stream.empty();
+        }
+        long rowsPos = pos + 4L * (nameCount + 1);
+        return IntStream.range(region.getInt(pos + 4L * id), region.getInt(pos + 4L * (id + 1)))
+                .mapToObj(p -> triple(region.getInt(rowsPos + 4L * p)));
+    }
+
+    /**
+     * The number of triples (nodes and edges) in this graph.
+     */
+    public int size() {
+        return tripleCount;
+    }
+
+    @Override
+    public Name getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isInfinite() {
+        return false;
+    }
+
+    @Override
+    public Stream<Triple> elements() {
+        return IntStream.range(0, tripleCount).mapToObj(this::triple);
+    }
+
+    @Override
+    public Iterator<Triple> iterator() {
+        return elements().iterator();
+    }
+
+    @Override
+    public Optional<Triple> get(Name label) {
+        int i = tripleOf(label);
+        return i == NONE ? Optional.empty() : Optional.of(triple(i));
+    }
+
+    @Override
+    public boolean contains(Triple edge) {
+        int i = tripleOf(edge.getLabel());
+        return i != NONE &&
+                lookup(edge.getSource()) == sourceOf(i) &&
+                lookup(edge.getTarget()) == targetOf(i);
+    }
+
+    @Override
+    public boolean containsNode(Name node) {
+        int i = tripleOf(node);
+        return i != NONE && isNodeTriple(i);
+    }
+
+    @Override
+    public boolean isNode(Name name) {
+        return containsNode(name);
+    }
+
+    @Override
+    public boolean isEdge(Name name) {
+        int i = tripleOf(name);
+        return i != NONE && !isNodeTriple(i);
+    }
+
+    @Override
+    public boolean mentions(Name name) {
+        return lookup(name) != NONE;
+    }
+
+    @Override
+    public Stream<Name> nodes() {
+        return IntStream.range(0, tripleCount).filter(this::isNodeTriple).mapToObj(this::name);
+    }
+
+    @Override
+    public Stream<Triple> edges() {
+        return IntStream.range(0, tripleCount).filter(i -> !isNodeTriple(i)).mapToObj(this::triple);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tripleCount == 0;
+    }
+
+    @Override
+    public boolean isDiscrete() {
+        return nodeCount == tripleCount;
+    }
+
+    @Override
+    public Stream<Triple> outgoing(Name fromNode) {
+        return row(outPos, fromNode);
+    }
+
+    @Override
+    public Stream<Triple> incoming(Name toNode) {
+        return row(inPos, toNode);
+    }
+
+    @Override
+    public List<Triple> availableActions(Name current) {
+        List<Triple> result = new ArrayList<>();
+        outgoing(current).forEach(result::add);
+        return result;
+    }
+
+
+    // Factory methods
+
+    /**
+     * Maps the given file, which must have been created with {@link #write(Graph, Path)}, into memory.
+     */
+    public static MappedGraph open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new MappedGraph(new Region(channel));
+        }
+    }
+
+    /**
+     * Writes the given graph into the given file (which is overwritten), such that it can be mapped with {@link #open(Path)}.
+     * As in {@link GraphImpl}, labels are expected to be unique, the first triple with a given label wins.
+     */
+    public static void write(Graph graph, Path file) throws IOException {
+        try (Builder builder = builder(graph.getName(), file)) {
+            Iterator<Triple> iterator = graph.elements().iterator();
+            while (iterator.hasNext()) {
+                builder.add(iterator.next());
+            }
+            builder.finish();
+        }
+    }
+
+    /**
+     * Starts writing a graph with the given name into the given file triple by triple, see {@link Builder}.
+     */
+    public static Builder builder(Name graphName, Path file) throws IOException {
+        return new Builder(graphName, file);
+    }
+
+    /**
+     * Writes a mapped graph without ever having the whole graph on the heap, e.g. while parsing a big instance.
+     *
+     * Names are serialized into a spill file as soon as they are added for the first time and
+     * triples are spilled as records of temporary name ids.
+     * On the heap, there is only an open addressing table from fingerprints to temporary ids (names with the same fingerprint
+     * are compared with their spilled bytes) and the offsets of the spilled names.
+     * {@link #finish()} then assigns the final ids (labels first), builds the adjacency and the hash section in a second pass
+     * over the spilled triples, which needs a few ints per name and triple, and writes the file.
+     * The spill files are created next to the target file and deleted on {@link #close()}.
+     */
+    public static final class Builder implements Closeable {
+
+        private static final int BUFFER_SIZE = 1 << 16;
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private final Name graphName;
+        private final Path file;
+        private final NameSerializer serializer = new NameSerializer();
+
+        private final Path namesFile;
+        private final FileChannel names;
+        private final ByteBuffer nameBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long flushedNames = 0;
+        private long[] nameOffsets = new long[INITIAL_CAPACITY + 1];
+        private int nameCount = 0;
+
+        private long[] fingerprints = new long[2 * INITIAL_CAPACITY];
+        private int[] slots = new int[2 * INITIAL_CAPACITY];
+
+        private final Path triplesFile;
+        private final DataOutputStream triples;
+        private final BitSet labels = new BitSet();
+        private int tripleCount = 0;
+        private int nodeCount = 0;
+        private boolean finished = false;
+
+        private Builder(Name graphName, Path file) throws IOException {
+            this.graphName = graphName;
+            this.file = file;
+            Path directory = file.toAbsolutePath().getParent();
+            String prefix = file.getFileName().toString();
+            this.namesFile = Files.createTempFile(directory, prefix, ".names");
+            this.triplesFile = Files.createTempFile(directory, prefix, ".triples");
+            this.names = FileChannel.open(namesFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.triples = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(triplesFile), BUFFER_SIZE));
+            Arrays.fill(slots, NONE);
+        }
+
+        /**
+         * Adds the given triple, which is ignored if there already is a triple with the same label.
+         */
+        public Builder add(Triple triple) throws IOException {
+            if (finished) {
+                throw new IllegalStateException("The mapped graph has already been written");
+            }
+            int label = idOf(triple.getLabel());
+            if (labels.get(label)) {
+                return this;
+            }
+            labels.set(label);
+            boolean isNode = triple.isNode();
+            triples.writeInt(label);
+            triples.writeInt(isNode ? label : idOf(triple.getSource()));
+            triples.writeInt(isNode ? label : idOf(triple.getTarget()));
+            tripleCount++;
+            if (isNode) {
+                nodeCount++;
+            }
+            return this;
+        }
+
+        /**
+         * Writes the file from the added triples, afterwards it can be opened with {@link MappedGraph#open(Path)}.
+         */
+        public void finish() throws IOException {
+            if (finished) {
+                throw new IllegalStateException("The mapped graph has already been written");
+            }
+            finished = true;
+            flushNames();
+            triples.close();
+
+            // labels get the position of their triple, all other names follow
+            int[] finalId = new int[nameCount];
+            Arrays.fill(finalId, NONE);
+            try (DataInputStream in = spilledTriples()) {
+                for (int i = 0; i < tripleCount; i++) {
+                    finalId[in.readInt()] = i;
+                    in.readInt();
+                    in.readInt();
+                }
+            }
+            int[] temporaryId = new int[nameCount];
+            int next = tripleCount;
+            for (int id = 0; id < nameCount; id++) {
+                if (finalId[id] == NONE) {
+                    finalId[id] = next++;
+                }
+                temporaryId[finalId[id]] = id;
+            }
+            int[] source = new int[tripleCount];
+            int[] target = new int[tripleCount];
+            try (DataInputStream in = spilledTriples()) {
+                for (int i = 0; i < tripleCount; i++) {
+                    in.readInt();
+                    source[i] = finalId[in.readInt()];
+                    target[i] = finalId[in.readInt()];
+                }
+            }
+            int[] outOffsets = new int[nameCount + 1];
+            int[] outRows = new int[tripleCount];
+            CompactGraph.buildRows(source, outOffsets, outRows);
+            int[] inOffsets = new int[nameCount + 1];
+            int[] inRows = new int[tripleCount];
+            CompactGraph.buildRows(target, inOffsets, inRows);
+            // the probing only depends on the fingerprints, thus the table stays valid with the final ids
+            for (int slot = 0; slot < slots.length; slot++) {
+                if (slots[slot] != NONE) {
+                    slots[slot] = finalId[slots[slot]];
+                }
+            }
+            int hashCapacity = slots.length;
+
+            byte[] graphNameBytes = serializer.serialize(graphName);
+            long[] finalOffsets = new long[nameCount + 2];
+            for (int id = 0; id < nameCount; id++) {
+                int temporary = temporaryId[id];
+                finalOffsets[id + 1] = finalOffsets[id] + nameOffsets[temporary + 1] - nameOffsets[temporary];
+            }
+            finalOffsets[nameCount + 1] = finalOffsets[nameCount] + graphNameBytes.length;
+
+            long nameOffsetsPos = HEADER_SIZE;
+            long triplesPos = nameOffsetsPos + 8L * (nameCount + 2);
+            long outPos = triplesPos + 12L * tripleCount;
+            long inPos = outPos + 4L * (nameCount + 1 + tripleCount);
+            long hashPos = align(inPos + 4L * (nameCount + 1 + tripleCount));
+            long nameDataPos = hashPos + 12L * hashCapacity;
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(tripleCount);
+                out.writeInt(nameCount);
+                out.writeInt(nodeCount);
+                out.writeInt(hashCapacity);
+                out.writeLong(nameOffsetsPos);
+                out.writeLong(triplesPos);
+                out.writeLong(outPos);
+                out.writeLong(inPos);
+                out.writeLong(hashPos);
+                out.writeLong(nameDataPos);
+                for (long offset : finalOffsets) {
+                    out.writeLong(offset);
+                }
+                for (int i = 0; i < tripleCount; i++) {
+                    out.writeInt(source[i]);
+                    out.writeInt(i);
+                    out.writeInt(target[i]);
+                }
+                writeInts(out, outOffsets);
+                writeInts(out, outRows);
+                writeInts(out, inOffsets);
+                writeInts(out, inRows);
+                for (long p = inPos + 4L * (nameCount + 1 + tripleCount); p < hashPos; p++) {
+                    out.writeByte(0);
+                }
+                for (long fingerprint : fingerprints) {
+                    out.writeLong(fingerprint);
+                }
+                writeInts(out, slots);
+                for (int id = 0; id < nameCount; id++) {
+                    out.write(bytesOf(temporaryId[id]));
+                }
+                out.write(graphNameBytes);
+            }
+        }
+
+        /**
+         * Deletes the spill files, the target file is only complete if {@link #finish()} has been called before.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                triples.close();
+                names.close();
+            } finally {
+                Files.deleteIfExists(triplesFile);
+                Files.deleteIfExists(namesFile);
+            }
+        }
+
+        private DataInputStream spilledTriples() throws IOException {
+            return new DataInputStream(new BufferedInputStream(Files.newInputStream(triplesFile), BUFFER_SIZE));
+        }
+
+        private int idOf(Name name) throws IOException {
+            long fingerprint = name.fingerprint();
+            byte[] bytes = serializer.serialize(name);
+            int mask = slots.length - 1;
+            int slot = (int) fingerprint & mask;
+            while (slots[slot] != NONE) {
+                if (fingerprints[slot] == fingerprint && Arrays.equals(bytes, bytesOf(slots[slot]))) {
+                    return slots[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            int id = nameCount++;
+            slots[slot] = id;
+            fingerprints[slot] = fingerprint;
+            append(id, bytes);
+            if (2 * nameCount > slots.length) {
+                rehash();
+            }
+            return id;
+        }
+
+        private void append(int id, byte[] bytes) throws IOException {
+            if (id + 2 > nameOffsets.length) {
+                nameOffsets = Arrays.copyOf(nameOffsets, 2 * nameOffsets.length);
+            }
+            nameOffsets[id + 1] = nameOffsets[id] + bytes.length;
+            if (bytes.length > nameBuffer.remaining()) {
+                flushNames();
+            }
+            if (bytes.length > nameBuffer.capacity()) {
+                writeNames(ByteBuffer.wrap(bytes));
+            } else {
+                nameBuffer.put(bytes);
+            }
+        }
+
+        private void flushNames() throws IOException {
+            nameBuffer.flip();
+            writeNames(nameBuffer);
+            nameBuffer.clear();
+        }
+
+        private void writeNames(ByteBuffer bytes) throws IOException {
+            flushedNames += bytes.remaining();
+            while (bytes.hasRemaining()) {
+                names.write(bytes);
+            }
+        }
+
+        /**
+         * The spilled bytes of a name, which is either completely in the buffer or completely in the spill file.
+         */
+        private byte[] bytesOf(int id) throws IOException {
+            long from = nameOffsets[id];
+            byte[] result = new byte[(int) (nameOffsets[id + 1] - from)];
+            if (from >= flushedNames) {
+                System.arraycopy(nameBuffer.array(), (int) (from - flushedNames), result, 0, result.length);
+                return result;
+            }
+            ByteBuffer target = ByteBuffer.wrap(result);
+            while (target.hasRemaining()) {
+                if (names.read(target, from + target.position()) < 0) {
+                    throw new EOFException("The spilled names of " + file + " are truncated");
+                }
+            }
+            return result;
+        }
+
+        private void rehash() {
+            long[] oldFingerprints = fingerprints;
+            int[] oldSlots = slots;
+            fingerprints = new long[2 * oldSlots.length];
+            slots = new int[2 * oldSlots.length];
+            Arrays.fill(slots, NONE);
+            int mask = slots.length - 1;
+            for (int old = 0; old < oldSlots.length; old++) {
+                if (oldSlots[old] != NONE) {
+                    int slot = (int) oldFingerprints[old] & mask;
+                    while (slots[slot] != NONE) {
+                        slot = (slot + 1) & mask;
+                    }
+                    slots[slot] = oldSlots[old];
+                    fingerprints[slot] = oldFingerprints[old];
+                }
+            }
+        }
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int v : values) {
+            out.writeInt(v);
+        }
+    }
+}
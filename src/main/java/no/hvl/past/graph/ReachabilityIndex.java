@@ -0,0 +1,287 @@
+package no.hvl.past.graph;
+
+import no.hvl.past.graph.elements.Tuple;
+import no.hvl.past.names.Name;
+
+import java.util.*;
+
+/**
+ * A precomputed index answering whether there is a directed path from one node to another.
+ *
+ * The strongly connected components are collapsed first (Tarjan), which yields a DAG whose components are numbered
+ * such that every edge leads from a higher to a lower number.
+ * For up to {@link #BITSET_LIMIT} components, the transitive closure is stored as one bitset per component,
+ * i.e. every query is a single bit test.
+ * For larger graphs, every component is labelled with the pre-order interval of a spanning forest:
+ * the interval of a component contains the interval of every component below it in the forest,
+ * which answers all queries on tree shaped hierarchies and the majority on DAGs in constant time.
+ * The remaining queries fall back to a depth first search that is pruned by the component numbering.
+ *
+ * The index is a snapshot of the graph it was built from and has to be rebuilt when the graph changes.
+ */
+public final class ReachabilityIndex {
+
+    /**
+     * The maximal number of components for which the transitive closure is materialized.
+     */
+    static final int BITSET_LIMIT = 4096;
+
+    private final Map<Name, Integer> component;
+    private final int[][] successors;
+    private final long[][] closure;
+    private final int[] pre;
+    private final int[] post;
+
+    private ReachabilityIndex(Map<Name, Integer> nodes, int[][] adjacency) {
+        this.component = new HashMap<>();
+        int[] componentOf = new int[adjacency.length];
+        int count = components(adjacency, componentOf);
+        for (Map.Entry<Name, Integer> entry : nodes.entrySet()) {
+            this.component.put(entry.getKey(), componentOf[entry.getValue()]);
+        }
+        this.successors = condense(adjacency, componentOf, count);
+        if (count <= BITSET_LIMIT) {
+            this.closure = closure(successors);
+            this.pre = null;
+            this.post = null;
+        } else {
+            this.closure = null;
+            this.pre = new int[count];
+            this.post = new int[count];
+            label();
+        }
+    }
+
+    /**
+     * Builds the index for the edges of the given graph.
+     */
+    public static ReachabilityIndex of(Graph graph) {
+        Map<Name, Integer> nodes = new HashMap<>();
+        List<int[]> edges = new ArrayList<>();
+        graph.nodes().forEach(n -> nodes.putIfAbsent(n, nodes.size()));
+        graph.edges().forEach(t -> edges.add(new int[]{id(nodes, t.getSource()), id(nodes, t.getTarget())}));
+        return new ReachabilityIndex(nodes, adjacency(nodes.size(), edges));
+    }
+
+    /**
+     * Builds the index for the relation given by the pairs, e.g. the direct inheritances of an {@link InheritanceGraph}.
+     */
+    public static ReachabilityIndex of(Collection<Tuple> pairs) {
+        Map<Name, Integer> nodes = new HashMap<>();
+        List<int[]> edges = new ArrayList<>();
+        for (Tuple pair : pairs) {
+            edges.add(new int[]{id(nodes, pair.getDomain()), id(nodes, pair.getCodomain())});
+        }
+        return new ReachabilityIndex(nodes, adjacency(nodes.size(), edges));
+    }
+
+    /**
+     * Returns true if there is a path (possibly of length zero) from the first to the second node.
+     * Nodes that are unknown to the index are not connected to any other node.
+     */
+    public boolean reaches(Name from, Name to) {
+        if (from.equals(to)) {
+            return true;
+        }
+        Integer source = component.get(from);
+        Integer target = component.get(to);
+        if (source == null || target == null) {
+            return false;
+        }
+        return reaches(source, target);
+    }
+
+    private boolean reaches(int source, int target) {
+        if (source == target) {
+            return true;
+        }
+        if (source < target) {
+            return false;
+        }
+        if (closure != null) {
+            return (closure[source][target >>> 6] & (1L << target)) != 0;
+        }
+        if (encloses(source, target)) {
+            return true;
+        }
+        BitSet visited = new BitSet(successors.length);
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(source);
+        visited.set(source);
+        while (!stack.isEmpty()) {
+            int current = stack.pop();
+            for (int next : successors[current]) {
+                if (next == target || (next > target && encloses(next, target))) {
+                    return true;
+                }
+                if (next > target && !visited.get(next)) {
+                    visited.set(next);
+                    stack.push(next);
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean encloses(int outer, int inner) {
+        return pre[outer] <= pre[inner] && pre[inner] <= post[outer];
+    }
+
+    private static int id(Map<Name, Integer> nodes, Name node) {
+        return nodes.computeIfAbsent(node, k -> nodes.size());
+    }
+
+    private static int[][] adjacency(int size, List<int[]> edges) {
+        int[] degree = new int[size];
+        for (int[] edge : edges) {
+            degree[edge[0]]++;
+        }
+        int[][] result = new int[size][];
+        for (int v = 0; v < size; v++) {
+            result[v] = new int[degree[v]];
+            degree[v] = 0;
+        }
+        for (int[] edge : edges) {
+            result[edge[0]][degree[edge[0]]++] = edge[1];
+        }
+        return result;
+    }
+
+    /**
+     * Tarjan's algorithm without recursion, components are numbered in the order they are completed,
+     * i.e. in reverse topological order. Returns the number of components.
+     */
+    private static int components(int[][] adjacency, int[] componentOf) {
+        int n = adjacency.length;
+        int[] order = new int[n];
+        int[] low = new int[n];
+        int[] nextEdge = new int[n];
+        int[] stack = new int[n];
+        int[] callStack = new int[n];
+        boolean[] onStack = new boolean[n];
+        Arrays.fill(order, -1);
+        int counter = 0;
+        int count = 0;
+        int sp = 0;
+        for (int root = 0; root < n; root++) {
+            if (order[root] >= 0) {
+                continue;
+            }
+            int csp = 0;
+            callStack[csp++] = root;
+            order[root] = low[root] = counter++;
+            stack[sp++] = root;
+            onStack[root] = true;
+            while (csp > 0) {
+                int v = callStack[csp - 1];
+                if (nextEdge[v] < adjacency[v].length) {
+                    int w = adjacency[v][nextEdge[v]++];
+                    if (order[w] < 0) {
+                        order[w] = low[w] = counter++;
+                        stack[sp++] = w;
+                        onStack[w] = true;
+                        callStack[csp++] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], order[w]);
+                    }
+                } else {
+                    csp--;
+                    if (csp > 0) {
+                        int parent = callStack[csp - 1];
+                        low[parent] = Math.min(low[parent], low[v]);
+                    }
+                    if (low[v] == order[v]) {
+                        int w;
+                        do {
+                            w = stack[--sp];
+                            onStack[w] = false;
+                            componentOf[w] = count;
+                        } while (w != v);
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int[][] condense(int[][] adjacency, int[] componentOf, int count) {
+        List<Set<Integer>> result = new ArrayList<>(count);
+        for (int c = 0; c < count; c++) {
+            result.add(new LinkedHashSet<>());
+        }
+        for (int v = 0; v < adjacency.length; v++) {
+            for (int w : adjacency[v]) {
+                if (componentOf[v] != componentOf[w]) {
+                    result.get(componentOf[v]).add(componentOf[w]);
+                }
+            }
+        }
+        int[][] successors = new int[count][];
+        for (int c = 0; c < count; c++) {
+            successors[c] = result.get(c).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return successors;
+    }
+
+    /**
+     * Successors have lower numbers, so their closure is complete when a component is visited.
+     */
+    private static long[][] closure(int[][] successors) {
+        int words = (successors.length + 63) >>> 6;
+        long[][] result = new long[successors.length][];
+        for (int c = 0; c < successors.length; c++) {
+            long[] row = new long[words];
+            for (int next : successors[c]) {
+                row[next >>> 6] |= 1L << next;
+                long[] below = result[next];
+                for (int i = 0; i < words; i++) {
+                    row[i] |= below[i];
+                }
+            }
+            result[c] = row;
+        }
+        return result;
+    }
+
+    /**
+     * Labels the components with the pre-order intervals of a depth first spanning forest, starting at the sources of the DAG.
+     */
+    private void label() {
+        int count = successors.length;
+        boolean[] hasPredecessor = new boolean[count];
+        for (int[] next : successors) {
+            for (int c : next) {
+                hasPredecessor[c] = true;
+            }
+        }
+        boolean[] visited = new boolean[count];
+        int[] stack = new int[count];
+        int[] nextEdge = new int[count];
+        int counter = 0;
+        // sources have the highest numbers
+        for (int root = count - 1; root >= 0; root--) {
+            if (hasPredecessor[root]) {
+                continue;
+            }
+            int sp = 0;
+            stack[sp++] = root;
+            visited[root] = true;
+            pre[root] = counter++;
+            while (sp > 0) {
+                int c = stack[sp - 1];
+                if (nextEdge[c] < successors[c].length) {
+                    int next = successors[c][nextEdge[c]++];
+                    if (!visited[next]) {
+                        visited[next] = true;
+                        pre[next] = counter++;
+                        stack[sp++] = next;
+                    }
+                } else {
+                    post[c] = counter - 1;
+                    sp--;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package no.hvl.past.graph.matching;
+
+import no.hvl.past.graph.Graph;
+import no.hvl.past.graph.elements.Triple;
+import no.hvl.past.names.Name;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Narrows down the candidates for the elements of a pattern graph before the actual search starts.
+ *
+ * Candidates are pruned in two ways:
+ * <ul>
+ *     <li>by their degree signature (number of outgoing, incoming edges and loops),
+ *     which must be able to accommodate the signature of the pattern node,</li>
+ *     <li>by refinement: a node candidate must be the source (target) of some candidate of every outgoing (incoming) pattern edge
+ *     and an edge candidate must connect candidates of the source and target of the pattern edge.
+ *     For typed matches, where candidates are the instances of the pattern elements,
+ *     this demands that a node has an incident edge for every incident edge type of the pattern.</li>
+ * </ul>
+ * Both only remove candidates that cannot be part of any match.
+ */
+class CandidateFilter {
+
+    /**
+     * The degree signature of a node, loops are not counted as outgoing or incoming edges.
+     */
+    private static class Signature {
+        private int out;
+        private int in;
+        private int loops;
+
+        /**
+         * Returns true if a node with this signature may be matched with a node of the given signature.
+         */
+        private boolean fitsInto(Signature other, boolean injective) {
+            if (injective) {
+                // distinct edges must go to distinct edges, and the image of a proper edge is a proper edge
+                return out <= other.out && in <= other.in && loops <= other.loops;
+            }
+            // edges may be identified, proper edges may become loops
+            return (out == 0 || other.out + other.loops > 0)
+                    && (in == 0 || other.in + other.loops > 0)
+                    && (loops == 0 || other.loops > 0);
+        }
+    }
+
+    private static final Signature ISOLATED = new Signature();
+
+    private final boolean injective;
+    private final Map<Name, Set<Triple>> nodeCandidates = new LinkedHashMap<>();
+    private final Map<Triple, Set<Triple>> edgeCandidates = new LinkedHashMap<>();
+
+    CandidateFilter(boolean injective) {
+        this.injective = injective;
+    }
+
+    void addNode(Name patternNode, Set<Triple> candidates) {
+        nodeCandidates.put(patternNode, new HashSet<>(candidates));
+    }
+
+    void addEdge(Triple patternEdge, Set<Triple> candidates) {
+        edgeCandidates.put(patternEdge, new HashSet<>(candidates));
+    }
+
+    Set<Triple> nodeCandidates(Name patternNode) {
+        return nodeCandidates.get(patternNode);
+    }
+
+    Set<Triple> edgeCandidates(Triple patternEdge) {
+        return edgeCandidates.get(patternEdge);
+    }
+
+    private static Map<Name, Signature> signatures(Stream<Triple> edges) {
+        Map<Name, Signature> result = new HashMap<>();
+        edges.forEach(t -> {
+            if (t.getSource().equals(t.getTarget())) {
+                result.computeIfAbsent(t.getSource(), x -> new Signature()).loops++;
+            } else {
+                result.computeIfAbsent(t.getSource(), x -> new Signature()).out++;
+                result.computeIfAbsent(t.getTarget(), x -> new Signature()).in++;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Removes all candidates whose degree signature in the host graph does not fit the one in the pattern graph.
+     */
+    void filterBySignature(Graph pattern, Graph host) {
+        Map<Name, Signature> patternSignatures = signatures(pattern.edges());
+        Map<Name, Signature> hostSignatures = signatures(host.edges());
+        nodeCandidates.forEach((node, candidates) -> {
+            Signature signature = patternSignatures.getOrDefault(node, ISOLATED);
+            candidates.removeIf(c -> !signature.fitsInto(hostSignatures.getOrDefault(c.getLabel(), ISOLATED), injective));
+        });
+        edgeCandidates.forEach((edge, candidates) -> {
+            if (edge.getSource().equals(edge.getTarget())) {
+                candidates.removeIf(c -> !c.getSource().equals(c.getTarget()));
+            } else if (injective) {
+                candidates.removeIf(c -> c.getSource().equals(c.getTarget()));
+            }
+        });
+    }
+
+    /**
+     * Removes candidates that are not supported by the candidates of the incident elements until nothing changes anymore.
+     * If some pattern element has no candidate left, there is no match.
+     */
+    void refine() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<Triple, Set<Triple>> entry : edgeCandidates.entrySet()) {
+                Set<Triple> sources = nodeCandidates.get(entry.getKey().getSource());
+                Set<Triple> targets = nodeCandidates.get(entry.getKey().getTarget());
+                if (sources == null || targets == null) {
+                    continue;
+                }
+                Set<Triple> candidates = entry.getValue();
+                changed |= candidates.removeIf(c -> !sources.contains(Triple.node(c.getSource())) || !targets.contains(Triple.node(c.getTarget())));
+                Set<Name> usedSources = new HashSet<>();
+                Set<Name> usedTargets = new HashSet<>();
+                for (Triple c : candidates) {
+                    usedSources.add(c.getSource());
+                    usedTargets.add(c.getTarget());
+                }
+                changed |= sources.removeIf(n -> !usedSources.contains(n.getLabel()));
+                changed |= targets.removeIf(n -> !usedTargets.contains(n.getLabel()));
+            }
+        }
+    }
+}
@@ -5,15 +5,22 @@ import no.hvl.past.graph.*;
 import no.hvl.past.graph.elements.Triple;
 import no.hvl.past.names.Name;
 import no.hvl.past.searching.CSPSolver;
+import no.hvl.past.searching.SearchBudget;
+import no.hvl.past.searching.SearchResult;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Searches for matches between two graphs by translating
  * it into a CSP and using the basic builtin solver.
+ * The searches can be limited by a {@link SearchBudget}, in which case they report the matches found so far.
+ * If the pattern is symmetric, the search can be restricted to one representative per class of matches
+ * that only differ by an automorphism of the pattern, see {@link #breakSymmetries(boolean)}.
  */
-public class GraphMatcher {
+public class GraphMatcher implements AutoCloseable {
 
     private static abstract class GraphMatchingVar implements CSPSolver.Variable<Triple> {
         private final Name name;
@@ -93,53 +100,79 @@ public class GraphMatcher {
         }
     }
 
-    private CSPSolver<Triple, GraphMatchingVar> turnIntoCSPProblem(GraphMorphism morphism) {
-        Map<Name, GraphMatchingVar> variables = new HashMap<>();
-        Set<CSPSolver.BinaryConstraint<Triple>> constraints = new HashSet<>();
-        Set<CSPSolver.AllDiffConstraint<Triple>> allDiffConstraints = new HashSet<>();
+    /**
+     * Demands that the image of a base element of the pattern's automorphism group
+     * comes before the images of the other elements in its orbit (in the order of the host elements).
+     */
+    private static class SymmetryBreaking implements CSPSolver.BinaryConstraint<Triple> {
+        private final GraphMatchingVar base;
+        private final GraphMatchingVar other;
+        private final Map<Triple, Integer> order;
+        private final boolean strict;
+
+        SymmetryBreaking(GraphMatchingVar base, GraphMatchingVar other, Map<Triple, Integer> order, boolean strict) {
+            this.base = base;
+            this.other = other;
+            this.order = order;
+            this.strict = strict;
+        }
+
+        @Override
+        public CSPSolver.Variable<Triple> lhs() {
+            return base;
+        }
+
+        @Override
+        public CSPSolver.Variable<Triple> rhs() {
+            return other;
+        }
 
+        @Override
+        public boolean satisfied(Triple lhs, Triple rhs) {
+            int comparison = Integer.compare(order.get(lhs), order.get(rhs));
+            return strict ? comparison < 0 : comparison <= 0;
+        }
+    }
+
+    private CSPSolver<Triple, GraphMatchingVar> turnIntoCSPProblem(GraphMorphism morphism) {
+        CandidateFilter filter = new CandidateFilter(injectiveOnly);
         morphism.codomain()
                 .nodes()
-                .forEach(n -> variables.put(n, new NodeVar(
-                        n,
-                        morphism.allNodeInstances(n)
-                                .map(Triple::node)
-                                .collect(Collectors.toSet()))));
-
+                .forEach(n -> filter.addNode(n, morphism.allNodeInstances(n)
+                        .map(Triple::node)
+                        .collect(Collectors.toSet())));
         morphism.codomain()
                 .edges()
-                .forEach(t -> {
-                    NodeVar sourceVar = (NodeVar) variables.get(t.getSource());
-                    NodeVar targetVar = (NodeVar) variables.get(t.getTarget());
-
-                    EdgeVar edgeVar = new EdgeVar(
-                            t.getLabel(),
-                            morphism.allInstances(t)
-                                    .collect(Collectors.toSet()));
-
-                    constraints.add(new SrcIncidence(edgeVar, sourceVar, morphism.domain()));
-                    constraints.add(new TrgIncidence(edgeVar, targetVar, morphism.domain()));
-                    variables.put(t.getLabel(), edgeVar);
-                });
+                .forEach(t -> filter.addEdge(t, morphism.allInstances(t).collect(Collectors.toSet())));
+        filter.filterBySignature(morphism.codomain(), morphism.domain());
+        filter.refine();
+        return turnIntoCSPProblem(morphism.codomain(), morphism.domain(), filter);
+    }
 
-        if (injectiveOnly) {
-            allDiffConstraints.add(new CSPSolver.AllDiffConstraint<>(variables.values().stream().filter(v -> v instanceof NodeVar).collect(Collectors.toList())));
-            allDiffConstraints.add(new CSPSolver.AllDiffConstraint<>(variables.values().stream().filter(v -> v instanceof EdgeVar).collect(Collectors.toList())));
-        }
+    private CSPSolver<Triple, GraphMatchingVar> turnIntoCSPProblem(Graph pattern, Graph in) {
+        CandidateFilter filter = new CandidateFilter(injectiveOnly);
+        Set<Triple> hostNodes = in.elements().filter(Triple::isNode).collect(Collectors.toSet());
+        Set<Triple> hostEdges = in.elements().filter(Triple::isEddge).collect(Collectors.toSet());
+        pattern.nodes().forEach(n -> filter.addNode(n, hostNodes));
+        pattern.edges().forEach(t -> filter.addEdge(t, hostEdges));
+        filter.filterBySignature(pattern, in);
+        filter.refine();
+        return turnIntoCSPProblem(pattern, in, filter, symmetryBreaking ? automorphisms(pattern) : null);
+    }
 
-        return CSPSolver.createProblem(new HashSet<>(variables.values()), constraints, allDiffConstraints);
+    private CSPSolver<Triple, GraphMatchingVar> turnIntoCSPProblem(Graph pattern, Graph in, CandidateFilter filter) {
+        return turnIntoCSPProblem(pattern, in, filter, null);
     }
 
-    private CSPSolver<Triple, GraphMatchingVar> turnIntoCSPProblem(Graph pattern, Graph in) {
+    private CSPSolver<Triple, GraphMatchingVar> turnIntoCSPProblem(Graph pattern, Graph in, CandidateFilter filter, AutomorphismGroup symmetries) {
         Map<Name, GraphMatchingVar> variables = new HashMap<>();
         Set<CSPSolver.BinaryConstraint<Triple>> constraints = new HashSet<>();
         Set<CSPSolver.AllDiffConstraint<Triple>> allDiffConstraints = new HashSet<>();
-        pattern.elements().filter(Triple::isNode).forEach(t ->
-                variables.put(t.getLabel(), new NodeVar(t.getLabel(), in.elements().filter(Triple::isNode).collect(Collectors.toSet()))));
-        pattern.elements().filter(Triple::isEddge).forEach(t -> {
+        pattern.nodes().forEach(n -> variables.put(n, new NodeVar(n, filter.nodeCandidates(n))));
+        pattern.edges().forEach(t -> {
             NodeVar sourceVar = (NodeVar) variables.get(t.getSource());
             NodeVar targetVar = (NodeVar) variables.get(t.getTarget());
-            EdgeVar edgeVar = new EdgeVar(t.getLabel(), in.elements().filter(Triple::isEddge).collect(Collectors.toSet()));
+            EdgeVar edgeVar = new EdgeVar(t.getLabel(), filter.edgeCandidates(t));
             constraints.add(new SrcIncidence(edgeVar, sourceVar, in));
             constraints.add(new TrgIncidence(edgeVar, targetVar, in));
             variables.put(t.getLabel(), edgeVar);
@@ -148,6 +181,19 @@ public class GraphMatcher {
             allDiffConstraints.add(new CSPSolver.AllDiffConstraint<>(variables.values().stream().filter(v -> v instanceof NodeVar).collect(Collectors.toList())));
             allDiffConstraints.add(new CSPSolver.AllDiffConstraint<>(variables.values().stream().filter(v -> v instanceof EdgeVar).collect(Collectors.toList())));
         }
+        if (symmetries != null && !symmetries.isTrivial()) {
+            Map<Triple, Integer> order = new HashMap<>();
+            in.elements().forEach(t -> order.putIfAbsent(t, order.size()));
+            for (int i = 0; i < symmetries.getBase().size(); i++) {
+                List<Name> orbit = symmetries.basicOrbit(i);
+                GraphMatchingVar base = variables.get(orbit.get(0));
+                for (Name other : orbit.subList(1, orbit.size())) {
+                    if (base != null && variables.containsKey(other)) {
+                        constraints.add(new SymmetryBreaking(base, variables.get(other), order, injectiveOnly));
+                    }
+                }
+            }
+        }
         return CSPSolver.createProblem(new HashSet<>(variables.values()), constraints, allDiffConstraints);
     }
 
@@ -161,26 +207,158 @@ public class GraphMatcher {
 
     }
 
+    private GraphMorphism turnIntoMorphism(Map<Name, Name> match, Graph domain, Graph codomain) throws GraphError {
+        GraphBuilders builder = new GraphBuilders(executionContext.universe(), false, true)
+                .domain(domain)
+                .codomain(codomain)
+                .setRegisterResults(false);
+        match.forEach(builder::map);
+        return builder.morphism(nextName()).getResult(GraphMorphism.class);
+
+    }
+
     private Name nextName() {
         return Name.identifier("match" + (counter++));
     }
 
+    /**
+     * The default depth of the search tree up to which the parallel search splits into subtasks,
+     * the subtasks continue sequentially below it.
+     */
+    private static final int DEFAULT_SPLIT_DEPTH = 3;
+
     private final boolean injectiveOnly;
     private int counter = 0; // TODO replace better with something in the execution context
     private final ExecutionContext executionContext;
+    private final SearchPlanCompiler planCompiler = new SearchPlanCompiler();
+    private final Map<Graph, AutomorphismGroup> automorphismGroups = new IdentityHashMap<>();
+    private ForkJoinPool pool;
+    private int splitDepth = DEFAULT_SPLIT_DEPTH;
+    private boolean symmetryBreaking = false;
 
     public GraphMatcher(ExecutionContext executionContext, boolean injectiveOnly) {
         this.injectiveOnly = injectiveOnly;
         this.executionContext = executionContext;
     }
 
+    /**
+     * Lets {@link #allMatches(Graph, Graph)} and {@link #allTypedMatches(GraphMorphism, GraphMorphism)}
+     * search with the given number of threads. A parallelism of 1 or less switches back to the sequential search.
+     * The matcher owns the threads, they are released by {@link #close()} or by switching back with <code>parallel(1)</code>.
+     */
+    public GraphMatcher parallel(int parallelism) {
+        return parallel(parallelism, DEFAULT_SPLIT_DEPTH);
+    }
+
+    /**
+     * Like {@link #parallel(int)}, where the search tree is split into subtasks up to the given depth,
+     * i.e. for the values of the first <code>splitDepth</code> variables that are assigned.
+     */
+    public GraphMatcher parallel(int parallelism, int splitDepth) {
+        close();
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        this.splitDepth = splitDepth;
+        return this;
+    }
+
+    /**
+     * Shuts down the threads of a parallel matcher, which continues sequentially afterwards.
+     */
+    @Override
+    public void close() {
+        if (this.pool != null) {
+            this.pool.shutdown();
+            this.pool = null;
+        }
+    }
+
+    /**
+     * Lets the CSP based searches on untyped graphs enumerate only one representative
+     * per class of matches that differ by an automorphism of the pattern.
+     * For injective matches, there is exactly one representative per class,
+     * otherwise there may be several when matches identify elements.
+     * The other matches of a class can be obtained by {@link #symmetricMatches(GraphMorphism)}.
+     */
+    public GraphMatcher breakSymmetries(boolean enabled) {
+        this.symmetryBreaking = enabled;
+        return this;
+    }
+
+    /**
+     * The automorphism group of the given pattern, which is computed once per pattern.
+     */
+    public AutomorphismGroup automorphisms(Graph pattern) {
+        synchronized (automorphismGroups) {
+            return automorphismGroups.computeIfAbsent(pattern, AutomorphismGroup::of);
+        }
+    }
+
+    /**
+     * The matches that differ from the given one by an automorphism of its domain (including the match itself).
+     */
+    public Stream<GraphMorphism> symmetricMatches(GraphMorphism match) {
+        Graph pattern = match.domain();
+        return automorphisms(pattern).elements()
+                .map(automorphism -> {
+                    Map<Name, Name> result = new LinkedHashMap<>();
+                    automorphism.forEach((element, image) -> result.put(element, match.map(image).get()));
+                    return result;
+                })
+                .distinct()
+                .map(result -> turnIntoMorphism(result, pattern, match.codomain()));
+    }
+
+    private SearchResult<Set<Map<GraphMatchingVar, Triple>>> allSolutions(CSPSolver<Triple, GraphMatchingVar> problem, SearchBudget budget) {
+        if (pool == null) {
+            return problem.backtrackAllSolutions(budget);
+        }
+        return problem.backtrackAllSolutions(pool, splitDepth, budget);
+    }
+
     public Set<GraphMorphism> allMatches(Graph patternGraph, Graph hostGraph) throws GraphError {
+        return allMatches(patternGraph, hostGraph, SearchBudget.unlimited()).getResult();
+    }
+
+    /**
+     * Finds the matches of the pattern graph in the host graph within the given budget.
+     */
+    public SearchResult<Set<GraphMorphism>> allMatches(Graph patternGraph, Graph hostGraph, SearchBudget budget) throws GraphError {
+        SearchResult<Set<Map<GraphMatchingVar, Triple>>> solutions = allSolutions(turnIntoCSPProblem(patternGraph, hostGraph), budget);
         Set<GraphMorphism> result = new HashSet<>();
-        for (Map<GraphMatchingVar, Triple> btResult : turnIntoCSPProblem(patternGraph, hostGraph)
-                .backtrackAllSolutions()) {
+        for (Map<GraphMatchingVar, Triple> btResult : solutions.getResult()) {
             result.add(turnIntoSolution(btResult, patternGraph, hostGraph));
         }
-        return result;
+        return new SearchResult<>(result, solutions.getStatus());
+    }
+
+    /**
+     * Provides the matches of the pattern graph in the host graph as a lazy stream,
+     * i.e. the search stops as soon as no more matches are consumed.
+     */
+    public Stream<GraphMorphism> streamMatches(Graph patternGraph, Graph hostGraph) throws GraphError {
+        return streamMatches(patternGraph, hostGraph, SearchBudget.unlimited());
+    }
+
+    /**
+     * Lazy variant of {@link #allMatches(Graph, Graph, SearchBudget)}, the stream ends when the budget is exhausted.
+     */
+    public Stream<GraphMorphism> streamMatches(Graph patternGraph, Graph hostGraph, SearchBudget budget) throws GraphError {
+        return turnIntoCSPProblem(patternGraph, hostGraph)
+                .solutions(budget)
+                .map(btResult -> turnIntoSolution(btResult, patternGraph, hostGraph));
+    }
+
+    /**
+     * Finds the matches by executing a search plan, which is compiled from the pattern and the given statistics of the host graph.
+     */
+    public Stream<GraphMorphism> streamMatches(Graph patternGraph, Graph hostGraph, GraphStatistics statistics) throws GraphError {
+        return planCompiler.compile(patternGraph, statistics)
+                .execute(hostGraph, injectiveOnly)
+                .map(match -> turnIntoMorphism(match, patternGraph, hostGraph));
+    }
+
+    public Set<GraphMorphism> allMatches(Graph patternGraph, Graph hostGraph, GraphStatistics statistics) throws GraphError {
+        return streamMatches(patternGraph, hostGraph, statistics).collect(Collectors.toSet());
     }
 
     public GraphMorphism randomMatch(Graph patternGraph, Graph hostGraph) throws GraphError {
@@ -191,21 +369,81 @@ public class GraphMatcher {
         return !this.turnIntoCSPProblem(patternGraph, hostGraph).backTrackOneSolution().isEmpty();
     }
 
+    /**
+     * Finds some match within the given budget, the result is empty if there is none or the budget is exhausted before.
+     */
+    public SearchResult<Optional<GraphMorphism>> randomMatch(Graph patternGraph, Graph hostGraph, SearchBudget budget) throws GraphError {
+        SearchResult<Optional<Map<GraphMatchingVar, Triple>>> solution = turnIntoCSPProblem(patternGraph, hostGraph).backTrackOneSolution(budget);
+        return new SearchResult<>(
+                solution.getResult().map(btResult -> turnIntoSolution(btResult, patternGraph, hostGraph)),
+                solution.getStatus());
+    }
+
+    /**
+     * Checks for a match within the given budget, a negative answer is only reliable if the result is complete.
+     */
+    public SearchResult<Boolean> existMatch(Graph patternGraph, Graph hostGraph, SearchBudget budget) {
+        SearchResult<Optional<Map<GraphMatchingVar, Triple>>> solution = turnIntoCSPProblem(patternGraph, hostGraph).backTrackOneSolution(budget);
+        return new SearchResult<>(solution.getResult().isPresent(), solution.getStatus());
+    }
+
     public List<GraphMorphism> allTypedMatches(GraphMorphism typedPatternGraph, GraphMorphism typedHostGraph) throws GraphError {
+        return allTypedMatches(typedPatternGraph, typedHostGraph, SearchBudget.unlimited()).getResult();
+    }
+
+    /**
+     * Finds the typed matches within the given budget.
+     */
+    public SearchResult<List<GraphMorphism>> allTypedMatches(GraphMorphism typedPatternGraph, GraphMorphism typedHostGraph, SearchBudget budget) throws GraphError {
         if (!typedHostGraph.codomain().equals(typedPatternGraph.codomain())) {
-            return Collections.emptyList();
+            return new SearchResult<>(Collections.emptyList(), budget.getStatus());
         }
         GraphMorphism relevant = typedPatternGraph.pullback(typedHostGraph).getFirst();
 
+        SearchResult<Set<Map<GraphMatchingVar, Triple>>> solutions = allSolutions(turnIntoCSPProblem(relevant), budget);
         List<GraphMorphism> result = new ArrayList<>();
 
-        for (Map<GraphMatchingVar, Triple> btResult : turnIntoCSPProblem(relevant).backtrackAllSolutions()) {
+        for (Map<GraphMatchingVar, Triple> btResult : solutions.getResult()) {
             result.add(turnIntoSolution(btResult, typedHostGraph.domain(), typedHostGraph.domain()));
         }
-        return result;
+        return new SearchResult<>(result, solutions.getStatus());
 
     }
 
+    /**
+     * Finds the matches of a typed pattern, where elements are only matched with instances of the same type,
+     * by executing a search plan that is compiled from the pattern and the given statistics of the typed host graph.
+     * The matches are morphisms from the domain of the pattern into the domain of the host.
+     */
+    public Stream<GraphMorphism> streamTypedMatches(GraphMorphism typedPatternGraph, GraphMorphism typedHostGraph, GraphStatistics statistics) throws GraphError {
+        if (!typedHostGraph.codomain().equals(typedPatternGraph.codomain())) {
+            return Stream.empty();
+        }
+        return planCompiler.compile(typedPatternGraph, statistics)
+                .execute(typedHostGraph, injectiveOnly)
+                .map(match -> turnIntoMorphism(match, typedPatternGraph.domain(), typedHostGraph.domain()));
+    }
+
+    /**
+     * Lazy variant of {@link #allTypedMatches(GraphMorphism, GraphMorphism)}.
+     */
+    public Stream<GraphMorphism> streamTypedMatches(GraphMorphism typedPatternGraph, GraphMorphism typedHostGraph) throws GraphError {
+        return streamTypedMatches(typedPatternGraph, typedHostGraph, SearchBudget.unlimited());
+    }
+
+    /**
+     * Lazy variant of {@link #allTypedMatches(GraphMorphism, GraphMorphism, SearchBudget)}, the stream ends when the budget is exhausted.
+     */
+    public Stream<GraphMorphism> streamTypedMatches(GraphMorphism typedPatternGraph, GraphMorphism typedHostGraph, SearchBudget budget) throws GraphError {
+        if (!typedHostGraph.codomain().equals(typedPatternGraph.codomain())) {
+            return Stream.empty();
+        }
+        GraphMorphism relevant = typedPatternGraph.pullback(typedHostGraph).getFirst();
+        return turnIntoCSPProblem(relevant)
+                .solutions(budget)
+                .map(btResult -> turnIntoSolution(btResult, typedHostGraph.domain(), typedHostGraph.domain()));
+    }
+
 
 
 }
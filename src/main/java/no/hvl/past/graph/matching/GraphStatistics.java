@@ -0,0 +1,103 @@
+package no.hvl.past.graph.matching;
+
+import no.hvl.past.graph.Graph;
+import no.hvl.past.graph.GraphMorphism;
+import no.hvl.past.graph.elements.Triple;
+import no.hvl.past.names.Name;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A snapshot of the statistics of a host graph which are used to estimate the cost of searching in it,
+ * i.e. the number of nodes and edges and, for typed graphs, the number of instances per type
+ * and the average fan-out and fan-in per edge type.
+ *
+ * Every snapshot gets a new epoch, search plans compiled for the snapshot are cached under it
+ * (see {@link SearchPlanCompiler}).
+ */
+public final class GraphStatistics {
+
+    private static final AtomicLong EPOCHS = new AtomicLong();
+
+    private final long epoch;
+    private final int nodeCount;
+    private final int edgeCount;
+    private final Map<Name, Integer> instances;
+    private final Map<Name, Triple> edgeTypes;
+
+    private GraphStatistics(int nodeCount, int edgeCount, Map<Name, Integer> instances, Map<Name, Triple> edgeTypes) {
+        this.epoch = EPOCHS.incrementAndGet();
+        this.nodeCount = nodeCount;
+        this.edgeCount = edgeCount;
+        this.instances = instances;
+        this.edgeTypes = edgeTypes;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * The average number of edges leaving or entering a node.
+     */
+    public double averageDegree() {
+        return (double) edgeCount / Math.max(1, nodeCount);
+    }
+
+    /**
+     * The number of instances of the given element of the type graph.
+     */
+    public int instances(Name type) {
+        return instances.getOrDefault(type, 0);
+    }
+
+    /**
+     * The average number of instances of the given edge type leaving an instance of its source type.
+     */
+    public double fanOut(Name edgeType) {
+        Triple type = edgeTypes.get(edgeType);
+        if (type == null) {
+            return averageDegree();
+        }
+        return (double) instances(edgeType) / Math.max(1, instances(type.getSource()));
+    }
+
+    /**
+     * The average number of instances of the given edge type entering an instance of its target type.
+     */
+    public double fanIn(Name edgeType) {
+        Triple type = edgeTypes.get(edgeType);
+        if (type == null) {
+            return averageDegree();
+        }
+        return (double) instances(edgeType) / Math.max(1, instances(type.getTarget()));
+    }
+
+    public static GraphStatistics of(Graph graph) {
+        int[] counts = new int[2];
+        graph.elements().forEach(t -> counts[t.isNode() ? 0 : 1]++);
+        return new GraphStatistics(counts[0], counts[1], new HashMap<>(), new HashMap<>());
+    }
+
+    public static GraphStatistics of(GraphMorphism typedGraph) {
+        int[] counts = new int[2];
+        Map<Name, Integer> instances = new HashMap<>();
+        typedGraph.domain().elements().forEach(t -> {
+            counts[t.isNode() ? 0 : 1]++;
+            typedGraph.map(t.getLabel()).ifPresent(type -> instances.merge(type, 1, Integer::sum));
+        });
+        Map<Name, Triple> edgeTypes = new HashMap<>();
+        typedGraph.codomain().edges().forEach(t -> edgeTypes.put(t.getLabel(), t));
+        return new GraphStatistics(counts[0], counts[1], instances, edgeTypes);
+    }
+}
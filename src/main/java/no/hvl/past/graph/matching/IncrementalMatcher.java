@@ -0,0 +1,390 @@
+package no.hvl.past.graph.matching;
+
+import no.hvl.past.graph.Graph;
+import no.hvl.past.graph.elements.Triple;
+import no.hvl.past.names.Name;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the matches of a set of pattern graphs up to date while the host graph changes.
+ *
+ * Every registered pattern is translated into a RETE-like network: a chain of steps,
+ * each of which binds one pattern element (an edge together with its ends, or a node).
+ * Every step has an input memory with the host elements that fit its pattern element
+ * and a memory with the partial matches binding all elements up to the step,
+ * both indexed by the images of the pattern nodes that are shared with the next step.
+ * An inserted or removed host element is joined with the partial matches of the preceding step
+ * and the resulting delta is passed down the chain, thus the work depends on the number of affected partial matches
+ * rather than on the size of the host graph.
+ *
+ * Changes are fed into the matcher by {@link #insert(Triple)}, {@link #remove(Triple)} or {@link #update(Graph)}
+ * and reported to the registered {@link Listener}s.
+ */
+public class IncrementalMatcher {
+
+    /**
+     * Receives the matches that appear or disappear due to a change of the host graph.
+     * Matches map the names of the pattern elements to the names of host elements.
+     */
+    public interface Listener {
+
+        void matchAdded(Graph pattern, Map<Name, Name> match);
+
+        void matchRemoved(Graph pattern, Map<Name, Name> match);
+
+    }
+
+    private static final class PartialMatch {
+        private final Name[] binding;
+        private final int hash;
+
+        private PartialMatch(Name[] binding) {
+            this.binding = binding;
+            this.hash = Arrays.hashCode(binding);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PartialMatch && Arrays.equals(binding, ((PartialMatch) o).binding);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static <K, V> void add(Map<K, Set<V>> index, K key, V value) {
+        index.computeIfAbsent(key, k -> new HashSet<>()).add(value);
+    }
+
+    private static <K, V> boolean remove(Map<K, Set<V>> index, K key, V value) {
+        Set<V> values = index.get(key);
+        if (values == null || !values.remove(value)) {
+            return false;
+        }
+        if (values.isEmpty()) {
+            index.remove(key);
+        }
+        return true;
+    }
+
+    /**
+     * Binds a single pattern element.
+     * For nodes, source and target are the node itself.
+     */
+    private static final class Step {
+        private final int element;
+        private final boolean node;
+        private final int source;
+        private final int target;
+        private final int[] joinVariables;
+        private final Map<List<Name>, Set<Triple>> inputs = new HashMap<>();
+        private final Map<List<Name>, Set<PartialMatch>> partialMatches = new HashMap<>();
+        private int[] nextJoinVariables = new int[0];
+
+        private Step(int element, boolean node, int source, int target, int[] joinVariables) {
+            this.element = element;
+            this.node = node;
+            this.source = source;
+            this.target = target;
+            this.joinVariables = joinVariables;
+        }
+
+        private boolean accepts(Triple hostElement) {
+            if (node) {
+                return hostElement.isNode();
+            }
+            return hostElement.isEddge() && (source != target || hostElement.getSource().equals(hostElement.getTarget()));
+        }
+
+        private List<Name> inputKey(Triple hostElement) {
+            List<Name> key = new ArrayList<>(joinVariables.length);
+            for (int variable : joinVariables) {
+                key.add(variable == source ? hostElement.getSource() : hostElement.getTarget());
+            }
+            return key;
+        }
+
+        private static List<Name> key(PartialMatch match, int[] variables) {
+            List<Name> key = new ArrayList<>(variables.length);
+            for (int variable : variables) {
+                key.add(match.binding[variable]);
+            }
+            return key;
+        }
+    }
+
+    /**
+     * The network of a single pattern.
+     */
+    private final class Network {
+        private final Graph pattern;
+        private final Name[] elements;
+        private final boolean[] isNode;
+        private final List<Step> steps = new ArrayList<>();
+        private final PartialMatch empty;
+
+        private Network(Graph pattern) {
+            this.pattern = pattern;
+            List<Name> nodes = pattern.nodes().collect(Collectors.toList());
+            List<Triple> edges = pattern.edges().collect(Collectors.toList());
+            this.elements = new Name[nodes.size() + edges.size()];
+            this.isNode = new boolean[elements.length];
+            this.empty = new PartialMatch(new Name[elements.length]);
+            Map<Name, Integer> index = new HashMap<>();
+            for (int i = 0; i < nodes.size(); i++) {
+                elements[i] = nodes.get(i);
+                isNode[i] = true;
+                index.put(nodes.get(i), i);
+            }
+            for (int i = 0; i < edges.size(); i++) {
+                elements[nodes.size() + i] = edges.get(i).getLabel();
+                if (!index.containsKey(edges.get(i).getSource()) || !index.containsKey(edges.get(i).getTarget())) {
+                    throw new IllegalArgumentException("The edge " + edges.get(i) + " of the pattern is dangling");
+                }
+            }
+
+            // edges connected to the bound part come first, every node is checked right after it has been bound
+            boolean[] bound = new boolean[nodes.size()];
+            List<Integer> remaining = new ArrayList<>();
+            for (int i = 0; i < edges.size(); i++) {
+                remaining.add(i);
+            }
+            while (!remaining.isEmpty()) {
+                int next = remaining.get(0);
+                for (int i : remaining) {
+                    Triple edge = edges.get(i);
+                    if (bound[index.get(edge.getSource())] || bound[index.get(edge.getTarget())]) {
+                        next = i;
+                        break;
+                    }
+                }
+                remaining.remove(Integer.valueOf(next));
+                Triple edge = edges.get(next);
+                int source = index.get(edge.getSource());
+                int target = index.get(edge.getTarget());
+                int[] join = source == target
+                        ? (bound[source] ? new int[]{source} : new int[0])
+                        : Arrays.stream(new int[]{source, target}).filter(v -> bound[v]).toArray();
+                steps.add(new Step(nodes.size() + next, false, source, target, join));
+                for (int variable : new int[]{source, target}) {
+                    if (!bound[variable]) {
+                        bound[variable] = true;
+                        steps.add(new Step(variable, true, variable, variable, new int[]{variable}));
+                    }
+                }
+            }
+            for (int i = 0; i < nodes.size(); i++) {
+                if (!bound[i]) {
+                    steps.add(new Step(i, true, i, i, new int[0]));
+                }
+            }
+            for (int i = 0; i + 1 < steps.size(); i++) {
+                steps.get(i).nextJoinVariables = steps.get(i + 1).joinVariables;
+            }
+        }
+
+        private Set<PartialMatch> left(int step, List<Name> key) {
+            if (step == 0) {
+                return Collections.singleton(empty);
+            }
+            return steps.get(step - 1).partialMatches.getOrDefault(key, Collections.emptySet());
+        }
+
+        private PartialMatch extend(Step step, PartialMatch match, Triple hostElement) {
+            Name[] binding = match.binding.clone();
+            if (!step.node && !bind(binding, step.element, hostElement.getLabel())) {
+                return null;
+            }
+            if (!bind(binding, step.source, hostElement.getSource()) || !bind(binding, step.target, hostElement.getTarget())) {
+                return null;
+            }
+            return new PartialMatch(binding);
+        }
+
+        private boolean bind(Name[] binding, int variable, Name image) {
+            if (binding[variable] != null) {
+                return binding[variable].equals(image);
+            }
+            if (injective) {
+                for (int i = 0; i < binding.length; i++) {
+                    if (isNode[i] == isNode[variable] && image.equals(binding[i])) {
+                        return false;
+                    }
+                }
+            }
+            binding[variable] = image;
+            return true;
+        }
+
+        private void insert(Triple hostElement) {
+            for (Step step : steps) {
+                if (step.accepts(hostElement)) {
+                    add(step.inputs, step.inputKey(hostElement), hostElement);
+                }
+            }
+            for (int i = 0; i < steps.size(); i++) {
+                Step step = steps.get(i);
+                if (step.accepts(hostElement)) {
+                    for (PartialMatch match : new ArrayList<>(left(i, step.inputKey(hostElement)))) {
+                        PartialMatch extended = extend(step, match, hostElement);
+                        if (extended != null) {
+                            added(i, extended);
+                        }
+                    }
+                }
+            }
+        }
+
+        private void added(int index, PartialMatch match) {
+            Step step = steps.get(index);
+            if (!partialMatches(step, match).add(match)) {
+                return;
+            }
+            if (index + 1 == steps.size()) {
+                Map<Name, Name> result = toMatch(match);
+                listeners.forEach(l -> l.matchAdded(pattern, result));
+                return;
+            }
+            Step next = steps.get(index + 1);
+            for (Triple hostElement : new ArrayList<>(next.inputs.getOrDefault(Step.key(match, next.joinVariables), Collections.emptySet()))) {
+                PartialMatch extended = extend(next, match, hostElement);
+                if (extended != null) {
+                    added(index + 1, extended);
+                }
+            }
+        }
+
+        private Set<PartialMatch> partialMatches(Step step, PartialMatch match) {
+            return step.partialMatches.computeIfAbsent(Step.key(match, step.nextJoinVariables), k -> new HashSet<>());
+        }
+
+        private void remove(Triple hostElement) {
+            for (int i = 0; i < steps.size(); i++) {
+                Step step = steps.get(i);
+                if (step.accepts(hostElement)) {
+                    for (PartialMatch match : new ArrayList<>(left(i, step.inputKey(hostElement)))) {
+                        PartialMatch extended = extend(step, match, hostElement);
+                        if (extended != null) {
+                            removed(i, extended);
+                        }
+                    }
+                }
+            }
+            for (Step step : steps) {
+                if (step.accepts(hostElement)) {
+                    IncrementalMatcher.remove(step.inputs, step.inputKey(hostElement), hostElement);
+                }
+            }
+        }
+
+        private void removed(int index, PartialMatch match) {
+            Step step = steps.get(index);
+            if (!IncrementalMatcher.remove(step.partialMatches, Step.key(match, step.nextJoinVariables), match)) {
+                return;
+            }
+            if (index + 1 == steps.size()) {
+                Map<Name, Name> result = toMatch(match);
+                listeners.forEach(l -> l.matchRemoved(pattern, result));
+                return;
+            }
+            Step next = steps.get(index + 1);
+            for (Triple hostElement : new ArrayList<>(next.inputs.getOrDefault(Step.key(match, next.joinVariables), Collections.emptySet()))) {
+                PartialMatch extended = extend(next, match, hostElement);
+                if (extended != null) {
+                    removed(index + 1, extended);
+                }
+            }
+        }
+
+        private Set<Map<Name, Name>> matches() {
+            if (steps.isEmpty()) {
+                return Collections.singleton(Collections.emptyMap());
+            }
+            return steps.get(steps.size() - 1).partialMatches.values().stream()
+                    .flatMap(Set::stream)
+                    .map(this::toMatch)
+                    .collect(Collectors.toSet());
+        }
+
+        private Map<Name, Name> toMatch(PartialMatch match) {
+            Map<Name, Name> result = new LinkedHashMap<>();
+            for (int i = 0; i < elements.length; i++) {
+                result.put(elements[i], match.binding[i]);
+            }
+            return result;
+        }
+    }
+
+    private final boolean injective;
+    private final Set<Triple> host = new LinkedHashSet<>();
+    private final Map<Graph, Network> networks = new LinkedHashMap<>();
+    private final List<Listener> listeners = new ArrayList<>();
+
+    public IncrementalMatcher(boolean injective) {
+        this.injective = injective;
+    }
+
+    public void addListener(Listener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Registers a pattern, its matches in the current host graph are reported as added.
+     */
+    public void register(Graph pattern) {
+        if (networks.containsKey(pattern)) {
+            return;
+        }
+        Network network = new Network(pattern);
+        networks.put(pattern, network);
+        host.forEach(network::insert);
+    }
+
+    public void unregister(Graph pattern) {
+        networks.remove(pattern);
+    }
+
+    /**
+     * The current matches of the given registered pattern.
+     */
+    public Set<Map<Name, Name>> matches(Graph pattern) {
+        Network network = networks.get(pattern);
+        if (network == null) {
+            throw new IllegalArgumentException("The pattern " + pattern.getName().printRaw() + " is not registered");
+        }
+        return network.matches();
+    }
+
+    public void insert(Triple element) {
+        if (host.add(element)) {
+            networks.values().forEach(n -> n.insert(element));
+        }
+    }
+
+    public void remove(Triple element) {
+        if (host.remove(element)) {
+            networks.values().forEach(n -> n.remove(element));
+        }
+    }
+
+    /**
+     * Changes the host graph to the given one by removing the elements that are no longer there
+     * and inserting the new ones (nodes before edges).
+     */
+    public void update(Graph newHost) {
+        Set<Triple> elements = newHost.elements().collect(Collectors.toCollection(LinkedHashSet::new));
+        List<Triple> removed = host.stream().filter(t -> !elements.contains(t)).collect(Collectors.toList());
+        removed.stream().filter(Triple::isEddge).forEach(this::remove);
+        removed.stream().filter(Triple::isNode).forEach(this::remove);
+        elements.stream().filter(Triple::isNode).forEach(this::insert);
+        elements.stream().filter(Triple::isEddge).forEach(this::insert);
+    }
+}
@@ -0,0 +1,253 @@
+package no.hvl.past.graph.matching;
+
+import no.hvl.past.graph.Graph;
+import no.hvl.past.graph.GraphMorphism;
+import no.hvl.past.graph.elements.Triple;
+import no.hvl.past.names.Name;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An explicit plan to search for the matches of a pattern graph, created by {@link SearchPlanCompiler}.
+ * The plan is a sequence of operations, each of which extends a partial match:
+ * <ul>
+ *     <li><i>lookup</i> binds a pattern node to every host node (of the right type),</li>
+ *     <li><i>extend</i> navigates along the host edges (of the right type) leaving or entering the image of a bound node
+ *     and binds a pattern edge and its other end,</li>
+ *     <li><i>check</i> binds a pattern edge whose source and target are already bound to the host edges between their images.</li>
+ * </ul>
+ * Executing a plan provides the matches lazily as maps from the pattern elements to the host elements.
+ */
+public final class SearchPlan {
+
+    /**
+     * Access to the host graph during the execution of a plan.
+     */
+    private static final class Host {
+        private final Graph graph;
+        private final GraphMorphism typing;
+        private final boolean injective;
+
+        private Host(Graph graph, GraphMorphism typing, boolean injective) {
+            this.graph = graph;
+            this.typing = typing;
+            this.injective = injective;
+        }
+
+        private Stream<Name> nodes(Name type) {
+            if (typing != null && type != null) {
+                return typing.allNodeInstances(type);
+            }
+            return graph.nodes();
+        }
+
+        private Stream<Triple> outgoing(Name node, Triple type) {
+            if (typing != null && type != null) {
+                return typing.allOutgoingInstances(type, node);
+            }
+            return graph.outgoing(node).filter(Triple::isEddge);
+        }
+
+        private Stream<Triple> incoming(Name node, Triple type) {
+            if (typing != null && type != null) {
+                return typing.allIncomingInstances(type, node);
+            }
+            return graph.incoming(node).filter(Triple::isEddge);
+        }
+    }
+
+    abstract static class Operation {
+        private final double estimate;
+
+        Operation(double estimate) {
+            this.estimate = estimate;
+        }
+
+        /**
+         * The estimated number of extensions of a single partial match.
+         */
+        double getEstimate() {
+            return estimate;
+        }
+
+        abstract Stream<Name[]> extend(SearchPlan plan, Name[] binding, Host host);
+
+        abstract String describe(SearchPlan plan);
+    }
+
+    static final class Lookup extends Operation {
+        private final int node;
+        private final Name type;
+
+        Lookup(int node, Name type, double estimate) {
+            super(estimate);
+            this.node = node;
+            this.type = type;
+        }
+
+        @Override
+        Stream<Name[]> extend(SearchPlan plan, Name[] binding, Host host) {
+            return host.nodes(type)
+                    .filter(n -> plan.isFree(host, binding, n, true))
+                    .map(n -> plan.bind(binding, node, n, -1, null));
+        }
+
+        @Override
+        String describe(SearchPlan plan) {
+            return "lookup " + plan.elements[node].printRaw();
+        }
+    }
+
+    static final class Extend extends Operation {
+        private final int edge;
+        private final int from;
+        private final int to;
+        private final boolean forward;
+        private final Triple type;
+
+        Extend(int edge, int from, int to, boolean forward, Triple type, double estimate) {
+            super(estimate);
+            this.edge = edge;
+            this.from = from;
+            this.to = to;
+            this.forward = forward;
+            this.type = type;
+        }
+
+        @Override
+        Stream<Name[]> extend(SearchPlan plan, Name[] binding, Host host) {
+            Stream<Triple> edges = forward ? host.outgoing(binding[from], type) : host.incoming(binding[from], type);
+            return edges.filter(t -> plan.isFree(host, binding, t.getLabel(), false))
+                    .filter(t -> plan.isFree(host, binding, forward ? t.getTarget() : t.getSource(), true))
+                    .map(t -> plan.bind(binding, edge, t.getLabel(), to, forward ? t.getTarget() : t.getSource()));
+        }
+
+        @Override
+        String describe(SearchPlan plan) {
+            return "extend " + plan.elements[from].printRaw()
+                    + (forward ? " -" : " <-") + plan.elements[edge].printRaw()
+                    + (forward ? "-> " : "- ") + plan.elements[to].printRaw();
+        }
+    }
+
+    static final class Check extends Operation {
+        private final int edge;
+        private final int source;
+        private final int target;
+        private final Triple type;
+
+        Check(int edge, int source, int target, Triple type, double estimate) {
+            super(estimate);
+            this.edge = edge;
+            this.source = source;
+            this.target = target;
+            this.type = type;
+        }
+
+        @Override
+        Stream<Name[]> extend(SearchPlan plan, Name[] binding, Host host) {
+            return host.outgoing(binding[source], type)
+                    .filter(t -> t.getTarget().equals(binding[target]))
+                    .filter(t -> plan.isFree(host, binding, t.getLabel(), false))
+                    .map(t -> plan.bind(binding, edge, t.getLabel(), -1, null));
+        }
+
+        @Override
+        String describe(SearchPlan plan) {
+            return "check " + plan.elements[source].printRaw()
+                    + " -" + plan.elements[edge].printRaw()
+                    + "-> " + plan.elements[target].printRaw();
+        }
+    }
+
+    private final Name[] elements;
+    private final boolean[] isNode;
+    private final List<Operation> operations;
+
+    SearchPlan(Name[] elements, boolean[] isNode, List<Operation> operations) {
+        this.elements = elements;
+        this.isNode = isNode;
+        this.operations = operations;
+    }
+
+    /**
+     * The estimated number of partial matches that are visited when executing the plan.
+     */
+    public double estimatedCost() {
+        double result = 0;
+        double partialMatches = 1;
+        for (Operation operation : operations) {
+            partialMatches *= operation.getEstimate();
+            result += partialMatches;
+        }
+        return result;
+    }
+
+    public List<String> describe() {
+        return operations.stream().map(op -> op.describe(this)).collect(Collectors.toList());
+    }
+
+    @Override
+    public String toString() {
+        return String.join("\n", describe());
+    }
+
+    /**
+     * Executes this plan on an untyped host graph.
+     */
+    public Stream<Map<Name, Name>> execute(Graph host, boolean injective) {
+        return execute(new Host(host, null, injective));
+    }
+
+    /**
+     * Executes this plan on a typed host graph, where the pattern elements are only matched with instances of their types.
+     */
+    public Stream<Map<Name, Name>> execute(GraphMorphism typedHost, boolean injective) {
+        return execute(new Host(typedHost.domain(), typedHost, injective));
+    }
+
+    private Stream<Map<Name, Name>> execute(Host host) {
+        return run(0, new Name[elements.length], host).map(this::toMatch);
+    }
+
+    private Stream<Name[]> run(int step, Name[] binding, Host host) {
+        if (step == operations.size()) {
+            return Stream.<Name[]>of(binding);
+        }
+        return operations.get(step).extend(this, binding, host).flatMap(next -> run(step + 1, next, host));
+    }
+
+    private Map<Name, Name> toMatch(Name[] binding) {
+        Map<Name, Name> result = new LinkedHashMap<>();
+        for (int i = 0; i < elements.length; i++) {
+            result.put(elements[i], binding[i]);
+        }
+        return result;
+    }
+
+    /**
+     * For injective matches, checks that the given host element is not the image of another pattern element yet.
+     */
+    private boolean isFree(Host host, Name[] binding, Name image, boolean node) {
+        if (!host.injective) {
+            return true;
+        }
+        for (int i = 0; i < binding.length; i++) {
+            if (isNode[i] == node && image.equals(binding[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Name[] bind(Name[] binding, int first, Name firstImage, int second, Name secondImage) {
+        Name[] result = binding.clone();
+        result[first] = firstImage;
+        if (second >= 0) {
+            result[second] = secondImage;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,184 @@
+package no.hvl.past.graph.matching;
+
+import no.hvl.past.graph.Graph;
+import no.hvl.past.graph.GraphMorphism;
+import no.hvl.past.graph.elements.Triple;
+import no.hvl.past.names.Name;
+
+import java.util.*;
+
+/**
+ * Compiles pattern graphs into {@link SearchPlan}s using the statistics of the host graph.
+ *
+ * The plan is built greedily: in every step, the operation with the smallest estimated number of extensions
+ * per partial match is chosen among the ones that are applicable, i.e.
+ * checking an edge whose ends are bound, extending along an edge with one bound end
+ * (estimated by the fan-out or fan-in of its type) or looking up an unbound node (estimated by the number of instances).
+ *
+ * Plans are cached per pattern and statistics epoch, so a new snapshot of the statistics leads to new plans.
+ */
+public class SearchPlanCompiler {
+
+    private static final int CACHE_SIZE = 128;
+
+    private static final class PlanKey {
+        private final Object pattern;
+        private final long epoch;
+
+        private PlanKey(Object pattern, long epoch) {
+            this.pattern = pattern;
+            this.epoch = epoch;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PlanKey)) {
+                return false;
+            }
+            PlanKey other = (PlanKey) o;
+            return pattern == other.pattern && epoch == other.epoch;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(pattern) + Long.hashCode(epoch);
+        }
+    }
+
+    private final Map<PlanKey, SearchPlan> cache = new LinkedHashMap<PlanKey, SearchPlan>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<PlanKey, SearchPlan> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Compiles a plan for matching the given untyped pattern.
+     */
+    public SearchPlan compile(Graph pattern, GraphStatistics statistics) {
+        return cached(pattern, statistics, () -> compile(pattern, name -> null, name -> null, statistics));
+    }
+
+    /**
+     * Compiles a plan for matching the given typed pattern into graphs typed over the same type graph.
+     */
+    public SearchPlan compile(GraphMorphism typedPattern, GraphStatistics statistics) {
+        return cached(typedPattern, statistics, () -> compile(
+                typedPattern.domain(),
+                name -> typedPattern.map(name).orElse(null),
+                name -> typedPattern.map(name).flatMap(typedPattern.codomain()::get).orElse(null),
+                statistics));
+    }
+
+    private interface Compilation {
+        SearchPlan compile();
+    }
+
+    private interface Typing<T> {
+        T typeOf(Name element);
+    }
+
+    private SearchPlan cached(Object pattern, GraphStatistics statistics, Compilation compilation) {
+        PlanKey key = new PlanKey(pattern, statistics.getEpoch());
+        synchronized (cache) {
+            SearchPlan plan = cache.get(key);
+            if (plan != null) {
+                return plan;
+            }
+        }
+        SearchPlan plan = compilation.compile();
+        synchronized (cache) {
+            cache.put(key, plan);
+        }
+        return plan;
+    }
+
+    private SearchPlan compile(Graph pattern, Typing<Name> nodeTypes, Typing<Triple> edgeTypes, GraphStatistics statistics) {
+        List<Name> nodes = new ArrayList<>();
+        List<Triple> edges = new ArrayList<>();
+        pattern.nodes().forEach(nodes::add);
+        pattern.edges().forEach(edges::add);
+        Name[] elements = new Name[nodes.size() + edges.size()];
+        boolean[] isNode = new boolean[elements.length];
+        Map<Name, Integer> nodeIndex = new HashMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            elements[i] = nodes.get(i);
+            isNode[i] = true;
+            nodeIndex.put(nodes.get(i), i);
+        }
+        for (int i = 0; i < edges.size(); i++) {
+            Triple edge = edges.get(i);
+            if (!nodeIndex.containsKey(edge.getSource()) || !nodeIndex.containsKey(edge.getTarget())) {
+                throw new IllegalArgumentException("The edge " + edge + " of the pattern is dangling");
+            }
+            elements[nodes.size() + i] = edge.getLabel();
+        }
+
+        boolean[] bound = new boolean[nodes.size()];
+        boolean[] done = new boolean[edges.size()];
+        List<SearchPlan.Operation> operations = new ArrayList<>();
+        for (int step = 0; step < elements.length; step++) {
+            SearchPlan.Operation best = null;
+            int bestEdge = -1;
+            int bestNode = -1;
+            for (int i = 0; i < edges.size(); i++) {
+                if (done[i]) {
+                    continue;
+                }
+                Triple edge = edges.get(i);
+                Triple type = edgeTypes.typeOf(edge.getLabel());
+                int source = nodeIndex.get(edge.getSource());
+                int target = nodeIndex.get(edge.getTarget());
+                SearchPlan.Operation candidate = null;
+                if (bound[source] && bound[target]) {
+                    candidate = new SearchPlan.Check(nodes.size() + i, source, target, type, checkEstimate(type, statistics));
+                } else if (bound[source]) {
+                    candidate = new SearchPlan.Extend(nodes.size() + i, source, target, true, type,
+                            type == null ? statistics.averageDegree() : statistics.fanOut(type.getLabel()));
+                } else if (bound[target]) {
+                    candidate = new SearchPlan.Extend(nodes.size() + i, target, source, false, type,
+                            type == null ? statistics.averageDegree() : statistics.fanIn(type.getLabel()));
+                }
+                if (candidate != null && (best == null || candidate.getEstimate() < best.getEstimate())) {
+                    best = candidate;
+                    bestEdge = i;
+                }
+            }
+            for (int i = 0; i < nodes.size(); i++) {
+                if (bound[i]) {
+                    continue;
+                }
+                Name type = nodeTypes.typeOf(nodes.get(i));
+                double estimate = type == null ? statistics.nodeCount() : statistics.instances(type);
+                if (best == null || estimate < best.getEstimate()) {
+                    best = new SearchPlan.Lookup(i, type, estimate);
+                    bestNode = i;
+                    bestEdge = -1;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            operations.add(best);
+            if (bestEdge >= 0) {
+                done[bestEdge] = true;
+                Triple edge = edges.get(bestEdge);
+                bound[nodeIndex.get(edge.getSource())] = true;
+                bound[nodeIndex.get(edge.getTarget())] = true;
+            } else {
+                bound[bestNode] = true;
+            }
+        }
+        return new SearchPlan(elements, isNode, operations);
+    }
+
+    /**
+     * The probability that there is an edge of the given type between two bound nodes.
+     */
+    private static double checkEstimate(Triple type, GraphStatistics statistics) {
+        if (type == null) {
+            return Math.min(1.0, statistics.averageDegree() / Math.max(1, statistics.nodeCount()));
+        }
+        return Math.min(1.0, statistics.fanOut(type.getLabel()) / Math.max(1, statistics.instances(type.getTarget())));
+    }
+}
@@ -4,8 +4,10 @@ import no.hvl.past.graph.*;
 import no.hvl.past.graph.elements.Triple;
 import no.hvl.past.names.Name;
 
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Validates if two parallel arrows commute, i.e.
@@ -28,25 +30,13 @@ public class Commutativity implements GraphPredicate {
 
     @Override
     public boolean check(GraphMorphism instance) {
-        Set<Triple> left = instance.allInstances(Universe.CELL_LHS).collect(Collectors.toSet());
-        Set<Triple> right = instance.allInstances(Universe.CELL_RHS).collect(Collectors.toSet());
-        Set<Name> sources = left.stream().map(Triple::getSource).collect(Collectors.toSet());
-        if (!sources.equals(right.stream().map(Triple::getSource).collect(Collectors.toSet()))) {
-            return false;
-        }
-        for (Name s : sources) {
-            if (!left.stream()
-                    .filter(t -> t.getSource().equals(s))
-                    .map(Triple::getTarget)
-                    .collect(Collectors.toSet()).equals(
-                        right.stream()
-                                .filter(t -> t.getSource().equals(s))
-                                .map(Triple::getTarget)
-                                .collect(Collectors.toSet()))) {
-                return false;
-            }
-        }
-        return true;
+        // both paths must relate the same sources to the same targets
+        return targetsBySource(instance.allInstances(Universe.CELL_LHS))
+                .equals(targetsBySource(instance.allInstances(Universe.CELL_RHS)));
+    }
+
+    private static Map<Name, Set<Name>> targetsBySource(Stream<Triple> instances) {
+        return instances.collect(Collectors.groupingBy(Triple::getSource, Collectors.mapping(Triple::getTarget, Collectors.toSet())));
     }
 
     private Commutativity() {
@@ -29,7 +29,7 @@ public class SourceMultiplicity implements GraphPredicate {
     @Override
     public boolean check(GraphMorphism instance) {
         return instance.allInstances(Universe.ARROW_TRG_NAME).map(Triple::getTarget).allMatch(t -> {
-            long n = instance.allInstances(Universe.ARROW_THE_ARROW).filter(e -> e.getTarget().equals(t)).count();
+            long n = instance.allIncomingInstances(Universe.ARROW_THE_ARROW, t).count();
             return multiplicity.isValid(n);
         });
     }
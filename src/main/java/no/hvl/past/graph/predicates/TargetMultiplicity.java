@@ -29,7 +29,7 @@ public class TargetMultiplicity implements GraphPredicate {
     @Override
     public boolean check(GraphMorphism instance) {
         return instance.allInstances(Universe.ARROW_SRC_NAME).map(Triple::getSource).allMatch(s -> {
-            long n = instance.allInstances(Universe.ARROW_THE_ARROW).filter(t -> t.getSource().equals(s)).count();
+            long n = instance.allOutgoingInstances(Universe.ARROW_THE_ARROW, s).count();
             return multiplicity.isValid(n);
         });
 
@@ -3,12 +3,15 @@ package no.hvl.past.graph.trees;
 import no.hvl.past.graph.Graph;
 import no.hvl.past.graph.GraphBuilders;
 import no.hvl.past.graph.GraphMorphism;
+import no.hvl.past.graph.MappedGraph;
 import no.hvl.past.graph.Universe;
 import no.hvl.past.graph.elements.Triple;
 import no.hvl.past.graph.elements.Tuple;
 import no.hvl.past.names.Name;
 import no.hvl.past.names.NamePath;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 
 public class ToGraphTreeReceiver implements TreeReceiver {
@@ -168,18 +171,25 @@ public class ToGraphTreeReceiver implements TreeReceiver {
             this.builder.node(nodeIdMap.get(paths));
         }
         for (Tuple t : triplesToCreate) {
-            Name src = nodeIdMap.get(((NamePath) t.getDomain()).parent());
-            Name lbl = ((NamePath) t.getDomain()).current().prefixWith(src);
-            Name trg;
-            if (t.getCodomain() instanceof NamePath) {
-                trg = nodeIdMap.get((NamePath) t.getCodomain());
-            } else {
-                trg = t.getCodomain();
-            }
-            this.builder.edge(src, lbl, trg);
+            this.builder.edge(sourceOf(t), labelOf(t), targetOf(t));
         }
     }
 
+    private Name sourceOf(Tuple t) {
+        return nodeIdMap.get(((NamePath) t.getDomain()).parent());
+    }
+
+    private Name labelOf(Tuple t) {
+        return ((NamePath) t.getDomain()).current().prefixWith(sourceOf(t));
+    }
+
+    private Name targetOf(Tuple t) {
+        if (t.getCodomain() instanceof NamePath) {
+            return nodeIdMap.get((NamePath) t.getCodomain());
+        }
+        return t.getCodomain();
+    }
+
     private void mkMorph() {
         mkGraph();
         this.builder.graph(name.absolute());
@@ -193,9 +203,7 @@ public class ToGraphTreeReceiver implements TreeReceiver {
         }
         for (Tuple t : this.triplesToCreate) {
             if (edgeTypingMap.containsKey((NamePath) t.getDomain())) {
-                Name src = nodeIdMap.get(((NamePath) t.getDomain()).parent());
-                Name lbl = ((NamePath) t.getDomain()).current().prefixWith(src);
-                builder.map(lbl, edgeTypingMap.get((NamePath) t.getDomain()));
+                builder.map(labelOf(t), edgeTypingMap.get((NamePath) t.getDomain()));
                 if (valueTypingMap.containsKey(t.getCodomain())) {
                     builder.map(t.getCodomain(), valueTypingMap.get(t.getCodomain()));
                 }
@@ -209,6 +217,27 @@ public class ToGraphTreeReceiver implements TreeReceiver {
         return builder.getResult(Graph.class);
     }
 
+    /**
+     * Writes the received graph into the given file and maps it, see {@link MappedGraph},
+     * such that big instances do not have to be built on the heap.
+     */
+    public MappedGraph getMappedGraphResult(Path file) throws IOException {
+        try (MappedGraph.Builder result = MappedGraph.builder(name, file)) {
+            for (NamePath path : this.nodeIdMap.keySet()) {
+                result.add(Triple.node(nodeIdMap.get(path)));
+            }
+            for (Tuple t : triplesToCreate) {
+                Name src = sourceOf(t);
+                Name trg = targetOf(t);
+                result.add(Triple.node(src));
+                result.add(Triple.node(trg));
+                result.add(new Triple(src, labelOf(t), trg));
+            }
+            result.finish();
+        }
+        return MappedGraph.open(file);
+    }
+
     public GraphMorphism getTypedGraphResult() {
         mkMorph();
         builder.morphism(name);
@@ -2,6 +2,8 @@ package no.hvl.past.names;
 
 import no.hvl.past.util.ByteUtils;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Optional;
 
 public final class BinaryCombinator extends Combinator {
@@ -141,6 +143,11 @@ public final class BinaryCombinator extends Combinator {
         };
 
 
+        /**
+         * The constant leading bytes of names combined with this operation.
+         */
+        private final byte[][] header = {{BINARY_OP_MAGIC_BYTE, (byte) this.ordinal()}};
+
         public abstract String print(PrintingStrategy strategy, String first, String second);
 
     }
@@ -159,12 +166,20 @@ public final class BinaryCombinator extends Combinator {
 
     @Override
     public byte[] getValue() {
-        byte[] fst = first.getValue();
-        byte[] snd = second.getValue();
-        byte[] result = new byte[2];
-        result[0] = BINARY_OP_MAGIC_BYTE;
-        result[1] = (byte) this.operation.ordinal();
-        return ByteUtils.concat(result, ByteUtils.concat(fst, snd));
+        return ByteUtils.flatten(segments());
+    }
+
+    @Override
+    byte[][] buildSegments() {
+        return ByteUtils.joinSegments(this.operation.header, first.segments(), second.segments());
+    }
+
+    @Override
+    void serialize(DataOutput out) throws IOException {
+        out.writeByte(BINARY_OP_MAGIC_BYTE);
+        out.writeByte(operation.ordinal());
+        first.serialize(out);
+        second.serialize(out);
     }
 
     @Override
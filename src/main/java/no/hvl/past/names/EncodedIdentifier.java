@@ -0,0 +1,31 @@
+package no.hvl.past.names;
+
+/**
+ * A name that has been read back from its binary representation but cannot be
+ * reconstructed as an instance of its original class, i.e. anonymous identifiers
+ * (whose representation depends on the object identity of the original)
+ * and user defined values.
+ * Since equality of names is based on the binary representation, it is still equal to the original name.
+ */
+final class EncodedIdentifier extends Identifier {
+
+    private final byte[] value;
+
+    EncodedIdentifier(byte[] value) {
+        this.value = value;
+    }
+
+    @Override
+    public byte[] getValue() {
+        return value.clone();
+    }
+
+    @Override
+    public String toString() {
+        if (value[0] == ANONYMOUS_IDENTIFIER_BYTE) {
+            return "";
+        }
+        // user values are represented by their string representation
+        return new String(value, 1, value.length - 1);
+    }
+}
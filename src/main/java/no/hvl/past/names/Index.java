@@ -2,6 +2,9 @@ package no.hvl.past.names;
 
 import no.hvl.past.util.ByteUtils;
 
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * Represents an indexing for a given name, which
  * can be used to impose an order on given names.
@@ -28,7 +31,19 @@ public class Index extends Name {
 
     @Override
     public byte[] getValue() {
-        return ByteUtils.concat(wrapped.getValue(), ByteUtils.longToByteArray(index, false));
+        return ByteUtils.flatten(segments());
+    }
+
+    @Override
+    byte[][] buildSegments() {
+        return ByteUtils.joinSegments(wrapped.segments(), new byte[][]{ByteUtils.longToByteArray(index, false)});
+    }
+
+    @Override
+    void serialize(DataOutput out) throws IOException {
+        out.writeByte(INDEX_MAGIC_BYTE);
+        wrapped.serialize(out);
+        out.writeLong(index);
     }
 
     @Override
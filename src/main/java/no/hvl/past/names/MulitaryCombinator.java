@@ -2,6 +2,8 @@ package no.hvl.past.names;
 
 import no.hvl.past.util.ByteUtils;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -20,6 +22,11 @@ public final class MulitaryCombinator extends Combinator {
             }
         };
 
+        /**
+         * The constant leading bytes of names combined with this operation.
+         */
+        private final byte[][] header = {{MULTIARY_OP_MAGIC_BYTE, (byte) this.ordinal()}};
+
         public abstract String print(PrintingStrategy strategy, List<String> arguments);
 
     }
@@ -34,13 +41,28 @@ public final class MulitaryCombinator extends Combinator {
 
     @Override
     public byte[] getValue() {
-        byte[] result = new byte[2];
-        result[0] = MULTIARY_OP_MAGIC_BYTE;
-        result[1] = (byte) op.ordinal();
+        return ByteUtils.flatten(segments());
+    }
+
+    @Override
+    byte[][] buildSegments() {
+        byte[][][] parts = new byte[names.size() + 1][][];
+        parts[0] = op.header;
+        int i = 1;
+        for (Name n : names) {
+            parts[i++] = n.segments();
+        }
+        return ByteUtils.joinSegments(parts);
+    }
+
+    @Override
+    void serialize(DataOutput out) throws IOException {
+        out.writeByte(MULTIARY_OP_MAGIC_BYTE);
+        out.writeByte(op.ordinal());
+        ByteUtils.writeVarLong(out, names.size());
         for (Name n : names) {
-            result = ByteUtils.concat(result, n.getValue());
+            n.serialize(out);
         }
-        return result;
     }
 
     @Override
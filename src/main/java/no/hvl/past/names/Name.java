@@ -3,13 +3,17 @@ package no.hvl.past.names;
 import no.hvl.past.attributes.*;
 import no.hvl.past.logic.Formula;
 import no.hvl.past.logic.Model;
+import no.hvl.past.util.ByteUtils;
 import no.hvl.past.util.ProperComparator;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.lang.reflect.Array;
 import java.math.BigInteger;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -53,17 +57,64 @@ public abstract class Name implements ProperComparator<Name>, Formula<NameSet> {
     /**
      * The byte representation may be expensive to calculate.
      * Thus it will be cashed after the first time.
+     * It is kept as a sequence of segments (a rope): composite names reuse the
+     * cached segments of their parts instead of copying them into a new array.
      */
-    private byte[] binaryRepresentation = null;
+    private volatile byte[][] binaryRepresentation = null;
+
+    /**
+     * The table in which this instance is the canonical representative (if any)
+     * and the id it has been given there, see {@link NameTable}.
+     */
+    volatile NameTable internedIn = null;
+    int internId = -1;
+
+    /**
+     * A 64-bit fingerprint of the binary representation.
+     * It is computed together with the cached binary representation.
+     */
+    private long fingerprint;
 
     /**
      * Caching getter for the binary representation.
      */
-    private byte[] getBinaryRepresentation() {
-        if (binaryRepresentation == null) {
-            binaryRepresentation = getValue();
+    private byte[][] getBinaryRepresentation() {
+        byte[][] result = binaryRepresentation;
+        if (result == null) {
+            result = buildSegments();
+            // the fingerprint is written before the segments are published, see fingerprint()
+            fingerprint = ByteUtils.hash64(result);
+            binaryRepresentation = result;
         }
-        return binaryRepresentation;
+        return result;
+    }
+
+    /**
+     * Provides the (cached) binary representation as a sequence of segments,
+     * whose concatenation is equal to {@link #getValue()}.
+     * The segments are shared and must not be modified.
+     */
+    final byte[][] segments() {
+        return getBinaryRepresentation();
+    }
+
+    /**
+     * Builds the binary representation of this name as a sequence of segments.
+     * Atomic names consist of a single segment, composite names override this method
+     * to reuse the segments of their parts.
+     */
+    byte[][] buildSegments() {
+        return new byte[][]{getValue()};
+    }
+
+    /**
+     * A stable 64-bit fingerprint (XXH64) of the binary representation of this name.
+     * Equal names always have the same fingerprint, so it can be used as a key in hash indexes
+     * or on-disk formats, while different names collide only with negligible probability.
+     */
+    public long fingerprint() {
+        getBinaryRepresentation();
+        return fingerprint;
     }
 
     /**
@@ -73,11 +124,35 @@ public abstract class Name implements ProperComparator<Name>, Formula<NameSet> {
      */
     public abstract byte[] getValue();
 
+    /**
+     * Writes this name in the self-delimiting format that is read by {@link NameDeserializer#deserialize(ByteBuffer)}.
+     * Atomic names are written as their magic byte, the length of the remaining bytes and the remaining bytes
+     * of {@link #getValue()}.
+     * Composite names override this method to write their magic byte followed by their parts,
+     * since the concatenation of the binary representations of the parts is not unambiguous.
+     */
+    void serialize(DataOutput out) throws IOException {
+        byte[] value = getValue();
+        out.writeByte(value[0]);
+        ByteUtils.writeVarLong(out, value.length - 1);
+        out.write(value, 1, value.length - 1);
+    }
+
     /**
      * Returns true if two names are the same.
      */
     public boolean identity(Name other) {
-        return Arrays.equals(this.getBinaryRepresentation(), (other.getBinaryRepresentation()));
+        if (this == other) {
+            return true;
+        }
+        if (this.internedIn != null && this.internedIn == other.internedIn) {
+            // both are canonical instances of the same table
+            return false;
+        }
+        if (this.fingerprint() != other.fingerprint()) {
+            return false;
+        }
+        return ByteUtils.segmentsEqual(this.getBinaryRepresentation(), other.getBinaryRepresentation());
     }
 
     @Override
@@ -90,7 +165,8 @@ public abstract class Name implements ProperComparator<Name>, Formula<NameSet> {
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(getBinaryRepresentation());
+        long fp = fingerprint();
+        return (int) (fp ^ (fp >>> 32));
     }
 
 
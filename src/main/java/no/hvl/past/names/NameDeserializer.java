@@ -1,5 +1,19 @@
 package no.hvl.past.names;
 
+import no.hvl.past.attributes.BoolValue;
+import no.hvl.past.attributes.ErrorValue;
+import no.hvl.past.attributes.FloatValue;
+import no.hvl.past.attributes.IntegerValue;
+import no.hvl.past.attributes.StringValue;
+import no.hvl.past.util.ByteUtils;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
 public class NameDeserializer {
 
     public NameSet deserialize(byte[] bytes) {
@@ -31,4 +45,107 @@ public class NameDeserializer {
 
     }
 
+    /**
+     * Reads a single name, which has been written by {@link NameSerializer}, from the current position
+     * of the given buffer and advances the position behind it.
+     * The result is equal to the name that was written.
+     *
+     * @throws IllegalArgumentException if the buffer does not contain a valid name at its current position.
+     */
+    public Name deserialize(ByteBuffer buffer) {
+        byte magicByte = buffer.get();
+        switch (magicByte) {
+            case Name.PREFIX_MAGIC_BYTE: {
+                Name prefix = deserialize(buffer);
+                Name nested = deserialize(buffer);
+                return new Prefix(nested, prefix);
+            }
+            case Name.INDEX_MAGIC_BYTE: {
+                Name wrapped = deserialize(buffer);
+                return new Index(wrapped, buffer.getLong());
+            }
+            case Name.UNARY_OP_MAGIC_BYTE: {
+                UnaryCombinator.Operation op = operation(UnaryCombinator.Operation.values(), buffer.get());
+                return new UnaryCombinator(deserialize(buffer), op);
+            }
+            case Name.BINARY_OP_MAGIC_BYTE: {
+                BinaryCombinator.Operation op = operation(BinaryCombinator.Operation.values(), buffer.get());
+                Name first = deserialize(buffer);
+                Name second = deserialize(buffer);
+                return new BinaryCombinator(first, second, op);
+            }
+            case Name.MULTIARY_OP_MAGIC_BYTE: {
+                MulitaryCombinator.Operation op = operation(MulitaryCombinator.Operation.values(), buffer.get());
+                return new MulitaryCombinator(deserializeList(buffer), op);
+            }
+            case Name.NAME_PATH_MAGIC_BYTE:
+                return new NamePath(deserializeList(buffer));
+            default:
+                return deserializeAtomic(magicByte, buffer);
+        }
+    }
+
+    /**
+     * Reads the given number of consecutive names from the current position of the given buffer.
+     */
+    public List<Name> deserialize(ByteBuffer buffer, int count) {
+        List<Name> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(deserialize(buffer));
+        }
+        return result;
+    }
+
+    private List<Name> deserializeList(ByteBuffer buffer) {
+        return deserialize(buffer, length(buffer));
+    }
+
+    private Name deserializeAtomic(byte magicByte, ByteBuffer buffer) {
+        byte[] payload = new byte[length(buffer)];
+        buffer.get(payload);
+        switch (magicByte) {
+            case Name.IDENTIFIER_MAGIC_BYTE:
+                return Name.identifier(new String(payload, StandardCharsets.UTF_8));
+            case Name.URI_IDENTIFIER_BYTE:
+                return new URIName(new String(payload, StandardCharsets.UTF_8));
+            case Name.UUID_IDENTIFIER_BYTE: {
+                ByteBuffer uuid = ByteBuffer.wrap(payload);
+                return new UUIDIdentifier(new UUID(uuid.getLong(), uuid.getLong()));
+            }
+            case Name.VARIABLE_MAGIC_BYTE:
+                return new Variable(new String(payload));
+            case Name.BOOL_VALUE_MAGIC_BYTE:
+                return new BoolValue(payload[0] != 0);
+            case Name.INT_VALUE_MAGIC_BYTE:
+                return new IntegerValue(new BigInteger(payload));
+            case Name.FLOAT_VALUE_MAGIC_BYTE:
+                return new FloatValue(ByteBuffer.wrap(payload).getDouble());
+            case Name.STRING_VALUE_MAGIC_BYTE:
+                return new StringValue(new String(payload));
+            case Name.ERROR_VALUE:
+                return ErrorValue.INSTANCE;
+            case Name.ANONYMOUS_IDENTIFIER_BYTE:
+            case Name.USER_VALUE_MAGIC_BYTE:
+                return new EncodedIdentifier(ByteUtils.prefix(magicByte, payload));
+            default:
+                throw new IllegalArgumentException("Unknown name type: " + Integer.toHexString(magicByte & 0xFF));
+        }
+    }
+
+    private static int length(ByteBuffer buffer) {
+        long length = ByteUtils.readVarLong(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid length " + length + " at position " + buffer.position());
+        }
+        return (int) length;
+    }
+
+    private static <E extends Enum<E>> E operation(E[] values, byte ordinal) {
+        int i = ordinal & 0xFF;
+        if (i >= values.length) {
+            throw new IllegalArgumentException("Unknown name operation: " + i);
+        }
+        return values[i];
+    }
+
 }
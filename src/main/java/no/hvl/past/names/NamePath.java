@@ -5,6 +5,8 @@ import no.hvl.past.util.ByteUtils;
 import no.hvl.past.util.ShouldNotHappenException;
 import no.hvl.past.util.StringUtils;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -40,11 +42,27 @@ public class NamePath extends Identifier {
 
     @Override
     public byte[] getValue() {
-        byte[] result = ByteUtils.prefix(NAME_PATH_MAGIC_BYTE, ByteUtils.intToByteArray(segments.size(), false));
+        return ByteUtils.flatten(segments());
+    }
+
+    @Override
+    byte[][] buildSegments() {
+        byte[][][] parts = new byte[segments.size() + 1][][];
+        parts[0] = new byte[][]{ByteUtils.prefix(NAME_PATH_MAGIC_BYTE, ByteUtils.intToByteArray(segments.size(), false))};
+        int i = 1;
         for (Name n : segments) {
-            result = ByteUtils.concat(result, n.getValue());
+            parts[i++] = n.segments();
+        }
+        return ByteUtils.joinSegments(parts);
+    }
+
+    @Override
+    void serialize(DataOutput out) throws IOException {
+        out.writeByte(NAME_PATH_MAGIC_BYTE);
+        ByteUtils.writeVarLong(out, segments.size());
+        for (Name n : segments) {
+            n.serialize(out);
         }
-        return result;
     }
 
     public NamePath parent() {
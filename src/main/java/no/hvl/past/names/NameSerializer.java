@@ -0,0 +1,34 @@
+package no.hvl.past.names;
+
+import no.hvl.past.util.ShouldNotHappenException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes names in a self-delimiting binary format, so that they can be read back
+ * with {@link NameDeserializer#deserialize(java.nio.ByteBuffer)}.
+ *
+ * The format reuses the magic bytes of {@link Name#getValue()}:
+ * atomic names (identifiers, variables, values) are written as magic byte,
+ * the length of the remainder (as variable length integer) and the remainder of their binary representation.
+ * Composite names are written as their magic byte (and operation) followed by their parts.
+ */
+public class NameSerializer {
+
+    public void serialize(Name name, DataOutput out) throws IOException {
+        name.serialize(out);
+    }
+
+    public byte[] serialize(Name name) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            serialize(name, new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new ShouldNotHappenException(NameSerializer.class, e);
+        }
+        return bytes.toByteArray();
+    }
+}
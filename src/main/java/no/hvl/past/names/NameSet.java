@@ -3,9 +3,9 @@ package no.hvl.past.names;
 import com.google.common.collect.Sets;
 import no.hvl.past.logic.Model;
 import no.hvl.past.logic.Signature;
+import no.hvl.past.util.ByteUtils;
 import no.hvl.past.util.StreamExt;
 
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
@@ -55,7 +55,7 @@ public class NameSet implements Signature, Model<NameSet> {
 
     public Name toName() {
         return Name.merge(names.stream().sorted((n1, n2) -> {
-            return Integer.compare(Arrays.hashCode(n1.getValue()), Arrays.hashCode(n2.getValue()));
+            return Integer.compare(ByteUtils.segmentsHashCode(n1.segments()), ByteUtils.segmentsHashCode(n2.segments()));
         }).collect(Collectors.toList()));
     }
 }
@@ -0,0 +1,145 @@
+package no.hvl.past.names;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An interning pool for names.
+ * It maps every name that is put into it to a single canonical instance and
+ * gives this instance a dense integer id (0, 1, 2, ...) that stays fixed for the lifetime of the table.
+ *
+ * Canonical names can be compared by reference (see {@link Name#identity(Name)}) and data structures
+ * over a fixed set of names (e.g. graphs and morphisms) can be keyed by the primitive ids instead
+ * of the names themselves.
+ * Ids are only meaningful in the context of the table that issued them.
+ *
+ * Only the {@link #global()} table records the id in the canonical instance itself, which makes repeated lookups free.
+ * Other tables are typically short-lived (e.g. the dictionary of a single stream or graph) and must neither be kept
+ * reachable by the names they contain nor take away the fast path of the global table, thus they only use their map.
+ */
+public final class NameTable {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final NameTable GLOBAL = new NameTable(INITIAL_CAPACITY, true);
+
+    private final boolean stamping;
+    private final Map<Name, Integer> ids;
+    private volatile Name[] names;
+    private int size;
+
+    public NameTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public NameTable(int expectedSize) {
+        this(expectedSize, false);
+    }
+
+    private NameTable(int expectedSize, boolean stamping) {
+        this.stamping = stamping;
+        this.ids = new ConcurrentHashMap<>(Math.max(expectedSize, 16));
+        this.names = new Name[Math.max(expectedSize, 16)];
+        this.size = 0;
+    }
+
+    /**
+     * Returns the canonical instance of the given name.
+     * If an equal name has not been interned before, the given instance becomes the canonical one.
+     */
+    public Name intern(Name name) {
+        return names[idOf(name)];
+    }
+
+    /**
+     * Returns the id of the given name, interning it if necessary.
+     */
+    public int idOf(Name name) {
+        if (name.internedIn == this) {
+            return name.internId;
+        }
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        return insert(name);
+    }
+
+    /**
+     * Returns the id of the given name if it has been interned before, otherwise -1.
+     * In contrast to {@link #idOf(Name)} the table is not modified.
+     */
+    public int lookup(Name name) {
+        if (name.internedIn == this) {
+            return name.internId;
+        }
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns true if an equal name has been interned into this table.
+     */
+    public boolean contains(Name name) {
+        return lookup(name) >= 0;
+    }
+
+    /**
+     * Retrieves the canonical name with the given id.
+     */
+    public Name get(int id) {
+        Name[] current = this.names;
+        if (id < 0 || id >= current.length || current[id] == null) {
+            throw new IndexOutOfBoundsException("There is no name with id " + id + " in this table");
+        }
+        return current[id];
+    }
+
+    /**
+     * Retrieves the canonical instance equal to the given name without interning it.
+     */
+    public Optional<Name> canonical(Name name) {
+        int id = lookup(name);
+        if (id < 0) {
+            return Optional.empty();
+        }
+        return Optional.of(names[id]);
+    }
+
+    /**
+     * The number of names in this table, which is also the next id to be issued.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private synchronized int insert(Name name) {
+        Integer existing = ids.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        int id = size;
+        Name[] current = this.names;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[id] = name;
+        this.names = current;
+        if (stamping && name.internedIn == null) {
+            name.internId = id;
+            name.internedIn = this;
+        }
+        ids.put(name, id);
+        size++;
+        return id;
+    }
+
+    /**
+     * A process wide table that can be shared by all components that do not need an own id space.
+     */
+    public static NameTable global() {
+        return GLOBAL;
+    }
+}
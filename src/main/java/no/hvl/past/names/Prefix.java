@@ -1,6 +1,9 @@
 package no.hvl.past.names;
 
+import no.hvl.past.util.ByteUtils;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Optional;
 
 public final class Prefix extends Name {
@@ -14,14 +17,23 @@ public final class Prefix extends Name {
         this.prefix = prefix;
     }
 
+    private static final byte[][] HEADER = {{PREFIX_MAGIC_BYTE}};
+
     @Override
     public byte[] getValue() {
-        int size = nested.getValue().length + prefix.getValue().length;
-        byte[] result = new byte[size + 1];
-        result[0] = PREFIX_MAGIC_BYTE;
-        System.arraycopy(prefix.getValue(), 0, result, 1, prefix.getValue().length);
-        System.arraycopy(nested.getValue(), 0, result, prefix.getValue().length + 1, nested.getValue().length);
-        return result;
+        return ByteUtils.flatten(segments());
+    }
+
+    @Override
+    byte[][] buildSegments() {
+        return ByteUtils.joinSegments(HEADER, prefix.segments(), nested.segments());
+    }
+
+    @Override
+    void serialize(DataOutput out) throws IOException {
+        out.writeByte(PREFIX_MAGIC_BYTE);
+        prefix.serialize(out);
+        nested.serialize(out);
     }
 
     @Override
@@ -41,7 +41,7 @@ public class UUIDIdentifier extends Identifier {
 
     private final UUID uuid;
 
-    private UUIDIdentifier(UUID uuid) {
+    UUIDIdentifier(UUID uuid) {
         this.uuid = uuid;
     }
 
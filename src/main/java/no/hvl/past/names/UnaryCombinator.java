@@ -3,6 +3,9 @@ package no.hvl.past.names;
 
 import no.hvl.past.util.ByteUtils;
 
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * A unary combinator is a special case of a names combinator consisting of
  * only a single name. It can thus be thougth of as a modifier.
@@ -78,6 +81,11 @@ public final class UnaryCombinator extends Combinator {
 
 
 
+        /**
+         * The constant leading bytes of names combined with this operation.
+         */
+        private final byte[][] header = {{UNARY_OP_MAGIC_BYTE, (byte) this.ordinal()}};
+
         public abstract String print(PrintingStrategy strategy, String nested);
     }
 
@@ -93,11 +101,19 @@ public final class UnaryCombinator extends Combinator {
 
     @Override
     public byte[] getValue() {
-        byte[] value = nested.getValue();
-        byte[] result = new byte[2];
-        result[0] = UNARY_OP_MAGIC_BYTE;
-        result[1] =  (byte) this.op.ordinal();
-        return ByteUtils.concat(result, value);
+        return ByteUtils.flatten(segments());
+    }
+
+    @Override
+    byte[][] buildSegments() {
+        return ByteUtils.joinSegments(this.op.header, nested.segments());
+    }
+
+    @Override
+    void serialize(DataOutput out) throws IOException {
+        out.writeByte(UNARY_OP_MAGIC_BYTE);
+        out.writeByte(op.ordinal());
+        nested.serialize(out);
     }
 
     @Override
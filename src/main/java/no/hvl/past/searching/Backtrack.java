@@ -9,6 +9,7 @@ import java.util.*;
  * It is basically a search algorithm that tries different
  * choices, applying them if applicable and if necessary going back
  * to an earlier state if a taken choice was not successful.
+ * A run can be limited by a {@link SearchBudget}, where every visited state counts as an expansion.
  * @param <C> The type of Choices that the algorithm can make.
  * @param <R> The result type that the algorithm should produce in the end.
  */
@@ -78,7 +79,7 @@ public class Backtrack<C, R> {
             this.choices = choices;
         }
 
-        void perform(Set<Strategies> strategies) {
+        void perform(Set<Strategies> strategies, SearchBudget budget) {
            // System.out.println(this.state);
             if (strategies.contains(Strategies.STATE_HASHING)) {
                 visited.add(this.state.hash());
@@ -86,7 +87,10 @@ public class Backtrack<C, R> {
 
             if (choices.isEmpty() || state.isDone()) {
                 if (state.isDone()) {
-                    results.add(state.getResult());
+                    R result = state.getResult();
+                    if (!results.contains(result) && budget.solutionFound()) {
+                        results.add(result);
+                    }
                 }
                 return;
             }
@@ -104,37 +108,47 @@ public class Backtrack<C, R> {
     }
 
     public Set<R> backtrackAllResults(BacktrackState<C, R> startState, Set<C> startChoices, Set<Strategies> strategies) {
-        processes.add(new BacktrackProcess(startState, startChoices));
-        while (!this.processes.isEmpty()) {
-            Set<BacktrackProcess> copy = new HashSet<>();
-            copy.addAll(this.processes);
-            this.processes.clear();
-            for (BacktrackProcess p : copy) {
-                if (strategies.contains(Strategies.STATE_HASHING) && this.visited.contains(p.hash())) {
+        return backtrackAllResults(startState, startChoices, strategies, SearchBudget.unlimited()).getResult();
+    }
 
-                }
-                p.perform(strategies);
-            }
-        }
-        return results;
+    /**
+     * Collects all results that can be reached within the given budget.
+     */
+    public SearchResult<Set<R>> backtrackAllResults(BacktrackState<C, R> startState, Set<C> startChoices, Set<Strategies> strategies, SearchBudget budget) {
+        run(startState, startChoices, strategies, budget, false);
+        return new SearchResult<>(results, budget.getStatus());
     }
 
     public Optional<R> backtrackFirstResult(BacktrackState<C, R> startState, Set<C> startChoices,  Set<Strategies> strategies) {
+        return backtrackFirstResult(startState, startChoices, strategies, SearchBudget.unlimited()).getResult();
+    }
+
+    /**
+     * Searches for the first result within the given budget.
+     */
+    public SearchResult<Optional<R>> backtrackFirstResult(BacktrackState<C, R> startState, Set<C> startChoices, Set<Strategies> strategies, SearchBudget budget) {
+        run(startState, startChoices, strategies, budget, true);
+        return new SearchResult<>(results.stream().findFirst(), budget.getStatus());
+    }
+
+    private void run(BacktrackState<C, R> startState, Set<C> startChoices, Set<Strategies> strategies, SearchBudget budget, boolean firstOnly) {
         processes.add(new BacktrackProcess(startState, startChoices));
         while (!this.processes.isEmpty()) {
             Set<BacktrackProcess> copy = new HashSet<>();
             copy.addAll(this.processes);
             this.processes.clear();
-            for (BacktrackProcess p : processes) {
-                p.perform(strategies);
-                if (!results.isEmpty()) {
-                    return Optional.of(results.iterator().next());
+            for (BacktrackProcess p : copy) {
+                if (budget.isExhausted() || !budget.expand()) {
+                    this.processes.clear();
+                    return;
+                }
+                p.perform(strategies, budget);
+                if (firstOnly && !results.isEmpty()) {
+                    this.processes.clear();
+                    return;
                 }
             }
         }
-        return Optional.empty();
     }
 
-
-
 }
@@ -1,100 +1,269 @@
 package no.hvl.past.searching;
 
-import no.hvl.past.util.Pair;
-
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.stream.Collectors;
-
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A solver for constraint satisfaction problems with binary constraints and all-diff constraints.
+ *
+ * All values of all variables are collected in a value table.
+ * The domain of a variable is a bitset over the positions of its initial values,
+ * which are kept in the order of the value table such that the id of a value can be found by binary search.
+ * The search maintains arc consistency (AC-3 with residual supports) and the all-diff constraints
+ * on a single state, where all domain reductions are recorded on a trail and undone on backtrack.
+ * Solutions are produced one by one, see {@link #solutions()}.
+ * All searches can be limited by a {@link SearchBudget}, where every assignment of a value counts as an expansion.
+ */
 public class CSPSolver<D, V extends CSPSolver.Variable<D>> {
 
+    /**
+     * The state of a single variable during the search.
+     */
     private static class VariableAssignment<D, V extends  Variable<D>> {
         private final V variable;
-        private final List<D> possibleValues;
-        private final List<BinaryConstraint<D>> subjectTo;
-
-        private VariableAssignment(V variable, List<D> possibleValues, List<BinaryConstraint<D>> subjectTo) {
+        private final List<D> values;
+        private final int[] ids;
+        private final long[] domain;
+        private int size;
+        private final List<Arc<D>> dependents = new ArrayList<>();
+        private final List<VariableAssignment<D, V>[]> allDiffGroups = new ArrayList<>();
+
+        private VariableAssignment(V variable, List<D> values, int[] ids) {
             this.variable = variable;
-            this.possibleValues = possibleValues;
-            this.subjectTo = subjectTo;
+            this.values = values;
+            this.ids = ids;
+            this.domain = new long[(ids.length + 63) >>> 6];
+            for (int i = 0; i < ids.length; i++) {
+                domain[i >>> 6] |= 1L << i;
+            }
+            this.size = ids.length;
+        }
+
+        private VariableAssignment(VariableAssignment<D, V> original) {
+            this.variable = original.variable;
+            this.values = original.values;
+            this.ids = original.ids;
+            this.domain = original.domain.clone();
+            this.size = original.size;
+        }
+
+        private boolean contains(int position) {
+            return (domain[position >>> 6] & (1L << position)) != 0;
+        }
+
+        /**
+         * Returns the position of the first possible value or -1 if the domain is empty.
+         */
+        private int first() {
+            for (int w = 0; w < domain.length; w++) {
+                if (domain[w] != 0) {
+                    return (w << 6) + Long.numberOfTrailingZeros(domain[w]);
+                }
+            }
+            return -1;
+        }
+
+        private int[] positions() {
+            int[] result = new int[size];
+            int k = 0;
+            for (int w = 0; w < domain.length; w++) {
+                long word = domain[w];
+                while (word != 0) {
+                    result[k++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return result;
+        }
+
+        private void setWord(int w, long word, Trail trail) {
+            trail.record(this, w);
+            size += Long.bitCount(word) - Long.bitCount(domain[w]);
+            domain[w] = word;
         }
 
         /**
          * Performs a choice for this variable assignment, i.e. it picks the value that has been considered best.
          */
-        private void assign(D value) {
-            this.possibleValues.removeIf(x -> !x.equals(value));
+        private void assign(int position, Trail trail) {
+            for (int w = 0; w < domain.length; w++) {
+                long word = w == position >>> 6 ? 1L << position : 0L;
+                if (domain[w] != word) {
+                    setWord(w, word, trail);
+                }
+            }
+        }
+
+        /**
+         * Prunes the value with the given id if it is still possible.
+         */
+        private boolean removeId(int id, Trail trail) {
+            int position = Arrays.binarySearch(ids, id);
+            if (position < 0 || !contains(position)) {
+                return false;
+            }
+            setWord(position >>> 6, domain[position >>> 6] & ~(1L << position), trail);
+            return true;
         }
 
         /**
          * Return true if this CSP problem is unresolvable, i.e. the domain of possible value has no solution anymore.
          */
         private boolean isUnresolvable() {
-            return possibleValues.isEmpty();
+            return size == 0;
         }
 
         /**
          * Returns true if this variable has been determined.
          */
         private boolean isFinished() {
-            return possibleValues.size() == 1;
+            return size == 1;
         }
 
         /**
          * Provides the degree of freedom for this variable, i.e. the number of choices we hav to assign it.
          */
         private int freenesDegree() {
-            return possibleValues.size();
+            return size;
         }
 
-        private Optional<Pair<Variable<D>, D>> getAssignment() {
-            if (isFinished()) {
-                return Optional.of(new Pair<>(this.variable, this.possibleValues.get(0)));
-            }
-            return Optional.empty();
+        private D value() {
+            return values.get(first());
         }
+    }
 
-        private VariableAssignment<D, V> deepCopy() {
-            return new VariableAssignment<>(variable, new ArrayList<>(this.possibleValues), subjectTo);
+    /**
+     * A binary constraint seen from one of its variables, i.e. the domain of the revised variable
+     * is revised against the domain of the supporting variable.
+     * For every value of the revised variable the last found support is remembered,
+     * such that it only has to be searched again when it has been pruned.
+     * Residual supports stay valid on backtrack, thus they are not recorded on the trail.
+     */
+    private static class Arc<D> {
+        private final BinaryConstraint<D> constraint;
+        private final VariableAssignment<D, ?> revised;
+        private final VariableAssignment<D, ?> support;
+        private final boolean revisedIsLhs;
+        private final int[] residues;
+        private Arc<D> reverse;
+        private boolean queued;
+
+        private Arc(BinaryConstraint<D> constraint, VariableAssignment<D, ?> revised, VariableAssignment<D, ?> support, boolean revisedIsLhs) {
+            this.constraint = constraint;
+            this.revised = revised;
+            this.support = support;
+            this.revisedIsLhs = revisedIsLhs;
+            this.residues = new int[revised.ids.length];
+            Arrays.fill(residues, -1);
         }
 
+        private Arc(Arc<D> original, VariableAssignment<D, ?> revised, VariableAssignment<D, ?> support) {
+            this.constraint = original.constraint;
+            this.revised = revised;
+            this.support = support;
+            this.revisedIsLhs = original.revisedIsLhs;
+            this.residues = original.residues.clone();
+        }
 
-        public boolean revise(BinaryConstraint<D> current, List<D> possibleValues) {
-            boolean revised = false;
-            if (current.lhs().equals(this.variable)) {
-                Iterator<D> thisIterator = this.possibleValues.iterator();
-                while (thisIterator.hasNext()){
-                    D thisValue = thisIterator.next();
-                    boolean hasFriend = false;
-                    for (D other : possibleValues) {
-                        if (current.satisfied(thisValue, other)) {
-                            hasFriend = true;
-                        }
-                    }
-                    if (!hasFriend) {
-                        thisIterator.remove();
-                        revised = true;
+        private boolean hasSupport(int position) {
+            int residue = residues[position];
+            if (residue >= 0 && support.contains(residue)) {
+                return true;
+            }
+            D value = revised.values.get(position);
+            for (int w = 0; w < support.domain.length; w++) {
+                long word = support.domain[w];
+                while (word != 0) {
+                    int other = (w << 6) + Long.numberOfTrailingZeros(word);
+                    D otherValue = support.values.get(other);
+                    if (revisedIsLhs ? constraint.satisfied(value, otherValue) : constraint.satisfied(otherValue, value)) {
+                        residues[position] = other;
+                        return true;
                     }
+                    word &= word - 1;
                 }
-            } else {
-                Iterator<D> thisIterator = this.possibleValues.iterator();
-                while (thisIterator.hasNext()){
-                    D thisValue = thisIterator.next();
-                    boolean hasFriend = false;
-                    for (D other : possibleValues) {
-                        if (current.satisfied(other, thisValue)) {
-                            hasFriend = true;
-                        }
-                    }
-                    if (!hasFriend) {
-                        thisIterator.remove();
-                        revised = true;
+            }
+            return false;
+        }
+
+        /**
+         * Removes all values from the revised domain that have no support.
+         */
+        private boolean revise(Trail trail) {
+            boolean revised = false;
+            long[] domain = this.revised.domain;
+            for (int w = 0; w < domain.length; w++) {
+                long word = domain[w];
+                long keep = word;
+                while (word != 0) {
+                    int bit = Long.numberOfTrailingZeros(word);
+                    if (!hasSupport((w << 6) + bit)) {
+                        keep &= ~(1L << bit);
                     }
+                    word &= word - 1;
+                }
+                if (keep != domain[w]) {
+                    this.revised.setWord(w, keep, trail);
+                    revised = true;
                 }
             }
             return revised;
         }
     }
 
+    /**
+     * Records the domain words of variables before they are pruned,
+     * such that all reductions since a certain point in the search can be undone.
+     */
+    private static class Trail {
+        private VariableAssignment<?, ?>[] variables = new VariableAssignment<?, ?>[64];
+        private int[] words = new int[64];
+        private long[] oldWords = new long[64];
+        private int[] oldSizes = new int[64];
+        private int top = 0;
+
+        private void record(VariableAssignment<?, ?> var, int word) {
+            if (top == variables.length) {
+                variables = Arrays.copyOf(variables, top * 2);
+                words = Arrays.copyOf(words, top * 2);
+                oldWords = Arrays.copyOf(oldWords, top * 2);
+                oldSizes = Arrays.copyOf(oldSizes, top * 2);
+            }
+            variables[top] = var;
+            words[top] = word;
+            oldWords[top] = var.domain[word];
+            oldSizes[top] = var.size;
+            top++;
+        }
+
+        private int mark() {
+            return top;
+        }
+
+        /**
+         * Forgets all recorded changes, i.e. the current state can no longer be undone.
+         */
+        private void clear() {
+            Arrays.fill(variables, 0, top, null);
+            top = 0;
+        }
+
+        private void undo(int mark) {
+            while (top > mark) {
+                top--;
+                VariableAssignment<?, ?> var = variables[top];
+                var.domain[words[top]] = oldWords[top];
+                var.size = oldSizes[top];
+                variables[top] = null;
+            }
+        }
+    }
+
     public interface Variable<D> {
 
         Set<D> possibleValues();
@@ -129,227 +298,413 @@ public class CSPSolver<D, V extends CSPSolver.Variable<D>> {
         public AllDiffConstraint(List<Variable<D>> variables) {
             this.variables = variables;
         }
+    }
 
-        boolean satisfied(List<D> values) {
-            Set<D> check = new HashSet<>();
-            for (D value : values) {
-                if (check.contains(value)) {
-                    return false;
+    private final List<VariableAssignment<D, V>> assignments;
+    private final List<VariableAssignment<D, V>> constrained = new ArrayList<>();
+    private final List<VariableAssignment<D, V>> isolated = new ArrayList<>();
+    private final List<VariableAssignment<D, V>[]> allDiffGroups;
+    private final long[] seen;
+    private final Trail trail = new Trail();
+    private final Deque<Arc<D>> arcQueue = new ArrayDeque<>();
+    private final Deque<VariableAssignment<D, V>> fixedQueue = new ArrayDeque<>();
+    private int generations = 0;
+
+    private CSPSolver(List<VariableAssignment<D, V>> assignments, List<VariableAssignment<D, V>[]> allDiffGroups, int valueCount) {
+        this.assignments = assignments;
+        this.allDiffGroups = allDiffGroups;
+        this.seen = new long[(valueCount + 63) >>> 6];
+        // variables that are neither subject to a binary constraint nor to an all-diff constraint
+        // are only assigned after all other variables, i.e. the constrained part of the problem is solved only once
+        // and combined with all values of the unconstrained variables.
+        for (VariableAssignment<D, V> var : assignments) {
+            if (var.dependents.isEmpty() && var.allDiffGroups.isEmpty()) {
+                isolated.add(var);
+            } else {
+                constrained.add(var);
+            }
+        }
+    }
+
+    /**
+     * Creates an independent copy of the current state of the given solver, used to search a subtree in parallel.
+     */
+    @SuppressWarnings("unchecked")
+    private CSPSolver(CSPSolver<D, V> original) {
+        Map<VariableAssignment<D, V>, VariableAssignment<D, V>> copies = new IdentityHashMap<>();
+        for (VariableAssignment<D, V> var : original.assignments) {
+            copies.put(var, new VariableAssignment<>(var));
+        }
+        for (VariableAssignment<D, V> var : original.assignments) {
+            for (Arc<D> arc : var.dependents) {
+                if (arc.revisedIsLhs) {
+                    Arc<D> revisesLhs = new Arc<>(arc, copies.get(arc.revised), copies.get(arc.support));
+                    Arc<D> revisesRhs = new Arc<>(arc.reverse, copies.get(arc.support), copies.get(arc.revised));
+                    revisesLhs.reverse = revisesRhs;
+                    revisesRhs.reverse = revisesLhs;
+                    copies.get(arc.support).dependents.add(revisesLhs);
+                    copies.get(arc.revised).dependents.add(revisesRhs);
                 }
-                check.add(value);
             }
-            return true;
         }
+        this.allDiffGroups = new ArrayList<>();
+        for (VariableAssignment<D, V>[] group : original.allDiffGroups) {
+            VariableAssignment<D, V>[] copy = Arrays.stream(group).map(copies::get).toArray(VariableAssignment[]::new);
+            allDiffGroups.add(copy);
+            for (VariableAssignment<D, V> var : copy) {
+                var.allDiffGroups.add(copy);
+            }
+        }
+        this.assignments = original.assignments.stream().map(copies::get).collect(Collectors.toList());
+        original.constrained.forEach(var -> constrained.add(copies.get(var)));
+        original.isolated.forEach(var -> isolated.add(copies.get(var)));
+        this.seen = new long[original.seen.length];
     }
 
-    private final Map<? extends Variable<D>, VariableAssignment<D, V>> assignments;
-    private final Set<AllDiffConstraint<D>> allDiffConstraints;
+    /**
+     * Finds all solutions of this problem.
+     */
+    public Set<Map<V, D>> backtrackAllSolutions() {
+        return backtrackAllSolutions(SearchBudget.unlimited()).getResult();
+    }
 
-    private CSPSolver(Map<V, VariableAssignment<D, V>> assignments, Set<AllDiffConstraint<D>> allDiffConstraints) {
-        this.assignments = assignments;
-        this.allDiffConstraints = allDiffConstraints;
+    /**
+     * Finds all solutions of this problem within the given budget.
+     */
+    public SearchResult<Set<Map<V, D>>> backtrackAllSolutions(SearchBudget budget) {
+        Set<Map<V, D>> result = new HashSet<>();
+        solutionIterator(budget).forEachRemaining(result::add);
+        return new SearchResult<>(result, budget.getStatus());
     }
 
-    private CSPSolver<D, V> deepCopy() {
-        Map<V, VariableAssignment<D,V>> result = new HashMap<>();
-        for (Map.Entry<? extends Variable<D>, VariableAssignment<D, V>> entr : this.assignments.entrySet()) {
-            result.put(entr.getValue().variable, entr.getValue().deepCopy());
-        }
-        return new CSPSolver<>(result, this.allDiffConstraints);
+    /**
+     * Finds some solution of this problem, returns an empty map if there is none.
+     */
+    public Map<V, D> backTrackOneSolution() {
+        return backTrackOneSolution(SearchBudget.unlimited()).getResult().orElseGet(HashMap::new);
     }
 
-    private Set<CSPSolver<D, V>> splitIsolatedProblems() {
-        Set<VariableAssignment<D, V>> isolated = this.assignments.values().stream()
-                .filter(a -> a.subjectTo.isEmpty()).collect(Collectors.toSet());
-        isolated.forEach(a -> this.assignments.remove(a.variable));
-        return isolated.stream().map(a -> new CSPSolver<>(Collections.singletonMap(a.variable, a), allDiffConstraints)).collect(Collectors.toSet());
+    /**
+     * Finds some solution of this problem within the given budget.
+     */
+    public SearchResult<Optional<Map<V, D>>> backTrackOneSolution(SearchBudget budget) {
+        Iterator<Map<V, D>> iterator = solutionIterator(budget);
+        Optional<Map<V, D>> result = iterator.hasNext() ? Optional.of(iterator.next()) : Optional.empty();
+        return new SearchResult<>(result, budget.getStatus());
     }
 
+    /**
+     * Provides the solutions of this problem as a lazy stream,
+     * i.e. the search only proceeds as far as solutions are consumed.
+     * See {@link #solutionIterator()} for the restrictions.
+     */
+    public Stream<Map<V, D>> solutions() {
+        return solutions(SearchBudget.unlimited());
+    }
 
-    public Set<Map<V, D>> backtrackAllSolutions() {
-        if (isUnresolvable()) {
-            return Collections.emptySet();
-        }
-        if (isComplete()) {
-            if (isValid()) {
-                return Collections.singleton(this.assignments.values()
-                        .stream()
-                        .map(v -> new Pair<>(v.variable, v.possibleValues.get(0)))
-                        .collect(Collectors.toMap(Pair::getFirst, Pair::getSecond)));
-            } else {
-                return Collections.emptySet();
-            }
-        }
+    /**
+     * Provides the solutions of this problem as a lazy stream, which ends when the given budget is exhausted.
+     */
+    public Stream<Map<V, D>> solutions(SearchBudget budget) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(solutionIterator(budget), Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
 
-        if (canSplitInSubproblem()) {
-            Set<CSPSolver<D, V>> isolatedProblems = splitIsolatedProblems();
-            Set<Map<V, D>> thisSolutions = this.backtrackAllSolutions();
-            return combineMany(thisSolutions, isolatedProblems);
-        }
+    /**
+     * Provides an iterator that searches for the next solution whenever it is asked for.
+     * The search works on the state of this solver, thus it must not be used by several threads at the same time
+     * and starting a new enumeration invalidates all previous ones
+     * (they throw a {@link ConcurrentModificationException}).
+     */
+    public Iterator<Map<V, D>> solutionIterator() {
+        return solutionIterator(SearchBudget.unlimited());
+    }
 
-        VariableAssignment<D, V> var = findMostRestricted();
-        Set<Map<V, D>> result = new HashSet<>();
-        for (D value : var.possibleValues) {
-            if (isConsistent(var, value)) {
-                CSPSolver<D, V> child = this.deepCopy();
-                child.assign(var, value);
-                if (!child.inference(var)) {
-                    result.addAll(child.backtrackAllSolutions());
-                }
-            }
-        }
+    /**
+     * Provides an iterator over the solutions that ends when the given budget is exhausted.
+     */
+    public Iterator<Map<V, D>> solutionIterator(SearchBudget budget) {
+        return new SolutionIterator(budget);
+    }
 
-        return result;
+    /**
+     * Finds all solutions of this problem by searching the subtrees below the first choices in parallel.
+     * The values of the most restricted variable are split into subtasks, each working on its own copy of the state,
+     * until the given split depth is reached, from where on the subtasks search sequentially.
+     * The solutions are the same as the ones of {@link #backtrackAllSolutions()}.
+     * Starting the search invalidates all previous enumerations (see {@link #solutionIterator()}).
+     */
+    public Set<Map<V, D>> backtrackAllSolutions(ForkJoinPool pool, int splitDepth) {
+        return backtrackAllSolutions(pool, splitDepth, SearchBudget.unlimited()).getResult();
+    }
 
+    /**
+     * Parallel variant of {@link #backtrackAllSolutions(SearchBudget)}, the budget is shared by all subtasks.
+     */
+    public SearchResult<Set<Map<V, D>>> backtrackAllSolutions(ForkJoinPool pool, int splitDepth, SearchBudget budget) {
+        reset();
+        CSPSolver<D, V> root = new CSPSolver<>(this);
+        if (root.makeConsistent()) {
+            return new SearchResult<>(new HashSet<>(), budget.getStatus());
+        }
+        Set<Map<V, D>> result = new HashSet<>(pool.invoke(new SearchTask<>(root, splitDepth, budget)));
+        return new SearchResult<>(result, budget.getStatus());
     }
 
+    private static class SearchTask<D, V extends Variable<D>> extends RecursiveTask<List<Map<V, D>>> {
+        private static final long serialVersionUID = 1L;
 
+        private final transient CSPSolver<D, V> solver;
+        private final int remainingSplits;
+        private final transient SearchBudget budget;
 
-    public Map<V, D> backTrackOneSolution() {
-        if (isUnresolvable()) {
-            return Collections.emptyMap();
-        }
-        if (isComplete()) {
-            if (isValid()) {
-                return this.assignments.values()
-                        .stream()
-                        .map(v -> new Pair<>(v.variable, v.possibleValues.get(0)))
-                        .collect(Collectors.toMap(Pair::getFirst, Pair::getSecond));
-            } else {
-                return Collections.emptyMap();
-            }
+        private SearchTask(CSPSolver<D, V> solver, int remainingSplits, SearchBudget budget) {
+            this.solver = solver;
+            this.remainingSplits = remainingSplits;
+            this.budget = budget;
         }
 
-        if (canSplitInSubproblem()) {
-            Set<CSPSolver<D, V>> isolatedProblems = splitIsolatedProblems();
-            Map<V, D> thisSolution = this.backTrackOneSolution();
-            if (!thisSolution.isEmpty()) {
-                return combineOne(thisSolution, isolatedProblems);
-            } else {
-                return thisSolution;
+        @Override
+        protected List<Map<V, D>> compute() {
+            List<Map<V, D>> result = new ArrayList<>();
+            VariableAssignment<D, V> var = solver.nextVariable();
+            if (var == null || remainingSplits <= 0) {
+                // the copied state is the root of the sequential search
+                solver.solutionIterator(budget).forEachRemaining(result::add);
+                return result;
             }
-        }
-
-        VariableAssignment<D, V> var = findMostRestricted();
-        for (D value : var.possibleValues) {
-            if (isConsistent(var, value)) {
-                CSPSolver<D, V> child = this.deepCopy();
-                child.assign(var, value);
-                if (!child.inference(var)) {
-                    Map<V, D> result = child.backTrackOneSolution();
-                    if (!result.isEmpty()) {
-                        return result;
-                    }
+            List<SearchTask<D, V>> subtasks = new ArrayList<>();
+            for (int position : var.positions()) {
+                if (!budget.expand()) {
+                    break;
+                }
+                CSPSolver<D, V> child = new CSPSolver<>(solver);
+                VariableAssignment<D, V> childVar = child.assignments.get(solver.assignments.indexOf(var));
+                childVar.assign(position, child.trail);
+                if (!child.inference(childVar)) {
+                    // the state after the choice becomes the initial state of the child
+                    child.trail.clear();
+                    subtasks.add(new SearchTask<>(child, remainingSplits - 1, budget));
                 }
             }
+            for (SearchTask<D, V> task : ForkJoinTask.invokeAll(subtasks)) {
+                result.addAll(task.join());
+            }
+            return result;
         }
-        return Collections.emptyMap();
     }
 
-    private boolean canSplitInSubproblem() {
-        return this.assignments.size() > 1 && assignments.values().stream().anyMatch(a -> a.subjectTo.isEmpty() && allDiffConstraints.stream().noneMatch(cons -> cons.variables.contains(a.variable)));
+    /**
+     * Resets the state to the initial one and invalidates all running enumerations.
+     */
+    private int reset() {
+        trail.undo(0);
+        return ++generations;
     }
 
-    private Set<Map<V,D>> combineMany(Set<Map<V,D>> thisSolutions, Set<CSPSolver<D,V>> isolatedProblems) {
-        Set<Map<V, D>> result = new HashSet<>(thisSolutions);
-        for (CSPSolver<D, V> solver : isolatedProblems) {
-            Set<Map<V, D>> next = new HashSet<>();
-            for (Map<V, D> nested : solver.backtrackAllSolutions()) {
-                if (!nested.isEmpty()) {
-                    for (Map<V, D> current : result) {
-                        Map<V, D> nextMap = new HashMap<>();
-                        nextMap.putAll(current);
-                        nextMap.putAll(nested);
-                        next.add(nextMap);
-                    }
-                }
+    /**
+     * Makes the initial problem consistent, which in particular checks constraints between fixed variables.
+     * Returns true if an inconsistency is found.
+     */
+    private boolean makeConsistent() {
+        if (assignments.stream().anyMatch(VariableAssignment::isUnresolvable)) {
+            return true;
+        }
+        for (VariableAssignment<D, V> var : constrained) {
+            var.dependents.forEach(this::enqueue);
+            if (var.isFinished()) {
+                fixedQueue.add(var);
             }
-            result = next;
         }
-        return result;
+        return propagate();
+    }
+
+    private VariableAssignment<D, V> nextVariable() {
+        VariableAssignment<D, V> var = findMostRestricted(constrained);
+        if (var == null) {
+            var = isolated.stream().filter(v -> v.freenesDegree() > 1).findFirst().orElse(null);
+        }
+        return var;
+    }
 
+    private Map<V, D> currentSolution() {
+        Map<V, D> solution = new HashMap<>();
+        assignments.forEach(v -> solution.put(v.variable, v.value()));
+        return solution;
     }
 
-    private Map<V,D> combineOne(Map<V,D> thisSolution, Set<CSPSolver<D,V>> isolatedProblems) {
-        for (CSPSolver<D, V> solver : isolatedProblems) {
-            thisSolution.putAll(solver.backTrackOneSolution());
+    /**
+     * A single choice point of the search: the values of a variable that are tried one after the other
+     * and the trail position from before the first of them has been assigned.
+     */
+    private static class ChoicePoint<D, V extends Variable<D>> {
+        private final VariableAssignment<D, V> variable;
+        private final int[] positions;
+        private final int mark;
+        private int next = 0;
+
+        private ChoicePoint(VariableAssignment<D, V> variable, int mark) {
+            this.variable = variable;
+            this.positions = variable.positions();
+            this.mark = mark;
         }
-        return thisSolution;
     }
 
     /**
-     * Performs the AC-3 algorithm to perform inference.
-     * Returns true if an inconsistency is found.
-     * @param var
-     * @return
+     * Performs the backtracking with an explicit stack of choice points such that it can be interrupted after every solution.
      */
-    private boolean inference(VariableAssignment<D, V> var) {
-        List<Pair<Variable<D>, BinaryConstraint<D>>> queue = var.subjectTo.stream().map(c -> new Pair<Variable<D>, BinaryConstraint<D>>(var.variable, c)).collect(Collectors.toList());
-
-        // when there are all-diff constraints we can reduce the value sets even quicker.
-        for (AllDiffConstraint<D> allDiffConstraint : allDiffConstraints) {
-            D assigned = this.assignments.get(var.variable).possibleValues.get(0);
-            for (VariableAssignment<D, V> ass : allDiffConstraint.variables.stream().filter(v -> !v.equals(var.variable)).map(this.assignments::get).collect(Collectors.toSet())) {
-                if (ass.possibleValues.remove(assigned)) {
-            //        ass.subjectTo.stream().filter(cons -> !cons.lhs().equals(var.variable) && !cons.rhs().equals(var.variable)).forEach(c -> queue.add(new Pair<>(ass.variable, c)));
+    private class SolutionIterator implements Iterator<Map<V, D>> {
+        private final int generation;
+        private final SearchBudget budget;
+        private final Deque<ChoicePoint<D, V>> stack = new ArrayDeque<>();
+        private boolean descend;
+        private boolean finished;
+        private Map<V, D> next;
+
+        private SolutionIterator(SearchBudget budget) {
+            this.generation = reset();
+            this.budget = budget;
+            this.descend = !makeConsistent();
+            this.finished = !descend;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !finished) {
+                if (generation != generations) {
+                    throw new ConcurrentModificationException("Another search has been started on this problem");
+                }
+                next = search();
+                if (next != null && !budget.solutionFound()) {
+                    next = null;
+                }
+                if (next == null) {
+                    finished = true;
+                    trail.undo(0);
                 }
             }
+            return next != null;
         }
 
-        // AC-3
-        while (!queue.isEmpty()) {
-            Pair<Variable<D>, BinaryConstraint<D>> current = queue.get(0);
-            queue.remove(0);
-            boolean revised = false;
-            if (current.getSecond().lhs().equals(current.getFirst())) {
-                revised = this.assignments.get(current.getSecond().rhs()).revise(current.getSecond(),this.assignments.get(current.getSecond().lhs()).possibleValues);
-                if (revised) {
-                    if (this.assignments.get(current.getSecond().rhs()).isUnresolvable()) {
-                        return true;
-                    }
-                    this.assignments.get(current.getSecond().rhs()).subjectTo.stream().filter(c -> !c.equals(current.getSecond())).forEach(c -> queue.add(new Pair<>(current.getSecond().rhs(), c)));
-                }
+        @Override
+        public Map<V, D> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map<V, D> result = next;
+            next = null;
+            return result;
+        }
 
-            } else {
-                revised = this.assignments.get(current.getSecond().lhs()).revise(current.getSecond(), this.assignments.get(current.getSecond().rhs()).possibleValues);
-                if (revised) {
-                    if (this.assignments.get(current.getSecond().lhs()).isUnresolvable()) {
-                        return true;
+        private Map<V, D> search() {
+            while (true) {
+                if (descend) {
+                    VariableAssignment<D, V> var = nextVariable();
+                    if (var == null) {
+                        descend = false;
+                        if (isValid()) {
+                            return currentSolution();
+                        }
+                    } else {
+                        stack.push(new ChoicePoint<>(var, trail.mark()));
                     }
                 }
-                this.assignments.get(current.getSecond().lhs()).subjectTo.stream().filter(c -> !c.equals(current.getSecond())).forEach(c -> new Pair<>(current.getSecond().lhs(),c));
+                ChoicePoint<D, V> current = stack.peek();
+                if (current == null) {
+                    return null;
+                }
+                trail.undo(current.mark);
+                if (current.next == current.positions.length) {
+                    stack.pop();
+                    descend = false;
+                } else if (!budget.expand()) {
+                    return null;
+                } else {
+                    current.variable.assign(current.positions[current.next++], trail);
+                    descend = !inference(current.variable);
+                }
             }
         }
-        return false;
     }
 
-    private void assign(VariableAssignment<D, V> var, D value) {
-        this.assignments.get(var.variable).assign(value);
+    /**
+     * Propagates the assignment of the given variable.
+     * Returns true if an inconsistency is found.
+     */
+    private boolean inference(VariableAssignment<D, V> var) {
+        var.dependents.forEach(this::enqueue);
+        fixedQueue.add(var);
+        return propagate();
+    }
+
+    private void enqueue(Arc<D> arc) {
+        if (!arc.queued) {
+            arc.queued = true;
+            arcQueue.add(arc);
+        }
     }
 
-    private boolean isUnresolvable() {
-        return this.assignments.entrySet().stream().anyMatch(kv -> kv.getValue().isUnresolvable());
+    private void changed(VariableAssignment<D, V> var, Arc<D> cause) {
+        for (Arc<D> arc : var.dependents) {
+            if (arc != cause) {
+                enqueue(arc);
+            }
+        }
+        if (var.isFinished()) {
+            fixedQueue.add(var);
+        }
     }
 
-    private boolean isConsistent(VariableAssignment<D, V> var, D value) {
-        for (BinaryConstraint<D> constraint : var.subjectTo) {
-            if (constraint.lhs().equals(var.variable)) {
-                if (!constraint.satisfiable(Collections.singleton(value), new HashSet<>(this.assignments.get(constraint.rhs()).possibleValues))) {
-                    return false;
-                }
+    /**
+     * Removes the values of fixed variables from the other variables of their all-diff constraints
+     * and performs AC-3 on the queued arcs, until nothing changes anymore.
+     * Returns true if an inconsistency is found.
+     * All domain reductions are recorded on the trail.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean propagate() {
+        boolean failed = false;
+        while (!failed && (!fixedQueue.isEmpty() || !arcQueue.isEmpty())) {
+            if (!fixedQueue.isEmpty()) {
+                failed = pruneAllDiff(fixedQueue.poll());
             } else {
-                if (!constraint.satisfiable(new HashSet<>(this.assignments.get(constraint.lhs()).possibleValues), Collections.singleton(value))) {
-                    return false;
+                Arc<D> arc = arcQueue.poll();
+                arc.queued = false;
+                if (arc.revise(trail)) {
+                    if (arc.revised.isUnresolvable()) {
+                        failed = true;
+                    } else {
+                        changed((VariableAssignment<D, V>) arc.revised, arc.reverse);
+                    }
                 }
             }
         }
-        return true;
+        if (failed) {
+            arcQueue.forEach(arc -> arc.queued = false);
+            arcQueue.clear();
+            fixedQueue.clear();
+        }
+        return failed;
     }
 
-    private VariableAssignment<D, V> findMostRestricted() {
+    private boolean pruneAllDiff(VariableAssignment<D, V> fixed) {
+        int id = fixed.ids[fixed.first()];
+        for (VariableAssignment<D, V>[] group : fixed.allDiffGroups) {
+            for (VariableAssignment<D, V> other : group) {
+                if (other != fixed && other.removeId(id, trail)) {
+                    if (other.isUnresolvable()) {
+                        return true;
+                    }
+                    changed(other, null);
+                }
+            }
+        }
+        return false;
+    }
+
+    private VariableAssignment<D, V> findMostRestricted(List<VariableAssignment<D, V>> variables) {
         VariableAssignment<D, V> result = null;
         int current = Integer.MAX_VALUE;
-        for (VariableAssignment<D, V> ass : this.assignments.values()) {
+        for (VariableAssignment<D, V> ass : variables) {
             if (ass.freenesDegree() > 1 && ass.freenesDegree() < current) {
                 result = ass;
                 current = ass.freenesDegree();
@@ -358,13 +713,26 @@ public class CSPSolver<D, V extends CSPSolver.Variable<D>> {
         return result;
     }
 
-    private boolean isComplete() {
-        return this.assignments.entrySet().stream().allMatch(kv -> kv.getValue().isFinished());
-    }
-
+    /**
+     * Checks the all-diff constraints on a complete assignment by setting the bits of the assigned values.
+     */
     private boolean isValid() {
-        for (AllDiffConstraint<D> diffConstraint : allDiffConstraints) {
-            if (!diffConstraint.satisfied(diffConstraint.variables.stream().map(this.assignments::get).map(a -> a.possibleValues.get(0)).collect(Collectors.toList()))) {
+        for (VariableAssignment<D, V>[] group : allDiffGroups) {
+            boolean valid = true;
+            for (VariableAssignment<D, V> var : group) {
+                int id = var.ids[var.first()];
+                long bit = 1L << id;
+                if ((seen[id >>> 6] & bit) != 0) {
+                    valid = false;
+                    break;
+                }
+                seen[id >>> 6] |= bit;
+            }
+            for (VariableAssignment<D, V> var : group) {
+                int id = var.ids[var.first()];
+                seen[id >>> 6] &= ~(1L << id);
+            }
+            if (!valid) {
                 return false;
             }
         }
@@ -372,27 +740,47 @@ public class CSPSolver<D, V extends CSPSolver.Variable<D>> {
     }
 
     public static <D, V extends  Variable<D>> CSPSolver<D, V> createProblem(Set<V> variables, Set<BinaryConstraint<D>> constraints) {
-        Map<V, VariableAssignment<D, V>> assignments = new HashMap<>();
-        for (V variable : variables) {
-            assignments.put(variable, new VariableAssignment<>(
-                    variable,
-                    new ArrayList<>(variable.possibleValues()),
-                    constraints.stream().filter(c -> c.lhs().equals(variable) || c.rhs().equals(variable)).collect(Collectors.toList())));
-        }
-        return new CSPSolver<>(assignments, Collections.emptySet());
+        return createProblem(variables, constraints, Collections.emptySet());
     }
 
+    @SuppressWarnings("unchecked")
     public static <D, V extends  Variable<D>> CSPSolver<D, V> createProblem(Set<V> variables, Set<BinaryConstraint<D>> constraints, Set<AllDiffConstraint<D>> diffConstraints) {
-        Map<V, VariableAssignment<D, V>> assignments = new HashMap<>();
+        Map<D, Integer> valueTable = new HashMap<>();
+        Map<Variable<D>, VariableAssignment<D, V>> assignments = new LinkedHashMap<>();
         for (V variable : variables) {
-            assignments.put(variable, new VariableAssignment<>(
-                    variable,
-                    new ArrayList<>(variable.possibleValues()),
-                    constraints.stream().filter(c -> c.lhs().equals(variable) || c.rhs().equals(variable)).collect(Collectors.toList())));
+            List<D> values = new ArrayList<>(variable.possibleValues());
+            values.forEach(value -> valueTable.putIfAbsent(value, valueTable.size()));
+            values.sort(Comparator.comparingInt(valueTable::get));
+            int[] ids = values.stream().mapToInt(valueTable::get).toArray();
+            assignments.put(variable, new VariableAssignment<>(variable, values, ids));
         }
-        return new CSPSolver<>(assignments, diffConstraints);
+        for (BinaryConstraint<D> constraint : constraints) {
+            VariableAssignment<D, V> lhs = assignments.get(constraint.lhs());
+            VariableAssignment<D, V> rhs = assignments.get(constraint.rhs());
+            if (lhs != null && rhs != null) {
+                Arc<D> revisesLhs = new Arc<>(constraint, lhs, rhs, true);
+                Arc<D> revisesRhs = new Arc<>(constraint, rhs, lhs, false);
+                revisesLhs.reverse = revisesRhs;
+                revisesRhs.reverse = revisesLhs;
+                rhs.dependents.add(revisesLhs);
+                lhs.dependents.add(revisesRhs);
+            }
+        }
+        List<VariableAssignment<D, V>[]> groups = new ArrayList<>();
+        for (AllDiffConstraint<D> diffConstraint : diffConstraints) {
+            VariableAssignment<D, V>[] group = diffConstraint.variables.stream()
+                    .map(assignments::get)
+                    .filter(Objects::nonNull)
+                    .distinct()
+                    .toArray(VariableAssignment[]::new);
+            if (group.length > 1) {
+                groups.add(group);
+                for (VariableAssignment<D, V> var : group) {
+                    var.allDiffGroups.add(group);
+                }
+            }
+        }
+        return new CSPSolver<>(new ArrayList<>(assignments.values()), groups, valueTable.size());
     }
 
-
-
 }
@@ -0,0 +1,94 @@
+package no.hvl.past.searching;
+
+import no.hvl.past.util.Pair;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * A best-first search frontier over states rather than actions:
+ * states are interned to int ids, the frontier is an {@link IndexedHeap} over these ids
+ * where a cheaper way to reach a state decreases its priority (keeping the action that leads there),
+ * and expanded states are kept in a closed set of ids.
+ * The priority of a state is the cost of the best known path to it (if costs are used)
+ * plus the heuristics of the action leading to it (if heuristics are used).
+ */
+final class IndexedFrontier<S, A> implements SearchStrategy<S, A> {
+
+    private final StateSpace<S, A> stateSpace;
+    private final Function<A, Integer> cost;
+    private final Function<A, Integer> heuristics;
+
+    private final Map<S, Integer> ids = new HashMap<>();
+    private final List<S> predecessors = new ArrayList<>();
+    private final List<A> actions = new ArrayList<>();
+    private long[] pathCosts = new long[16];
+    private final BitSet closed = new BitSet();
+    private final IndexedHeap heap = new IndexedHeap();
+
+    /**
+     * Either cost or heuristics may be null, meaning that they do not contribute to the priority.
+     */
+    IndexedFrontier(StateSpace<S, A> stateSpace, Function<A, Integer> cost, Function<A, Integer> heuristics) {
+        this.stateSpace = stateSpace;
+        this.cost = cost;
+        this.heuristics = heuristics;
+    }
+
+    private int intern(S state) {
+        Integer id = ids.get(state);
+        if (id == null) {
+            id = ids.size();
+            ids.put(state, id);
+            predecessors.add(null);
+            actions.add(null);
+            if (id == pathCosts.length) {
+                pathCosts = Arrays.copyOf(pathCosts, id * 2);
+            }
+            pathCosts[id] = Long.MAX_VALUE;
+        }
+        return id;
+    }
+
+    @Override
+    public void newActions(S current, int currentStateCost, List<A> available) {
+        int currentId = intern(current);
+        if (pathCosts[currentId] == Long.MAX_VALUE) {
+            // the start state
+            pathCosts[currentId] = currentStateCost;
+        }
+        closed.set(currentId);
+        for (A action : available) {
+            Optional<S> next = stateSpace.applyAction(current, action);
+            if (!next.isPresent()) {
+                continue;
+            }
+            int nextId = intern(next.get());
+            if (closed.get(nextId)) {
+                continue;
+            }
+            long pathCost = pathCosts[currentId] + (cost == null ? 0 : cost.apply(action));
+            long priority = (cost == null ? 0 : pathCost) + (heuristics == null ? 0 : heuristics.apply(action));
+            if (heap.insertOrDecrease(nextId, priority)) {
+                pathCosts[nextId] = pathCost;
+                predecessors.set(nextId, current);
+                actions.set(nextId, action);
+            }
+        }
+    }
+
+    @Override
+    public Optional<Pair<S, A>> nextAction() {
+        if (heap.isEmpty()) {
+            return Optional.empty();
+        }
+        int id = heap.poll();
+        closed.set(id);
+        return Optional.of(new Pair<>(predecessors.get(id), actions.get(id)));
+    }
+
+    @Override
+    public int frontierSize() {
+        return heap.size();
+    }
+}
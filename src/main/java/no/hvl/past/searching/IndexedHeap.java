@@ -0,0 +1,131 @@
+package no.hvl.past.searching;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap over int ids with a position index, such that the priority of an id
+ * that is already in the heap can be decreased in logarithmic time instead of inserting a duplicate.
+ * Ties are broken by the smaller id.
+ */
+final class IndexedHeap {
+
+    private static final int ABSENT = -1;
+
+    private int[] heap = new int[16];
+    private int[] positions = new int[16];
+    private long[] priorities = new long[16];
+    private int size = 0;
+
+    IndexedHeap() {
+        Arrays.fill(positions, ABSENT);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean contains(int id) {
+        return id < positions.length && positions[id] != ABSENT;
+    }
+
+    long priority(int id) {
+        return priorities[id];
+    }
+
+    /**
+     * Inserts the id with the given priority or decreases its priority if it is smaller than the current one.
+     * Returns false if the id is already in the heap with a priority that is not larger.
+     */
+    boolean insertOrDecrease(int id, long priority) {
+        if (contains(id)) {
+            if (priority >= priorities[id]) {
+                return false;
+            }
+            priorities[id] = priority;
+            siftUp(positions[id]);
+            return true;
+        }
+        ensureId(id);
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        priorities[id] = priority;
+        heap[size] = id;
+        positions[id] = size;
+        siftUp(size++);
+        return true;
+    }
+
+    /**
+     * Removes and returns the id with the smallest priority.
+     */
+    int poll() {
+        int result = heap[0];
+        positions[result] = ABSENT;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+        return result;
+    }
+
+    private void ensureId(int id) {
+        if (id >= positions.length) {
+            int length = Math.max(id + 1, positions.length * 2);
+            int old = positions.length;
+            positions = Arrays.copyOf(positions, length);
+            Arrays.fill(positions, old, length, ABSENT);
+            priorities = Arrays.copyOf(priorities, length);
+        }
+    }
+
+    private boolean less(int i, int j) {
+        long pi = priorities[heap[i]];
+        long pj = priorities[heap[j]];
+        return pi < pj || (pi == pj && heap[i] < heap[j]);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!less(i, parent)) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && less(left, smallest)) {
+                smallest = left;
+            }
+            if (right < size && less(right, smallest)) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int a = heap[i];
+        heap[i] = heap[j];
+        heap[j] = a;
+        positions[heap[i]] = i;
+        positions[heap[j]] = j;
+    }
+}
@@ -0,0 +1,138 @@
+package no.hvl.past.searching;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A level-synchronous breadth first search over a state space, where every frontier level
+ * is split into chunks that are expanded in parallel by a {@link ForkJoinPool}.
+ * Newly reached states are deduplicated through a concurrent visited set,
+ * thus every state ends up in exactly one layer, the one of its distance to the closest source.
+ * Small levels are expanded sequentially in the calling thread.
+ * @param <S> The java class of states (nodes) in the state space.
+ * @param <A> The java class of actions (edges) in the state space.
+ */
+public class ParallelBreadthFirstSearch<S, A> {
+
+    /**
+     * The number of states of a level below which it is not split any further.
+     */
+    private static final int CHUNK_SIZE = 256;
+
+    private final StateSpace<S, A> stateSpace;
+    private final ForkJoinPool pool;
+
+    public ParallelBreadthFirstSearch(StateSpace<S, A> stateSpace, ForkJoinPool pool) {
+        this.stateSpace = stateSpace;
+        this.pool = pool;
+    }
+
+    /**
+     * All states reachable from the given sources (including them).
+     */
+    public Set<S> reachable(Collection<S> sources) {
+        return reachable(sources, SearchBudget.unlimited()).getResult();
+    }
+
+    public SearchResult<Set<S>> reachable(Collection<S> sources, SearchBudget budget) {
+        Set<S> visited = ConcurrentHashMap.newKeySet();
+        SearchResult<List<List<S>>> layers = search(sources, visited, budget);
+        return new SearchResult<>(visited, layers.getStatus(), layers.getExpanded(), layers.getFrontierPeak());
+    }
+
+    /**
+     * The states reachable from the given sources grouped by their distance to the closest source,
+     * i.e. the first layer contains the sources.
+     */
+    public List<Set<S>> layers(Collection<S> sources) {
+        return layers(sources, SearchBudget.unlimited()).getResult();
+    }
+
+    public SearchResult<List<Set<S>>> layers(Collection<S> sources, SearchBudget budget) {
+        SearchResult<List<List<S>>> layers = search(sources, ConcurrentHashMap.newKeySet(), budget);
+        List<Set<S>> result = new ArrayList<>();
+        layers.getResult().forEach(layer -> result.add(new HashSet<>(layer)));
+        return new SearchResult<>(result, layers.getStatus(), layers.getExpanded(), layers.getFrontierPeak());
+    }
+
+    private SearchResult<List<List<S>>> search(Collection<S> sources, Set<S> visited, SearchBudget budget) {
+        List<List<S>> layers = new ArrayList<>();
+        List<S> frontier = new ArrayList<>();
+        for (S source : sources) {
+            if (visited.add(source)) {
+                frontier.add(source);
+            }
+        }
+        long expanded = 0;
+        int peak = 0;
+        while (!frontier.isEmpty()) {
+            layers.add(frontier);
+            peak = Math.max(peak, frontier.size());
+            LevelTask<S, A> task = new LevelTask<>(stateSpace, frontier, 0, frontier.size(), visited, budget);
+            frontier = frontier.size() <= CHUNK_SIZE ? task.compute() : pool.invoke(task);
+            expanded += task.expanded;
+            if (budget.isExhausted()) {
+                break;
+            }
+        }
+        return new SearchResult<>(layers, budget.getStatus(), expanded, peak);
+    }
+
+    /**
+     * Expands the states of a level between the given positions and returns the newly reached states.
+     * The number of states that were actually expanded is available after the task has completed,
+     * it is less than the number of positions when the budget ran out.
+     */
+    private static class LevelTask<S, A> extends RecursiveTask<List<S>> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient StateSpace<S, A> stateSpace;
+        private final transient List<S> level;
+        private final int from;
+        private final int to;
+        private final transient Set<S> visited;
+        private final transient SearchBudget budget;
+        private long expanded = 0;
+
+        private LevelTask(StateSpace<S, A> stateSpace, List<S> level, int from, int to, Set<S> visited, SearchBudget budget) {
+            this.stateSpace = stateSpace;
+            this.level = level;
+            this.from = from;
+            this.to = to;
+            this.visited = visited;
+            this.budget = budget;
+        }
+
+        @Override
+        protected List<S> compute() {
+            if (to - from > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                LevelTask<S, A> left = new LevelTask<>(stateSpace, level, from, middle, visited, budget);
+                LevelTask<S, A> right = new LevelTask<>(stateSpace, level, middle, to, visited, budget);
+                left.fork();
+                List<S> result = right.compute();
+                List<S> leftResult = left.join();
+                expanded = left.expanded + right.expanded;
+                leftResult.addAll(result);
+                return leftResult;
+            }
+            List<S> result = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                if (!budget.expand()) {
+                    break;
+                }
+                expanded++;
+                S current = level.get(i);
+                for (A action : stateSpace.availableActions(current)) {
+                    Optional<S> next = stateSpace.applyAction(current, action);
+                    if (next.isPresent() && visited.add(next.get())) {
+                        result.add(next.get());
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
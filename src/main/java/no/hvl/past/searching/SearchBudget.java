@@ -0,0 +1,132 @@
+package no.hvl.past.searching;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Limits a search run by a deadline, a maximal number of expanded nodes (choices, states) and a maximal number of solutions,
+ * and allows to cancel it from another thread.
+ *
+ * Searches call {@link #expand()} for every node they expand and {@link #solutionFound()} for every solution,
+ * and stop as soon as one of them returns false. The deadline is only checked every {@value #CLOCK_INTERVAL} expansions
+ * to keep the check cheap. A budget belongs to a single run (which may use several threads),
+ * the searches return what they have found so far together with the {@link Status} of the budget.
+ */
+public final class SearchBudget {
+
+    /**
+     * Why a search run has stopped.
+     */
+    public enum Status {
+
+        COMPLETE,
+
+        DEADLINE_EXCEEDED,
+
+        EXPANSION_LIMIT_REACHED,
+
+        SOLUTION_LIMIT_REACHED,
+
+        CANCELLED
+
+    }
+
+    private static final int CLOCK_INTERVAL = 64;
+
+    private boolean hasDeadline = false;
+    private long start;
+    private long timeout;
+    private long maxExpansions = Long.MAX_VALUE;
+    private long maxSolutions = Long.MAX_VALUE;
+    private final AtomicLong expansions = new AtomicLong();
+    private final AtomicLong solutions = new AtomicLong();
+    private final AtomicReference<Status> stopped = new AtomicReference<>();
+
+    /**
+     * A budget without limits, which can only be cancelled.
+     */
+    public static SearchBudget unlimited() {
+        return new SearchBudget();
+    }
+
+    /**
+     * Sets the deadline to the given time from now.
+     */
+    public SearchBudget withTimeout(Duration timeout) {
+        this.hasDeadline = true;
+        this.start = System.nanoTime();
+        // only differences of nano times are meaningful, thus the elapsed time is compared with the timeout
+        this.timeout = timeout.compareTo(Duration.ofNanos(Long.MAX_VALUE)) >= 0 ? Long.MAX_VALUE : timeout.toNanos();
+        return this;
+    }
+
+    public SearchBudget withMaxExpansions(long maxExpansions) {
+        this.maxExpansions = maxExpansions;
+        return this;
+    }
+
+    public SearchBudget withMaxSolutions(long maxSolutions) {
+        this.maxSolutions = maxSolutions;
+        return this;
+    }
+
+    /**
+     * Asks the search to stop, it does so the next time it checks the budget.
+     */
+    public void cancel() {
+        stop(Status.CANCELLED);
+    }
+
+    /**
+     * Counts the expansion of a node, returns false if the search must stop.
+     */
+    public boolean expand() {
+        if (stopped.get() != null) {
+            return false;
+        }
+        long count = expansions.incrementAndGet();
+        if (count > maxExpansions) {
+            stop(Status.EXPANSION_LIMIT_REACHED);
+        } else if (hasDeadline && count % CLOCK_INTERVAL == 0 && System.nanoTime() - start >= timeout) {
+            stop(Status.DEADLINE_EXCEEDED);
+        }
+        return stopped.get() == null;
+    }
+
+    /**
+     * Counts a solution, returns false if it exceeds the limit and must be dropped.
+     * The limit is only reached when a solution beyond it is found, i.e. a search that finds exactly
+     * the maximal number of solutions and then runs out of candidates is {@link Status#COMPLETE}.
+     * The search must stop afterwards if {@link #isExhausted()}.
+     */
+    public boolean solutionFound() {
+        long count = solutions.incrementAndGet();
+        if (count > maxSolutions) {
+            stop(Status.SOLUTION_LIMIT_REACHED);
+            return false;
+        }
+        return true;
+    }
+
+    public boolean isExhausted() {
+        return stopped.get() != null;
+    }
+
+    private void stop(Status status) {
+        stopped.compareAndSet(null, status);
+    }
+
+    public Status getStatus() {
+        Status status = stopped.get();
+        return status == null ? Status.COMPLETE : status;
+    }
+
+    public long getExpansions() {
+        return Math.min(expansions.get(), maxExpansions);
+    }
+
+    public long getSolutions() {
+        return Math.min(solutions.get(), maxSolutions);
+    }
+}
@@ -13,6 +13,8 @@ import java.util.function.Predicate;
  * A search engine provides means to perform different kinds of search algorithms.
  * A search engine has to be provided with an environment, the state space (graph), which
  * is explored.
+ * Searches can be limited by a {@link SearchBudget}, where every applied action counts as an expansion.
+ * Their {@link SearchResult}s report the number of expanded states and the peak size of the frontier.
  * @param <S> The java class of states (nodes) in the state space.
  * @param <A> The java class of actions (edges) in the state space.
  */
@@ -80,6 +82,23 @@ public class SearchEngine<S, A> {
         }
     }
 
+    /**
+     * Counts the expanded states and the peak size of the frontier during a search.
+     */
+    private static class Counters {
+        private long expanded = 0;
+        private int frontierPeak = 0;
+
+        private void expanded(SearchStrategy<?, ?> strategy) {
+            expanded++;
+            frontierPeak = Math.max(frontierPeak, strategy.frontierSize());
+        }
+
+        private <R> SearchResult<R> result(R result, SearchBudget budget) {
+            return new SearchResult<>(result, budget.getStatus(), expanded, frontierPeak);
+        }
+    }
+
     private final StateSpace<S,A> stateSpace;
 
     /**
@@ -91,7 +110,14 @@ public class SearchEngine<S, A> {
 
 
     public Optional<S> simpleSearch(S startSpace, Predicate<S> goal) {
-        return searchForGoal(SearchStrategy.Strategies.BREADTH_FIRST_GRAPH, startSpace, goal, action -> 1, action -> 1);
+        return simpleSearch(startSpace, goal, SearchBudget.unlimited()).getResult();
+    }
+
+    /**
+     * Variant of {@link #simpleSearch(Object, Predicate)} that stops when the given budget is exhausted.
+     */
+    public SearchResult<Optional<S>> simpleSearch(S startSpace, Predicate<S> goal, SearchBudget budget) {
+        return searchForGoal(SearchStrategy.Strategies.BREADTH_FIRST_GRAPH, startSpace, goal, action -> 1, action -> 1, budget);
     }
 
     /**
@@ -104,26 +130,45 @@ public class SearchEngine<S, A> {
             S startState, Predicate<S> goal,
             Function<A, Integer> cost,
             Function<A, Integer> heuristics) {
+        return searchForGoal(strategy, startState, goal, cost, heuristics, SearchBudget.unlimited()).getResult();
+    }
+
+    /**
+     * Searches for the goal within the given budget,
+     * the result is empty if the goal is unreachable or the budget is exhausted before reaching it.
+     */
+    public SearchResult<Optional<S>> searchForGoal(
+            SearchStrategy.Strategies strategy,
+            S startState, Predicate<S> goal,
+            Function<A, Integer> cost,
+            Function<A, Integer> heuristics,
+            SearchBudget budget) {
+        Counters counters = new Counters();
         if (goal.test(startState)) {
-            return Optional.of(startState);
+            return counters.result(Optional.of(startState), budget);
         }
         SearchStrategy<S, A> searchStrategy = createStrategy(stateSpace,strategy, cost, heuristics);
         S current = startState;
         int currentCost = 0;
         searchStrategy.newActions(current, currentCost, stateSpace.availableActions(current));
+        counters.expanded(searchStrategy);
         while (true) {
+            if (!budget.expand()) {
+                return counters.result(Optional.empty(), budget);
+            }
             Optional<Pair<S, A>> nextAction = searchStrategy.nextAction();
             if (!nextAction.isPresent()) {
-                return Optional.empty();
+                return counters.result(Optional.empty(), budget);
             }
             Optional<S> nextState = stateSpace.applyAction(nextAction.get().getFirst(), nextAction.get().getSecond());
             if (nextState.isPresent()) {
                 current = nextState.get();
                 if (goal.test(current)) {
-                    return Optional.of(current);
+                    return counters.result(Optional.of(current), budget);
                 }
                 currentCost = currentCost + cost.apply(nextAction.get().getSecond());
                 searchStrategy.newActions(current, currentCost, stateSpace.availableActions(current));
+                counters.expanded(searchStrategy);
             }
         }
     }
@@ -138,29 +183,129 @@ public class SearchEngine<S, A> {
                               Predicate<S> goal,
                               Function<A, Integer> cost,
                               Function<A, Integer> heuristics) {
+        return searchWithTrace(strategy, startState, goal, cost, heuristics, SearchBudget.unlimited()).getResult();
+    }
+
+    /**
+     * Searches for the goal with a trace within the given budget,
+     * the cost is -1 if the goal is unreachable or the budget is exhausted before reaching it.
+     */
+    public SearchResult<Pair<List<A>, Integer>> searchWithTrace(SearchStrategy.Strategies strategy,
+                              S startState,
+                              Predicate<S> goal,
+                              Function<A, Integer> cost,
+                              Function<A, Integer> heuristics,
+                              SearchBudget budget) {
+        Counters counters = new Counters();
         // Maybe the startState is already the goal
         if (goal.test(startState)) {
-            return new Pair<>(Collections.emptyList(), 0);
+            return counters.result(new Pair<>(Collections.emptyList(), 0), budget);
         }
         SearchTreeNode<S, A> root = new SearchTreeNode<>(0, null, startState, null);
         SearchStrategy<S, A> searchStrategy = createStrategy(stateSpace, strategy, cost, heuristics);
         searchStrategy.newActions(startState, 0, stateSpace.availableActions(startState));
+        counters.expanded(searchStrategy);
         while (true) {
+            if (!budget.expand()) {
+                return counters.result(new Pair<>(Collections.emptyList(), -1), budget);
+            }
             Optional<Pair<S, A>> nextAction = searchStrategy.nextAction();
             if (!nextAction.isPresent()) {
-                return new Pair<>(Collections.emptyList(), -1);
+                return counters.result(new Pair<>(Collections.emptyList(), -1), budget);
             }
             Optional<S> nextState = stateSpace.applyAction(nextAction.get().getFirst(), nextAction.get().getSecond());
             if (nextState.isPresent()) {
                 Pair<SearchTreeNode<S, A>, Boolean> expansionResult = root.expand(nextAction.get().getFirst(), nextAction.get().getSecond(), nextState.get(), cost.apply(nextAction.get().getSecond()));
                 if (expansionResult.getSecond()) {
                     if (goal.test(nextState.get())) {
-                        return new Pair<>(expansionResult.getFirst().getTrace(),expansionResult.getFirst().getCost());
+                        return counters.result(new Pair<>(expansionResult.getFirst().getTrace(),expansionResult.getFirst().getCost()), budget);
                     }
                     searchStrategy.newActions(nextState.get(), expansionResult.getFirst().getCost(), stateSpace.availableActions(nextState.get()));
+                    counters.expanded(searchStrategy);
+                }
+            }
+        }
+    }
+
+    /**
+     * Searches for a shortest sequence of actions leading from the start to the goal state
+     * by breadth first search from both ends, which always continues on the side with the smaller frontier
+     * and stops after the layer in which both searches meet.
+     * If the state space is not reversible, the search only proceeds forwards.
+     * The result is empty if the goal is unreachable or the budget is exhausted before reaching it.
+     */
+    public SearchResult<Optional<List<A>>> bidirectionalSearch(S startState, S goalState, SearchBudget budget) {
+        Counters counters = new Counters();
+        if (startState.equals(goalState)) {
+            return counters.result(Optional.of(new ArrayList<>()), budget);
+        }
+        boolean backwards = stateSpace.isReversible();
+        // the state from which (towards which) a state has been reached and the action used
+        Map<S, Pair<S, A>> forwardParents = new HashMap<>();
+        Map<S, Pair<S, A>> backwardParents = new HashMap<>();
+        Map<S, Integer> forwardDepths = new HashMap<>();
+        Map<S, Integer> backwardDepths = new HashMap<>();
+        forwardParents.put(startState, null);
+        backwardParents.put(goalState, null);
+        forwardDepths.put(startState, 0);
+        backwardDepths.put(goalState, 0);
+        List<S> forwardFrontier = new ArrayList<>(Collections.singleton(startState));
+        List<S> backwardFrontier = new ArrayList<>(Collections.singleton(goalState));
+        while (!forwardFrontier.isEmpty() && (!backwards || !backwardFrontier.isEmpty())) {
+            boolean forward = !backwards || forwardFrontier.size() <= backwardFrontier.size();
+            List<S> frontier = forward ? forwardFrontier : backwardFrontier;
+            Map<S, Pair<S, A>> parents = forward ? forwardParents : backwardParents;
+            Map<S, Integer> depths = forward ? forwardDepths : backwardDepths;
+            Map<S, Integer> otherDepths = forward ? backwardDepths : forwardDepths;
+            List<S> next = new ArrayList<>();
+            S meeting = null;
+            int shortest = Integer.MAX_VALUE;
+            for (S current : frontier) {
+                if (!budget.expand()) {
+                    return counters.result(Optional.empty(), budget);
+                }
+                for (A action : forward ? stateSpace.availableActions(current) : stateSpace.incomingActions(current)) {
+                    Optional<S> reached = forward ? stateSpace.applyAction(current, action) : stateSpace.revertAction(current, action);
+                    if (reached.isPresent() && !parents.containsKey(reached.get())) {
+                        int depth = depths.get(current) + 1;
+                        parents.put(reached.get(), new Pair<>(current, action));
+                        depths.put(reached.get(), depth);
+                        next.add(reached.get());
+                        Integer otherDepth = otherDepths.get(reached.get());
+                        if (otherDepth != null && depth + otherDepth < shortest) {
+                            meeting = reached.get();
+                            shortest = depth + otherDepth;
+                        }
+                    }
                 }
             }
+            if (forward) {
+                forwardFrontier = next;
+            } else {
+                backwardFrontier = next;
+            }
+            counters.expanded += frontier.size();
+            counters.frontierPeak = Math.max(counters.frontierPeak, forwardFrontier.size() + backwardFrontier.size());
+            if (meeting != null) {
+                return counters.result(Optional.of(path(meeting, forwardParents, backwardParents)), budget);
+            }
+        }
+        return counters.result(Optional.empty(), budget);
+    }
+
+    private List<A> path(S meeting, Map<S, Pair<S, A>> forwardParents, Map<S, Pair<S, A>> backwardParents) {
+        LinkedList<A> result = new LinkedList<>();
+        Pair<S, A> step = forwardParents.get(meeting);
+        while (step != null) {
+            result.addFirst(step.getSecond());
+            step = forwardParents.get(step.getFirst());
+        }
+        step = backwardParents.get(meeting);
+        while (step != null) {
+            result.addLast(step.getSecond());
+            step = backwardParents.get(step.getFirst());
         }
+        return result;
     }
 
     private SearchStrategy<S, A> createStrategy(
@@ -178,11 +323,12 @@ public class SearchEngine<S, A> {
             case ITERATIVE_DEEPENING:
                 return SearchStrategy.iterativeDeepening();
             case UNIFORM_COST:
-                return SearchStrategy.uniformCost(cost);
+                return SearchStrategy.uniformCost(stateSpace, cost);
             case GREEDY:
-                return SearchStrategy.greedy(heuristics);
+                return SearchStrategy.greedy(stateSpace, heuristics);
             case A_STAR:
-                return SearchStrategy.aStar(cost, heuristics);
+                return SearchStrategy.aStar(stateSpace, cost, heuristics);
+            case BIDIRECTIONAL_BREADTH_FIRST:
             case BREADTH_FIRST_GRAPH:
             default:
                 return SearchStrategy.breadthFirstGraph(stateSpace); // breath first graph
@@ -0,0 +1,59 @@
+package no.hvl.past.searching;
+
+/**
+ * The result of a search run with a {@link SearchBudget}.
+ * If the budget was exhausted, the result is partial, i.e. it contains what has been found until the search stopped.
+ * @param <R> The type of result.
+ */
+public final class SearchResult<R> {
+
+    private final R result;
+    private final SearchBudget.Status status;
+    private final long expanded;
+    private final int frontierPeak;
+
+    public SearchResult(R result, SearchBudget.Status status) {
+        this(result, status, 0, 0);
+    }
+
+    public SearchResult(R result, SearchBudget.Status status, long expanded, int frontierPeak) {
+        this.result = result;
+        this.status = status;
+        this.expanded = expanded;
+        this.frontierPeak = frontierPeak;
+    }
+
+    public R getResult() {
+        return result;
+    }
+
+    public SearchBudget.Status getStatus() {
+        return status;
+    }
+
+    /**
+     * The number of expanded states, if the search keeps track of it.
+     */
+    public long getExpanded() {
+        return expanded;
+    }
+
+    /**
+     * The largest size of the frontier during the search, if the search keeps track of it.
+     */
+    public int getFrontierPeak() {
+        return frontierPeak;
+    }
+
+    /**
+     * Returns true if the search has run to the end.
+     */
+    public boolean isComplete() {
+        return status == SearchBudget.Status.COMPLETE;
+    }
+
+    @Override
+    public String toString() {
+        return status + ": " + result;
+    }
+}
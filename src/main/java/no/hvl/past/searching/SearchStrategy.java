@@ -17,6 +17,9 @@ public interface SearchStrategy<S, A> {
      * use BREADTH_FIRST_GRAPH.
      * If you have no heuristics and a big or even infinite state space:
      * you may consider ITERATIVE_DEEPENING.
+     * If you want to connect two given states in a state space that can be searched backwards:
+     * use BIDIRECTIONAL_BREADTH_FIRST (see {@link SearchEngine#bidirectionalSearch(Object, Object, SearchBudget)}),
+     * when the goal is only given by a predicate it behaves like BREADTH_FIRST_GRAPH.
      *
      */
     enum Strategies {
@@ -35,7 +38,9 @@ public interface SearchStrategy<S, A> {
 
         GREEDY,
 
-        A_STAR
+        A_STAR,
+
+        BIDIRECTIONAL_BREADTH_FIRST
 
         // In the future: iterative deepening A* and recursive breadth first search
 
@@ -52,6 +57,13 @@ public interface SearchStrategy<S, A> {
      */
     Optional<Pair<S, A>> nextAction();
 
+    /**
+     * The number of entries in the frontier, i.e. the actions (or states) waiting to be explored.
+     */
+    default int frontierSize() {
+        return 0;
+    }
+
 
     static <S,A> SearchStrategy<S,A> breadthFirst() {
         return new SearchStrategy<S, A>() {
@@ -72,6 +84,11 @@ public interface SearchStrategy<S, A> {
                 return Optional.of(deque.pop());
             }
 
+            @Override
+            public int frontierSize() {
+                return deque.size();
+            }
+
         };
     }
 
@@ -94,6 +111,11 @@ public interface SearchStrategy<S, A> {
                 return Optional.of(stack.pop());
             }
 
+            @Override
+            public int frontierSize() {
+                return stack.size();
+            }
+
         };
     }
 
@@ -122,6 +144,11 @@ public interface SearchStrategy<S, A> {
                 return nextAction();
             }
 
+            @Override
+            public int frontierSize() {
+                return deque.size();
+            }
+
         };
     }
 
@@ -151,6 +178,11 @@ public interface SearchStrategy<S, A> {
                 return Optional.of(stack.pop());
             }
 
+            @Override
+            public int frontierSize() {
+                return stack.size();
+            }
+
         };
     }
 
@@ -208,6 +240,28 @@ public interface SearchStrategy<S, A> {
         };
     }
 
+    /**
+     * Uniform cost search over the states of the given state space,
+     * where the frontier holds every state once and its priority is decreased when a cheaper path is found.
+     */
+    static <S, A> SearchStrategy<S, A> uniformCost(StateSpace<S, A> stateSpace, Function<A, Integer> cost) {
+        return new IndexedFrontier<>(stateSpace, cost, null);
+    }
+
+    /**
+     * A* search over the states of the given state space, see {@link #uniformCost(StateSpace, Function)}.
+     */
+    static <S, A> SearchStrategy<S, A> aStar(StateSpace<S, A> stateSpace, Function<A, Integer> cost, Function<A, Integer> heuristics) {
+        return new IndexedFrontier<>(stateSpace, cost, heuristics);
+    }
+
+    /**
+     * Greedy best-first search over the states of the given state space, see {@link #uniformCost(StateSpace, Function)}.
+     */
+    static <S, A> SearchStrategy<S, A> greedy(StateSpace<S, A> stateSpace, Function<A, Integer> heuristics) {
+        return new IndexedFrontier<>(stateSpace, null, heuristics);
+    }
+
     static <S, A> SearchStrategy<S, A> iterativeDeepening() {
         return new SearchStrategy<S, A>() {
             @Override
@@ -1,5 +1,6 @@
 package no.hvl.past.searching;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -28,4 +29,27 @@ public interface StateSpace<S, A> {
      */
     boolean isInfinite();
 
+    /**
+     * Returns true if the state space can be searched backwards,
+     * i.e. if it provides the {@link #incomingActions(Object)} of states.
+     */
+    default boolean isReversible() {
+        return false;
+    }
+
+    /**
+     * Provides a list with all the actions that lead into the current state.
+     */
+    default List<A> incomingActions(S current) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Applies the action backwards, resulting in the state from which the action leads into the current state.
+     * If the action does not lead into the current state it returns Optional.empty().
+     */
+    default Optional<S> revertAction(S current, A action) {
+        return Optional.empty();
+    }
+
 }
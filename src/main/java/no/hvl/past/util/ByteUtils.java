@@ -1,5 +1,11 @@
 package no.hvl.past.util;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 /**
  * Provides some convenience functions for working with byte arrays as if they where proper lists.
  */
@@ -118,6 +124,297 @@ public class ByteUtils {
     }
 
 
+    private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME64_3 = 0x165667B19E3779F9L;
+    private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+    /**
+     * Computes a 64-bit fingerprint of the given byte array (XXH64 with seed 0).
+     * The value is stable across JVM runs and platforms and may therefore be persisted.
+     */
+    public static long hash64(byte[] input) {
+        return hash64(input, 0, input.length, 0L);
+    }
+
+    /**
+     * Computes the XXH64 hash of the given range of the byte array with the given seed.
+     */
+    public static long hash64(byte[] input, int offset, int length, long seed) {
+        int end = offset + length;
+        int p = offset;
+        long h;
+        if (length >= 32) {
+            long v1 = seed + PRIME64_1 + PRIME64_2;
+            long v2 = seed + PRIME64_2;
+            long v3 = seed;
+            long v4 = seed - PRIME64_1;
+            int limit = end - 32;
+            do {
+                v1 = hash64Round(v1, readLongLE(input, p));
+                v2 = hash64Round(v2, readLongLE(input, p + 8));
+                v3 = hash64Round(v3, readLongLE(input, p + 16));
+                v4 = hash64Round(v4, readLongLE(input, p + 24));
+                p += 32;
+            } while (p <= limit);
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = hash64MergeRound(h, v1);
+            h = hash64MergeRound(h, v2);
+            h = hash64MergeRound(h, v3);
+            h = hash64MergeRound(h, v4);
+        } else {
+            h = seed + PRIME64_5;
+        }
+        h += length;
+        return hash64Tail(h, input, p, end);
+    }
+
+    /**
+     * Computes the same value as {@link #hash64(byte[])} on the concatenation of the given segments
+     * without actually concatenating them.
+     */
+    public static long hash64(byte[][] segments) {
+        if (segments.length == 1) {
+            return hash64(segments[0]);
+        }
+        Hash64State state = new Hash64State(0L);
+        for (byte[] segment : segments) {
+            state.update(segment);
+        }
+        return state.digest();
+    }
+
+    /**
+     * Streaming variant of XXH64, which consumes the input in chunks of arbitrary size.
+     */
+    private static final class Hash64State {
+        private final long seed;
+        private final byte[] buffer = new byte[32];
+        private int buffered = 0;
+        private long total = 0;
+        private long v1;
+        private long v2;
+        private long v3;
+        private long v4;
+
+        private Hash64State(long seed) {
+            this.seed = seed;
+            this.v1 = seed + PRIME64_1 + PRIME64_2;
+            this.v2 = seed + PRIME64_2;
+            this.v3 = seed;
+            this.v4 = seed - PRIME64_1;
+        }
+
+        private void stripe(byte[] input, int p) {
+            v1 = hash64Round(v1, readLongLE(input, p));
+            v2 = hash64Round(v2, readLongLE(input, p + 8));
+            v3 = hash64Round(v3, readLongLE(input, p + 16));
+            v4 = hash64Round(v4, readLongLE(input, p + 24));
+        }
+
+        private void update(byte[] input) {
+            int p = 0;
+            int length = input.length;
+            total += length;
+            if (buffered > 0) {
+                int fill = Math.min(32 - buffered, length);
+                System.arraycopy(input, 0, buffer, buffered, fill);
+                buffered += fill;
+                p = fill;
+                if (buffered < 32) {
+                    return;
+                }
+                stripe(buffer, 0);
+                buffered = 0;
+            }
+            while (p + 32 <= length) {
+                stripe(input, p);
+                p += 32;
+            }
+            if (p < length) {
+                System.arraycopy(input, p, buffer, 0, length - p);
+                buffered = length - p;
+            }
+        }
+
+        private long digest() {
+            long h;
+            if (total >= 32) {
+                h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+                h = hash64MergeRound(h, v1);
+                h = hash64MergeRound(h, v2);
+                h = hash64MergeRound(h, v3);
+                h = hash64MergeRound(h, v4);
+            } else {
+                h = seed + PRIME64_5;
+            }
+            h += total;
+            return hash64Tail(h, buffer, 0, buffered);
+        }
+    }
+
+    private static long hash64Tail(long h, byte[] input, int p, int end) {
+        while (p + 8 <= end) {
+            h ^= hash64Round(0, readLongLE(input, p));
+            h = Long.rotateLeft(h, 27) * PRIME64_1 + PRIME64_4;
+            p += 8;
+        }
+        if (p + 4 <= end) {
+            h ^= (readIntLE(input, p) & 0xFFFFFFFFL) * PRIME64_1;
+            h = Long.rotateLeft(h, 23) * PRIME64_2 + PRIME64_3;
+            p += 4;
+        }
+        while (p < end) {
+            h ^= (input[p] & 0xFFL) * PRIME64_5;
+            h = Long.rotateLeft(h, 11) * PRIME64_1;
+            p++;
+        }
+        h ^= h >>> 33;
+        h *= PRIME64_2;
+        h ^= h >>> 29;
+        h *= PRIME64_3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long hash64Round(long acc, long input) {
+        acc += input * PRIME64_2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME64_1;
+    }
+
+    private static long hash64MergeRound(long acc, long val) {
+        acc ^= hash64Round(0, val);
+        return acc * PRIME64_1 + PRIME64_4;
+    }
+
+    /**
+     * Reads eight bytes starting at the given position as a long with the least significant byte first.
+     */
+    public static long readLongLE(byte[] src, int from) {
+        return (src[from] & 0xFFL)
+                | (src[from + 1] & 0xFFL) << 8
+                | (src[from + 2] & 0xFFL) << 16
+                | (src[from + 3] & 0xFFL) << 24
+                | (src[from + 4] & 0xFFL) << 32
+                | (src[from + 5] & 0xFFL) << 40
+                | (src[from + 6] & 0xFFL) << 48
+                | (src[from + 7] & 0xFFL) << 56;
+    }
+
+    /**
+     * Reads four bytes starting at the given position as an int with the least significant byte first.
+     */
+    public static int readIntLE(byte[] src, int from) {
+        return (src[from] & 0xFF)
+                | (src[from + 1] & 0xFF) << 8
+                | (src[from + 2] & 0xFF) << 16
+                | (src[from + 3] & 0xFF) << 24;
+    }
+
+    // Segmented byte arrays (ropes)
+
+    /**
+     * Concatenates the given segment sequences into one sequence.
+     * Only the references to the segments are copied, the segments themselves are shared.
+     */
+    public static byte[][] joinSegments(byte[][]... parts) {
+        int count = 0;
+        for (byte[][] part : parts) {
+            count += part.length;
+        }
+        byte[][] result = new byte[count][];
+        int i = 0;
+        for (byte[][] part : parts) {
+            System.arraycopy(part, 0, result, i, part.length);
+            i += part.length;
+        }
+        return result;
+    }
+
+    /**
+     * The total number of bytes in the given segments.
+     */
+    public static int segmentsLength(byte[][] segments) {
+        int result = 0;
+        for (byte[] segment : segments) {
+            result += segment.length;
+        }
+        return result;
+    }
+
+    /**
+     * Copies the given segments into a single byte array.
+     */
+    public static byte[] flatten(byte[][] segments) {
+        if (segments.length == 1) {
+            return segments[0].clone();
+        }
+        byte[] result = new byte[segmentsLength(segments)];
+        int i = 0;
+        for (byte[] segment : segments) {
+            System.arraycopy(segment, 0, result, i, segment.length);
+            i += segment.length;
+        }
+        return result;
+    }
+
+    /**
+     * Computes the same value as {@link Arrays#hashCode(byte[])} on the concatenation of the given segments.
+     */
+    public static int segmentsHashCode(byte[][] segments) {
+        int result = 1;
+        for (byte[] segment : segments) {
+            for (byte b : segment) {
+                result = 31 * result + b;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the concatenation of the left segments is equal to the concatenation of the right segments.
+     * The segments do not have to be aligned.
+     */
+    public static boolean segmentsEqual(byte[][] lhs, byte[][] rhs) {
+        if (lhs.length == 1 && rhs.length == 1) {
+            return Arrays.equals(lhs[0], rhs[0]);
+        }
+        if (segmentsLength(lhs) != segmentsLength(rhs)) {
+            return false;
+        }
+        int li = 0;
+        int lp = 0;
+        int ri = 0;
+        int rp = 0;
+        while (li < lhs.length && ri < rhs.length) {
+            byte[] l = lhs[li];
+            byte[] r = rhs[ri];
+            if (l == r && lp == 0 && rp == 0) {
+                // shared segment
+                li++;
+                ri++;
+                continue;
+            }
+            int n = Math.min(l.length - lp, r.length - rp);
+            if (!Arrays.equals(l, lp, lp + n, r, rp, rp + n)) {
+                return false;
+            }
+            lp += n;
+            rp += n;
+            if (lp == l.length) {
+                li++;
+                lp = 0;
+            }
+            if (rp == r.length) {
+                ri++;
+                rp = 0;
+            }
+        }
+        return true;
+    }
+
     /**
      * Returns a new byte array, which is a substring of the given input byte array between the given indices.
      */
@@ -127,8 +424,63 @@ public class ByteUtils {
         return result;
     }
 
+    /**
+     * Writes an unsigned variable length integer (LEB128): seven bits per byte,
+     * the highest bit signals that more bytes follow.
+     * Small numbers (< 128) thus only need a single byte.
+     */
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
 
+    /**
+     * Reads an unsigned variable length integer that was written with {@link #writeVarLong(DataOutput, long)}.
+     */
+    public static long readVarLong(ByteBuffer in) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable length integer");
+    }
+
+    /**
+     * Reads an unsigned variable length integer that was written with {@link #writeVarLong(DataOutput, long)}
+     * from a stream.
+     */
+    public static long readVarLong(DataInput in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
 
+    /**
+     * Maps signed to unsigned numbers such that numbers with a small absolute value stay small
+     * (0, -1, 1, -2, ... become 0, 1, 2, 3, ...), which makes them suitable for {@link #writeVarLong(DataOutput, long)}.
+     */
+    public static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
 
+    /**
+     * The inverse of {@link #zigZag(long)}.
+     */
+    public static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
 
 }
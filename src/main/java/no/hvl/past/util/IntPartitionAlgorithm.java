@@ -0,0 +1,138 @@
+package no.hvl.past.util;
+
+import java.util.Arrays;
+
+/**
+ * A partition algorithm over the primitive integers 0 ... n-1 (e.g. the ids of interned names,
+ * see {@link no.hvl.past.names.NameTable}), implemented as a disjoint-set forest
+ * with union by rank and path halving.
+ * Relating two elements and finding the representative of an element therefore
+ * take nearly constant amortized time.
+ */
+public class IntPartitionAlgorithm {
+
+    private int[] parent;
+    private byte[] rank;
+    private int size;
+    private int classCount;
+
+    public IntPartitionAlgorithm(int size) {
+        this.parent = new int[Math.max(size, 1)];
+        this.rank = new byte[Math.max(size, 1)];
+        for (int i = 0; i < size; i++) {
+            parent[i] = i;
+        }
+        this.size = size;
+        this.classCount = size;
+    }
+
+    /**
+     * Adds a new element, which forms a class on its own, and returns it.
+     */
+    public int add() {
+        if (size == parent.length) {
+            parent = Arrays.copyOf(parent, size * 2);
+            rank = Arrays.copyOf(rank, size * 2);
+        }
+        parent[size] = size;
+        classCount++;
+        return size++;
+    }
+
+    /**
+     * The number of elements.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The number of equivalence classes.
+     */
+    public int classCount() {
+        return classCount;
+    }
+
+    /**
+     * Returns the representative of the class of the given element.
+     */
+    public int find(int element) {
+        if (element < 0 || element >= size) {
+            throw new IndexOutOfBoundsException("Element " + element + " is not in the partition of size " + size);
+        }
+        int x = element;
+        while (parent[x] != x) {
+            // path halving: let every other node on the path point to its grandparent
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    /**
+     * Puts the given elements into the same class.
+     * Returns true if they have been in different classes before.
+     */
+    public boolean relate(int left, int right) {
+        int l = find(left);
+        int r = find(right);
+        if (l == r) {
+            return false;
+        }
+        if (rank[l] < rank[r]) {
+            parent[l] = r;
+        } else if (rank[l] > rank[r]) {
+            parent[r] = l;
+        } else {
+            parent[r] = l;
+            rank[l]++;
+        }
+        classCount--;
+        return true;
+    }
+
+    public boolean related(int left, int right) {
+        return find(left) == find(right);
+    }
+
+    /**
+     * Returns for every element the number (0 ... classCount-1) of its class.
+     * Classes are numbered in the order of their smallest element.
+     */
+    public int[] classOf() {
+        int[] numberOfRoot = new int[size];
+        Arrays.fill(numberOfRoot, -1);
+        int[] result = new int[size];
+        int next = 0;
+        for (int i = 0; i < size; i++) {
+            int root = find(i);
+            if (numberOfRoot[root] < 0) {
+                numberOfRoot[root] = next++;
+            }
+            result[i] = numberOfRoot[root];
+        }
+        return result;
+    }
+
+    /**
+     * Materializes the equivalence classes, each class is sorted ascending and
+     * the classes are ordered by their smallest element.
+     */
+    public int[][] getResult() {
+        int[] classOf = classOf();
+        int[] counts = new int[classCount];
+        for (int c : classOf) {
+            counts[c]++;
+        }
+        int[][] result = new int[classCount][];
+        for (int c = 0; c < classCount; c++) {
+            result[c] = new int[counts[c]];
+        }
+        int[] filled = new int[classCount];
+        for (int i = 0; i < size; i++) {
+            int c = classOf[i];
+            result[c][filled[c]++] = i;
+        }
+        return result;
+    }
+}
@@ -6,86 +6,94 @@ import java.util.*;
  * An abstract implementation for a typical partition algorithms
  * as they are e.g. really common in colimit or coequalizer computations.
  * They are concrete instances of a fixpoint algorithm.
+ *
+ * Internally, the elements are numbered and the classes are kept in a disjoint-set forest
+ * (see {@link IntPartitionAlgorithm}), thus relating elements takes nearly constant amortized time
+ * and the result is materialized in a single pass.
  */
 public class PartitionAlgorithm<X> {
 
-    private final Map<X, Gather<X>> result;
+    private final Map<X, Integer> ids;
+    private final List<X> elements;
+    private final IntPartitionAlgorithm forest;
 
-    private static class Gather<X> {
-        private final Set<X> elements;
-        private Gather<X> parent;
+    /**
+     * Elements that have been added to a class via relate(left, right, addAlso...) but are not
+     * part of the partitioned collection, stored together with an element of their class.
+     */
+    private final List<Pair<Integer, X>> attached;
 
-        public Gather(X element) {
-            this(Collections.singleton(element));
-        }
-
-        public Gather(Set<X> elements) {
-            this.elements = elements;
-        }
-
-        boolean isAtomic() {
-            return elements.size() == 1;
-        }
-
-        private void addParent(Gather<X> parent) {
-            this.parent = parent;
-        }
-
-        @SafeVarargs
-        public final void merge(Gather<X> with, X... addAlso) {
-            Gather<X> lhs = this.getBiggestParent();
-            Gather<X> rhs = with.getBiggestParent();
-            Set<X> result = new HashSet<>();
-            result.addAll(lhs.elements);
-            result.addAll(rhs.elements);
-            result.addAll(Arrays.asList(addAlso));
-            Gather<X> newParent = new Gather<>(result);
-            lhs.addParent(newParent);
-            rhs.addParent(newParent);
-        }
-
-        public Gather<X> getBiggestParent() {
-            if (parent == null) {
-                return this;
-            } else {
-                return parent.getBiggestParent();
-            }
-        }
-
-        public Set<X> allElements() {
-            if (parent == null) {
-                return elements;
-            } else {
-                return parent.allElements();
+    public PartitionAlgorithm(Collection<X> toCollect) {
+        this.ids = new HashMap<>();
+        this.elements = new ArrayList<>(toCollect.size());
+        for (X x : toCollect) {
+            if (!ids.containsKey(x)) {
+                ids.put(x, elements.size());
+                elements.add(x);
             }
         }
+        this.forest = new IntPartitionAlgorithm(elements.size());
+        this.attached = new ArrayList<>();
     }
 
-    public PartitionAlgorithm(Collection<X> toCollect) {
-        this.result = new HashMap<>();
-        for (X x : toCollect) {
-            this.result.put(x, new Gather<>(x));
+    private int idOf(X element) {
+        Integer id = ids.get(element);
+        if (id == null) {
+            id = forest.add();
+            ids.put(element, id);
+            elements.add(element);
         }
+        return id;
     }
 
+    /**
+     * Puts the given elements into the same class.
+     * The optional further elements are added to that class as well:
+     * if they are part of the partitioned collection, their classes are merged,
+     * otherwise they are just added as members of the class.
+     */
     @SafeVarargs
     public final PartitionAlgorithm relate(X left, X right, X... addAlso) {
         if (!left.equals(right)) {
-            this.result.get(left).merge(this.result.get(right), addAlso);
+            int l = idOf(left);
+            forest.relate(l, idOf(right));
+            for (X also : addAlso) {
+                Integer id = ids.get(also);
+                if (id != null) {
+                    forest.relate(l, id);
+                } else {
+                    attached.add(new Pair<>(l, also));
+                }
+            }
         }
         return this;
     }
 
+    /**
+     * Returns true if the given elements are in the same class.
+     */
+    public boolean related(X left, X right) {
+        Integer l = ids.get(left);
+        Integer r = ids.get(right);
+        if (l == null || r == null) {
+            return left.equals(right);
+        }
+        return forest.related(l, r);
+    }
 
     public Set<Set<X>> getResult() {
-        Set<Set<X>> result = new HashSet<>();
-        for (X x : this.result.keySet()) {
-            result.add(this.result.get(x).allElements());
+        int[] classOf = forest.classOf();
+        List<Set<X>> classes = new ArrayList<>(forest.classCount());
+        for (int c = 0; c < forest.classCount(); c++) {
+            classes.add(new HashSet<>());
+        }
+        for (int i = 0; i < classOf.length; i++) {
+            classes.get(classOf[i]).add(elements.get(i));
+        }
+        for (Pair<Integer, X> a : attached) {
+            classes.get(classOf[a.getFirst()]).add(a.getSecond());
         }
-        return result;
+        return new HashSet<>(classes);
     }
 
-
-
-
 }
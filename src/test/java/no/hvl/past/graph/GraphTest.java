@@ -1,13 +1,20 @@
 package no.hvl.past.graph;
 
+import com.google.common.collect.Sets;
 import no.hvl.past.graph.elements.Triple;
+import no.hvl.past.graph.elements.Tuple;
 import no.hvl.past.names.Name;
 import no.hvl.past.util.ProperComparator;
 import no.hvl.past.util.ShouldNotHappenException;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -89,6 +96,115 @@ public class GraphTest extends TestWithGraphLib {
         assertFalse(BIGGER.existsPath(Name.identifier("1"), Name.identifier("3")));
         assertTrue(BIGGER.existsPath(Name.identifier("1"), Name.identifier("7")));
         assertFalse(BIGGER.existsPath(Name.identifier("1"), Name.identifier("8")));
+        assertEquals(Sets.newHashSet(id("1"), id("2"), id("3"), id("4"), id("5"), id("6"), id("7")), BIGGER.reachableNodes(Collections.singleton(id("3"))));
+        assertEquals(Sets.newHashSet(id("6"), id("7"), id("8")), BIGGER.reachableNodes(Arrays.asList(id("7"), id("8"))));
+    }
+
+    @Test
+    public void testAdjacency() {
+        GraphImpl graph = GraphImpl.materialize(BIGGER);
+        assertStreamEquals(graph.outgoing(id("4")),
+                Triple.node(id("4")),
+                t("4", "41", "6"),
+                t("4", "42", "5"));
+        assertStreamEquals(graph.incoming(id("6")),
+                Triple.node(id("6")),
+                t("4", "41", "6"),
+                t("5", "51", "6"),
+                t("8", "81", "6"));
+        assertStreamEquals(graph.outgoing(id("X")));
+        assertEquals(8, graph.nodes().count());
+        assertEquals(12, graph.edges().count());
+        assertTrue(graph.isNode(id("7")));
+        assertFalse(graph.isNode(id("71")));
+        assertTrue(graph.isEdge(id("71")));
+        assertFalse(graph.isEdge(id("X")));
+        assertTrue(graph.contains(t("7", "71", "7")));
+        assertFalse(graph.contains(t("7", "71", "6")));
+    }
+
+    @Test
+    public void testCompactGraph() {
+        Graph compact = GraphImpl.materialize(BIGGER, true);
+        assertTrue(compact instanceof CompactGraph);
+        assertStreamEquals(BIGGER.elements(), compact.elements());
+        assertStreamEquals(BIGGER.nodes(), compact.nodes());
+        assertStreamEquals(BIGGER.edges(), compact.edges());
+        for (int i = 1; i <= 8; i++) {
+            assertStreamEquals(BIGGER.outgoing(id("" + i)), compact.outgoing(id("" + i)));
+            assertStreamEquals(BIGGER.incoming(id("" + i)), compact.incoming(id("" + i)));
+        }
+        assertEquals(Optional.of(t("4", "42", "5")), compact.get(id("42")));
+        assertEquals(Optional.empty(), compact.get(id("X")));
+        assertTrue(compact.contains(t("4", "42", "5")));
+        assertFalse(compact.contains(t("4", "42", "6")));
+        assertTrue(compact.isNode(id("8")));
+        assertTrue(compact.isEdge(id("81")));
+        assertFalse(compact.isNode(id("81")));
+        assertTrue(compact.existsPath(id("1"), id("7")));
+        assertFalse(compact.existsPath(id("1"), id("8")));
+        assertTrue(compact.verify());
+
+        Graph withDuplicate = CompactGraph.create(id("D"), Arrays.asList(Triple.node(id("A")), t("A", "a", "A"), t("A", "a", "B")));
+        assertEquals(2, withDuplicate.elements().count());
+        assertStreamEquals(withDuplicate.danglingEdges());
+    }
+
+    @Test
+    public void testMappedGraph(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("example.graph");
+        MappedGraph.write(BIGGER, file);
+        Graph mapped = MappedGraph.open(file);
+        assertEquals(BIGGER.getName(), mapped.getName());
+        assertStreamEquals(BIGGER.elements(), mapped.elements());
+        assertStreamEquals(BIGGER.nodes(), mapped.nodes());
+        for (int i = 1; i <= 8; i++) {
+            assertStreamEquals(BIGGER.outgoing(id("" + i)), mapped.outgoing(id("" + i)));
+            assertStreamEquals(BIGGER.incoming(id("" + i)), mapped.incoming(id("" + i)));
+        }
+        assertEquals(Optional.of(t("6", "61", "7")), mapped.get(id("61")));
+        assertTrue(mapped.contains(t("6", "61", "7")));
+        assertFalse(mapped.contains(t("6", "61", "6")));
+        assertTrue(mapped.isNode(id("3")));
+        assertTrue(mapped.isEdge(id("32")));
+        assertFalse(mapped.mentions(id("X")));
+        assertTrue(mapped.existsPath(id("3"), id("7")));
+        assertFalse(mapped.existsPath(id("7"), id("3")));
+
+        Graph empty = GraphImpl.create(id("Empty"), Collections.emptySet());
+        MappedGraph.write(empty, file);
+        Graph reopened = MappedGraph.open(file);
+        assertTrue(reopened.isEmpty());
+        assertEquals(id("Empty"), reopened.getName());
+        assertFalse(reopened.isNode(id("1")));
+
+        // streamed: edges may come before their nodes and names are spilled beyond the size of the buffer
+        Path streamed = dir.resolve("streamed.graph");
+        Set<Triple> expected = new HashSet<>();
+        StringBuilder longName = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            longName.append('x');
+        }
+        try (MappedGraph.Builder builder = MappedGraph.builder(id("Chain"), streamed)) {
+            for (int i = 0; i < 10000; i++) {
+                Triple edge = t("n" + i, "e" + i, "n" + (i + 1));
+                builder.add(edge).add(Triple.node(id("n" + i)));
+                expected.add(edge);
+                expected.add(Triple.node(id("n" + i)));
+            }
+            builder.add(t("n0", "e0", "n2"));
+            builder.add(Triple.node(id("n10000"))).add(t("n10000", longName.toString(), "n0"));
+            expected.add(Triple.node(id("n10000")));
+            expected.add(t("n10000", longName.toString(), "n0"));
+            builder.finish();
+        }
+        MappedGraph chain = MappedGraph.open(streamed);
+        assertEquals(id("Chain"), chain.getName());
+        assertEquals(expected, chain.elements().collect(Collectors.toSet()));
+        assertEquals(Optional.of(t("n0", "e0", "n1")), chain.get(id("e0")));
+        assertStreamEquals(chain.outgoing(id("n10000")), Triple.node(id("n10000")), t("n10000", longName.toString(), "n0"));
+        assertTrue(chain.existsPath(id("n0"), id("n10000")));
+        assertEquals(1, Files.list(dir).filter(f -> f.getFileName().toString().startsWith("streamed")).count());
     }
 
     @Test
@@ -138,6 +254,45 @@ public class GraphTest extends TestWithGraphLib {
         expected2.add(new Triple(namer.apply("a"), namer.apply("a").subTypeOf(namer.apply("ab")), namer.apply("ab")));
         expected2.add(new Triple(namer.apply("aa"), namer.apply("aa").subTypeOf(namer.apply("ab")), namer.apply("ab")));
         assertEquals(expected2, result2.getEdges());
+        GraphImpl reduced2 = GraphImpl.hasseDiagramm(Name.identifier(""), elements2, namer, false);
+        expected2.remove(new Triple(namer.apply("a"), namer.apply("a").subTypeOf(namer.apply("ab")), namer.apply("ab")));
+        assertEquals(expected2, reduced2.getEdges());
+
+        // a total order with equal elements only has edges between neighbouring classes
+        Comparator<Integer> byTens = Comparator.comparingInt(i -> i / 10);
+        GraphImpl chain = GraphImpl.hasseDiagrammOfTotalOrder(Name.identifier("Tens"), Arrays.asList(21, 3, 15, 1, 12, 25), byTens, nameGiver, false);
+        assertEquals(6, chain.getNodes().size());
+        assertEquals(2 * 2 + 2 * 2, chain.getEdges().size());
+        assertTrue(chain.contains(new Triple(id("3"), id("3").subTypeOf(id("12")), id("12"))));
+        assertTrue(chain.contains(new Triple(id("15"), id("15").subTypeOf(id("25")), id("25"))));
+        assertFalse(chain.contains(new Triple(id("1"), id("1").subTypeOf(id("21")), id("21"))));
+        assertEquals(2 * 2 + 4 * 2, GraphImpl.hasseDiagrammOfTotalOrder(Name.identifier("Tens"), Arrays.asList(21, 3, 15, 1, 12, 25), byTens, nameGiver, true).getEdges().size());
+
+        // the reduction of the divisibility order on a larger range agrees with the definition of covering pairs
+        List<Integer> range = new ArrayList<>();
+        for (int i = 1; i <= 300; i++) {
+            range.add(i);
+        }
+        GraphImpl dividers = GraphImpl.hasseDiagramm(Name.identifier("Dividers 300"), range, comparator, nameGiver, false);
+        long covers = 0;
+        for (int lower : range) {
+            for (int upper : range) {
+                if (upper != lower && upper % lower == 0 && upper / lower > 1 && isPrime(upper / lower)) {
+                    covers++;
+                    assertTrue(dividers.contains(new Triple(id("" + lower), id("" + lower).subTypeOf(id("" + upper)), id("" + upper))));
+                }
+            }
+        }
+        assertEquals(covers, dividers.getEdges().size());
+    }
+
+    private static boolean isPrime(int number) {
+        for (int i = 2; i * i <= number; i++) {
+            if (number % i == 0) {
+                return false;
+            }
+        }
+        return number > 1;
     }
 
     @Test
@@ -237,4 +392,165 @@ public class GraphTest extends TestWithGraphLib {
 
 
 
+    private static Graph cycles(String name, int... lengths) {
+        Set<Triple> elements = new HashSet<>();
+        int offset = 0;
+        for (int length : lengths) {
+            for (int i = 0; i < length; i++) {
+                Name node = id(name + (offset + i));
+                elements.add(Triple.node(node));
+                elements.add(Triple.edge(node, id(name + "e" + (offset + i)), id(name + (offset + (i + 1) % length))));
+            }
+            offset += length;
+        }
+        return new GraphImpl(id(name), elements);
+    }
+
+    private static Graph renamed(Graph graph, Map<Name, Name> renaming) {
+        Set<Triple> elements = new HashSet<>();
+        graph.elements().forEach(t -> elements.add(t.map(n -> Optional.of(renaming.get(n))).get()));
+        return new GraphImpl(id(graph.getName().printRaw() + "'"), elements);
+    }
+
+    @Test
+    public void testCanonicalForm() {
+        List<Name> names = new ArrayList<>();
+        BIGGER.elements().forEach(t -> names.add(t.getLabel()));
+        List<Name> shuffled = new ArrayList<>(names);
+        Collections.shuffle(shuffled, new Random(42));
+        Map<Name, Name> renaming = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            renaming.put(names.get(i), id("r" + shuffled.get(i).printRaw()));
+        }
+        Graph copy = renamed(BIGGER, renaming);
+
+        CanonicalForm form = BIGGER.canonicalForm();
+        CanonicalForm copyForm = copy.canonicalForm();
+        assertEquals(form, copyForm);
+        assertEquals(form.hashString(), copyForm.hashString());
+        assertEquals(32, form.hashString().length());
+        assertTrue(BIGGER.isIsomorphicTo(copy));
+        Map<Name, Name> isomorphism = form.isomorphism(copyForm).get();
+        BIGGER.elements().forEach(t -> assertTrue(copy.contains(t.map(n -> Optional.of(isomorphism.get(n))).get())));
+        assertEquals(BIGGER.elements().count(), form.getTriples().size());
+
+        // same degrees everywhere, but one cycle of six is not two cycles of three
+        assertNotEquals(cycles("a", 6).canonicalForm(), cycles("b", 3, 3).canonicalForm());
+        assertTrue(cycles("a", 3, 3).isIsomorphicTo(cycles("b", 3, 3)));
+        assertTrue(cycles("a", 2, 5, 7).isIsomorphicTo(cycles("b", 7, 2, 5)));
+        assertFalse(cycles("a", 2, 5, 7).isIsomorphicTo(cycles("b", 7, 3, 4)));
+        assertFalse(BIGGER.isIsomorphicTo(GRAPH_BASE));
+
+        // highly symmetric graphs need automorphism pruning
+        Set<Triple> isolated = new HashSet<>();
+        for (int i = 0; i < 40; i++) {
+            isolated.add(Triple.node(id("n" + i)));
+        }
+        Graph discrete = new GraphImpl(id("D"), isolated);
+        assertEquals(40, discrete.canonicalForm().getTriples().size());
+        assertTrue(cycles("a", 4, 4, 4, 4, 4, 4).isIsomorphicTo(cycles("b", 4, 4, 4, 4, 4, 4)));
+
+        Random random = new Random(7);
+        for (int round = 0; round < 20; round++) {
+            Set<Triple> elements = new HashSet<>();
+            for (int i = 0; i < 8; i++) {
+                elements.add(Triple.node(id("v" + i)));
+            }
+            for (int i = 0; i < 14; i++) {
+                elements.add(Triple.edge(id("v" + random.nextInt(8)), id("e" + i), id("v" + random.nextInt(8))));
+            }
+            Graph graph = new GraphImpl(id("R" + round), elements);
+            List<Name> labels = new ArrayList<>();
+            graph.elements().forEach(t -> labels.add(t.getLabel()));
+            List<Name> permuted = new ArrayList<>(labels);
+            Collections.shuffle(permuted, random);
+            Map<Name, Name> permutation = new HashMap<>();
+            for (int i = 0; i < labels.size(); i++) {
+                permutation.put(labels.get(i), id("p" + permuted.get(i).printRaw()));
+            }
+            assertEquals(graph.canonicalForm(), renamed(graph, permutation).canonicalForm());
+        }
+    }
+
+    @Test
+    public void testAutomorphismGroup() {
+        AutomorphismGroup span = AutomorphismGroup.of(Universe.SPAN);
+        assertEquals(2, span.order());
+        assertEquals(2, span.elements().count());
+        Map<Name, Name> swap = span.elements().filter(g -> !g.get(id("1")).equals(id("1"))).findFirst().get();
+        assertEquals(id("2"), swap.get(id("1")));
+        assertEquals(id("02"), swap.get(id("01")));
+        assertEquals(id("0"), swap.get(id("0")));
+
+        assertEquals(4, AutomorphismGroup.of(cycles("a", 4)).order());
+        assertEquals(2 * 3 * 3, AutomorphismGroup.of(cycles("a", 3, 3)).order());
+        // only the parallel edges 31 and 32 can be swapped
+        AutomorphismGroup bigger = AutomorphismGroup.of(BIGGER);
+        assertEquals(2, bigger.order());
+        assertEquals(Sets.newHashSet(id("31"), id("32")), new HashSet<>(bigger.basicOrbit(0)));
+
+        Set<Triple> isolated = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            isolated.add(Triple.node(id("n" + i)));
+        }
+        AutomorphismGroup symmetric = AutomorphismGroup.of(new GraphImpl(id("D"), isolated));
+        assertEquals(120, symmetric.order());
+        assertEquals(120, symmetric.elements().distinct().count());
+
+        // every element maps the graph onto itself
+        Graph graph = cycles("a", 2, 2, 4);
+        AutomorphismGroup group = AutomorphismGroup.of(graph);
+        assertEquals(2 * 2 * 2 * 4, group.order());
+        group.elements().forEach(g -> graph.elements().forEach(t -> assertTrue(graph.contains(t.map(n -> Optional.of(g.get(n))).get()))));
+    }
+
+    @Test
+    public void testReachabilityIndex() {
+        // cycles are collapsed
+        ReachabilityIndex bigger = ReachabilityIndex.of(BIGGER);
+        assertTrue(bigger.reaches(id("1"), id("2")));
+        assertTrue(bigger.reaches(id("2"), id("1")));
+        assertTrue(bigger.reaches(id("3"), id("7")));
+        assertFalse(bigger.reaches(id("1"), id("3")));
+        assertFalse(bigger.reaches(id("1"), id("8")));
+        assertFalse(bigger.reaches(id("1"), id("Car")));
+
+        // small DAGs use the closure bitsets and larger ones the interval labelling
+        for (int size : new int[]{200, ReachabilityIndex.BITSET_LIMIT + 500}) {
+            Random random = new Random(size);
+            Set<Tuple> pairs = new HashSet<>();
+            List<List<Integer>> successors = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                successors.add(new ArrayList<>());
+                if (i > 0) {
+                    int parent = random.nextInt(i);
+                    pairs.add(new Tuple(id("n" + i), id("n" + parent)));
+                    successors.get(i).add(parent);
+                }
+                if (i > 1 && random.nextInt(4) == 0) {
+                    int other = random.nextInt(i);
+                    pairs.add(new Tuple(id("n" + i), id("n" + other)));
+                    successors.get(i).add(other);
+                }
+            }
+            ReachabilityIndex index = ReachabilityIndex.of(pairs);
+            for (int query = 0; query < 500; query++) {
+                int from = random.nextInt(size);
+                int to = random.nextInt(size);
+                BitSet reachable = new BitSet();
+                Deque<Integer> stack = new ArrayDeque<>(Collections.singleton(from));
+                reachable.set(from);
+                while (!stack.isEmpty()) {
+                    for (int next : successors.get(stack.pop())) {
+                        if (!reachable.get(next)) {
+                            reachable.set(next);
+                            stack.push(next);
+                        }
+                    }
+                }
+                assertEquals(reachable.get(to), index.reaches(id("n" + from), id("n" + to)));
+            }
+        }
+    }
+
 }
@@ -481,6 +481,23 @@ public class MorphismTest extends TestWithGraphLib {
         addExpectedTriple(t("A", "f", "B"));
         addExpectedTriple(t("B", "g", "C"));
         assertStreamEquals(expected(), morphism.preimage(t("A", "a", "A")));
+
+        addExpectedTriple(t("A", "f", "B"));
+        addExpectedTriple(t("B", "g", "C"));
+        assertStreamEquals(expected(), morphism.selectByLabel(id("a")));
+        assertStreamEquals(morphism.allNodeInstances(id("A")), id("A"), id("B"), id("C"), id("D"));
+        assertStreamEquals(Stream.empty(), morphism.preimage(t("A", "a", "B")));
+        assertStreamEquals(Stream.empty(), morphism.preimage(Triple.node(id("X"))));
+        assertStreamEquals(Stream.empty(), morphism.selectByLabel(id("X")));
+        assertFalse(morphism.isMonic());
+        assertTrue(morphism.isEpic());
+
+        assertStreamEquals(morphism.allOutgoingInstances(t("A", "a", "A"), id("B")), t("B", "g", "C"));
+        assertStreamEquals(morphism.allIncomingInstances(t("A", "a", "A"), id("B")), t("A", "f", "B"));
+        assertStreamEquals(Stream.empty(), morphism.allOutgoingInstances(t("A", "a", "A"), id("C")));
+        assertStreamEquals(Stream.empty(), morphism.allOutgoingInstances(t("A", "a", "B"), id("B")));
+        assertStreamEquals(morphism.allSrcCoincidentInstances(t("A", "a", "A"), t("A", "a", "A")).map(Pair::getSecond),
+                t("A", "f", "B"), t("B", "g", "C"));
     }
 
     // Pullbacks
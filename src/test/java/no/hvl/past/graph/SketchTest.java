@@ -13,10 +13,21 @@ import no.hvl.past.graph.operations.Invert;
 
 import no.hvl.past.graph.predicates.TargetMultiplicity;
 import no.hvl.past.graph.elements.Triple;
+import no.hvl.past.logic.Formula;
 import no.hvl.past.names.Name;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 
@@ -194,6 +205,67 @@ public class SketchTest extends TestWithGraphLib {
     }
 
 
+    @Test
+    public void testBinaryRoundtrip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BinaryGraphWriter writer = new BinaryGraphWriter(bytes)) {
+            writer.write(sketch);
+            writer.write(instance);
+        }
+        Map<Name, Formula<Graph>> labels = new HashMap<>();
+        sketch.diagrams().forEach(d -> labels.put(((Element) d.label()).getName(), d.label()));
+
+        BinaryGraphReader reader = new BinaryGraphReader(new ByteArrayInputStream(bytes.toByteArray()), n -> Optional.ofNullable(labels.get(n)));
+        assertTrue(reader.hasNext());
+        Sketch readSketch = reader.readSketch();
+        GraphMorphism readInstance = reader.readMorphism();
+        assertFalse(reader.hasNext());
+
+        assertEquals(sketch.getName(), readSketch.getName());
+        assertStreamEquals(sketch.carrier().elements(), readSketch.carrier().elements());
+        assertEquals(sketch.diagrams().count(), readSketch.diagrams().count());
+        sketch.diagrams().forEach(d -> {
+            Diagram read = readSketch.diagramByName(d.getName()).get();
+            assertEquals(((Element) d.label()).getName(), ((Element) read.label()).getName());
+            assertStreamEquals(d.binding().mappings(), read.binding().mappings());
+            assertSame(readSketch.carrier(), read.binding().codomain());
+        });
+
+        assertEquals(instance.getName(), readInstance.getName());
+        assertStreamEquals(instance.domain().elements(), readInstance.domain().elements());
+        assertStreamEquals(instance.mappings(), readInstance.mappings());
+        assertSame(readSketch.carrier(), readInstance.codomain());
+
+        assertThrows(IOException.class, () -> new BinaryGraphReader(new ByteArrayInputStream(bytes.toByteArray())).readSketch());
+    }
+
+    @Test
+    public void testBinaryRoundtripWithRepeatedGraph() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BinaryGraphWriter writer = new BinaryGraphWriter(bytes)) {
+            writer.write(instance.codomain());
+            writer.write(instance.codomain());
+            writer.write(instance);
+            writer.write(instance);
+        }
+        BinaryGraphReader reader = new BinaryGraphReader(new ByteArrayInputStream(bytes.toByteArray()));
+        Graph first = reader.readGraph();
+        Graph second = reader.readGraph();
+        GraphMorphism readInstance = reader.readMorphism();
+        GraphMorphism readAgain = reader.readMorphism();
+        assertFalse(reader.hasNext());
+
+        assertStreamEquals(instance.codomain().elements(), first.elements());
+        assertStreamEquals(instance.codomain().elements(), second.elements());
+        assertEquals(instance.domain().getName(), readInstance.domain().getName());
+        assertStreamEquals(instance.domain().elements(), readInstance.domain().elements());
+        assertSame(second, readInstance.codomain());
+        assertStreamEquals(instance.mappings(), readInstance.mappings());
+        // the second morphism only refers to the graphs written before
+        assertSame(readInstance.domain(), readAgain.domain());
+        assertSame(second, readAgain.codomain());
+    }
+
     @Test
     public void testDerivedAndGroundElements() throws GraphError {
         assertTrue(this.sketch.diagrams().allMatch(diagram -> diagram.verify()));
@@ -344,5 +416,31 @@ public class SketchTest extends TestWithGraphLib {
         // TODO make the union of edges impose a certain order that is stable under pullbacks
     }
 
+    @Test
+    public void testExtendKeepsExistingDerivedElements() throws GraphError {
+        // the loop of :p1 is already there, the one of :p2 is missing
+        Name loop = ReflexiveClosure.getInstance().getName().appliedTo(Name.identifier(":p1"));
+        GraphMorphism partial = getContextCreatingBuilder()
+                .importMorphism(this.instance)
+                .edge(Name.identifier(":p1"), loop, Name.identifier(":p1"))
+                .graph("Instance_domain_with_loop")
+                .codomain(this.sketch.carrier())
+                .map(loop, Name.identifier("this"))
+                .morphism("partial")
+                .getResult(GraphMorphism.class);
+        GraphMorphism extended = this.sketch.extend(Name.identifier("partial++"), partial, getExecutionContext());
+
+        Triple thisEdge = Triple.edge(Name.identifier("Person"), Name.identifier("this"), Name.identifier("Person"));
+        List<Triple> loops = extended.preimage(thisEdge).collect(Collectors.toList());
+        assertEquals(2, loops.size());
+        assertEquals(1, extended.allOutgoingInstances(thisEdge, Name.identifier(":p1")).count());
+        assertEquals(1, extended.allIncomingInstances(thisEdge, Name.identifier(":p1")).count());
+        this.sketch.carrier().elements().forEach(type -> {
+            List<Triple> instances = extended.preimage(type).collect(Collectors.toList());
+            assertEquals(new HashSet<>(instances).size(), instances.size());
+            instances.forEach(inst -> assertEquals(Optional.of(type.getLabel()), extended.map(inst.getLabel())));
+        });
+    }
+
 
 }
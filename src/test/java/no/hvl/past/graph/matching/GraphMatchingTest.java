@@ -3,17 +3,52 @@ package no.hvl.past.graph.matching;
 
 import no.hvl.past.graph.TestWithGraphLib;
 import no.hvl.past.graph.Graph;
+import no.hvl.past.graph.GraphBuilders;
 import no.hvl.past.graph.GraphError;
 import no.hvl.past.graph.GraphMorphism;
+import no.hvl.past.graph.Universe;
+import no.hvl.past.graph.elements.Triple;
+import no.hvl.past.names.Name;
+import no.hvl.past.searching.SearchBudget;
+import no.hvl.past.searching.SearchResult;
+import com.google.common.collect.Sets;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 
 public class GraphMatchingTest extends TestWithGraphLib {
 
+    /**
+     * A pattern with two edges leaving the same node.
+     */
+    private static final Graph FORK = new GraphBuilders(universe, true, false)
+            .edge("X", "xy", "Y")
+            .edge("X", "xz", "Z")
+            .graph("FORK")
+            .getResult(Graph.class);
+
+    /**
+     * A host where only the hub has two outgoing edges, followed by a path a -> b -> c ending in a loop.
+     */
+    private static final Graph HUB_HOST = new GraphBuilders(universe, true, false)
+            .edge("hub", "h1", "a")
+            .edge("hub", "h2", "b")
+            .edge("a", "ab", "b")
+            .edge("b", "bc", "c")
+            .edge("c", "cc", "c")
+            .graph("HUB_HOST")
+            .getResult(Graph.class);
+
     @Test
     public void testMatchingOnlyNodes() throws GraphError {
         Graph twoNodes = getContextCreatingBuilder()
@@ -34,6 +69,9 @@ public class GraphMatchingTest extends TestWithGraphLib {
         assertEquals(9, new GraphMatcher(getExecutionContext(),false).allMatches(twoNodes, threNodes).size());
         assertEquals(0, new GraphMatcher(getExecutionContext(),true).allMatches(threNodes, twoNodes).size());
         assertEquals(6, new GraphMatcher(getExecutionContext(),true).allMatches(twoNodes, threNodes).size());
+        assertEquals(8, new GraphMatcher(getExecutionContext(),false).allMatches(threNodes, twoNodes, GraphStatistics.of(twoNodes)).size());
+        assertEquals(0, new GraphMatcher(getExecutionContext(),true).allMatches(threNodes, twoNodes, GraphStatistics.of(twoNodes)).size());
+        assertEquals(6, new GraphMatcher(getExecutionContext(),true).allMatches(twoNodes, threNodes, GraphStatistics.of(threNodes)).size());
 
     }
 
@@ -53,6 +91,8 @@ public class GraphMatchingTest extends TestWithGraphLib {
 
         assertEquals(0, new GraphMatcher(getExecutionContext(),false).allMatches( oneLoopOneEdge, span).size());
         assertEquals(4, new GraphMatcher(getExecutionContext(),false).allMatches(span, oneLoopOneEdge).size());
+        assertEquals(0, new GraphMatcher(getExecutionContext(),false).allMatches( oneLoopOneEdge, span, GraphStatistics.of(span)).size());
+        assertEquals(4, new GraphMatcher(getExecutionContext(),false).allMatches(span, oneLoopOneEdge, GraphStatistics.of(oneLoopOneEdge)).size());
     }
 
 
@@ -78,6 +118,27 @@ public class GraphMatchingTest extends TestWithGraphLib {
         assertEquals(21, new GraphMatcher(getExecutionContext(),false).allMatches(H, G).size());
         assertEquals(2, new GraphMatcher(getExecutionContext(),true).allMatches(H, G).size());
 
+        assertEquals(21, new GraphMatcher(getExecutionContext(),false).streamMatches(H, G).count());
+        assertEquals(5, new GraphMatcher(getExecutionContext(),false).streamMatches(H, G).limit(5).count());
+        assertTrue(new GraphMatcher(getExecutionContext(),true).streamMatches(H, G).findFirst().isPresent());
+
+        try (GraphMatcher matcher = new GraphMatcher(getExecutionContext(), false).parallel(4)) {
+            assertEquals(21, matcher.allMatches(H, G).size());
+            matcher.close();
+            // continues sequentially
+            assertEquals(21, matcher.allMatches(H, G).size());
+        }
+        try (GraphMatcher matcher = new GraphMatcher(getExecutionContext(), true).parallel(4)) {
+            assertEquals(2, matcher.allMatches(H, G).size());
+        }
+        try (GraphMatcher matcher = new GraphMatcher(getExecutionContext(), false).parallel(4, 1)) {
+            assertEquals(21, matcher.allMatches(H, G).size());
+        }
+
+        GraphStatistics statistics = GraphStatistics.of(G);
+        assertEquals(21, new GraphMatcher(getExecutionContext(),false).allMatches(H, G, statistics).size());
+        assertEquals(2, new GraphMatcher(getExecutionContext(),true).allMatches(H, G, statistics).size());
+
     }
 
     @Test
@@ -128,7 +189,178 @@ public class GraphMatchingTest extends TestWithGraphLib {
 
         List<GraphMorphism> result = new GraphMatcher(getExecutionContext(),false).allTypedMatches(typedPattern, typedInstance);
         assertEquals(2, result.size());
+
+        GraphStatistics statistics = GraphStatistics.of(typedInstance);
+        assertEquals(2, statistics.instances(id("1")));
+        assertEquals(1.0, statistics.fanOut(id("12")), 0.001);
+        assertEquals(2.0 / 3, statistics.fanIn(id("12")), 0.001);
+
+        SearchPlanCompiler compiler = new SearchPlanCompiler();
+        SearchPlan plan = compiler.compile(typedPattern, statistics);
+        // there are fewer instances of 1 than of 2 and every instance of 1 has exactly one outgoing 12-edge
+        assertEquals(Arrays.asList("lookup X", "extend X -xy-> Y"), plan.describe());
+        assertSame(plan, compiler.compile(typedPattern, statistics));
+        assertNotSame(plan, compiler.compile(typedPattern, GraphStatistics.of(typedInstance)));
+
+        Set<GraphMorphism> typedMatches = new GraphMatcher(getExecutionContext(), false)
+                .streamTypedMatches(typedPattern, typedInstance, statistics)
+                .collect(Collectors.toSet());
+        assertEquals(2, typedMatches.size());
+        for (GraphMorphism match : typedMatches) {
+            assertEquals(id("B"), match.map(id("Y")).get());
+        }
+
+        assertEquals(1, new GraphMatcher(getExecutionContext(), false)
+                .streamTypedMatches(typedPattern, typedInstance, SearchBudget.unlimited().withMaxSolutions(1))
+                .count());
+    }
+
+    @Test
+    public void testCandidateFiltering() throws GraphError {
+        Set<Triple> hostNodes = HUB_HOST.elements().filter(Triple::isNode).collect(Collectors.toSet());
+        Set<Triple> hostEdges = HUB_HOST.edges().collect(Collectors.toSet());
+
+        CandidateFilter injective = new CandidateFilter(true);
+        FORK.nodes().forEach(n -> injective.addNode(n, hostNodes));
+        FORK.edges().forEach(t -> injective.addEdge(t, hostEdges));
+        injective.filterBySignature(FORK, HUB_HOST);
+        injective.refine();
+        // only the hub has two outgoing proper edges
+        assertEquals(Collections.singleton(Triple.node(id("hub"))), injective.nodeCandidates(id("X")));
+        assertEquals(Sets.newHashSet(Triple.node(id("a")), Triple.node(id("b"))), injective.nodeCandidates(id("Y")));
+
+        CandidateFilter nonInjective = new CandidateFilter(false);
+        FORK.nodes().forEach(n -> nonInjective.addNode(n, hostNodes));
+        FORK.edges().forEach(t -> nonInjective.addEdge(t, hostEdges));
+        nonInjective.filterBySignature(FORK, HUB_HOST);
+        nonInjective.refine();
+        // both edges may go to the same edge, but a source is needed
+        assertEquals(Sets.newHashSet(Triple.node(id("hub")), Triple.node(id("a")), Triple.node(id("b")), Triple.node(id("c"))), nonInjective.nodeCandidates(id("X")));
+
+        assertEquals(2, new GraphMatcher(getExecutionContext(), true).allMatches(FORK, HUB_HOST).size());
+        assertEquals(4 + 1 + 1 + 1, new GraphMatcher(getExecutionContext(), false).allMatches(FORK, HUB_HOST).size());
+    }
+
+    @Test
+    public void testMatchingBudget() throws GraphError {
+        SearchResult<Set<GraphMorphism>> all = new GraphMatcher(getExecutionContext(), false)
+                .allMatches(FORK, HUB_HOST, SearchBudget.unlimited());
+        assertEquals(7, all.getResult().size());
+        assertTrue(all.isComplete());
+
+        SearchResult<Set<GraphMorphism>> limited = new GraphMatcher(getExecutionContext(), false)
+                .allMatches(FORK, HUB_HOST, SearchBudget.unlimited().withMaxSolutions(3));
+        assertEquals(3, limited.getResult().size());
+        assertFalse(limited.isComplete());
+
+        GraphMatcher matcher = new GraphMatcher(getExecutionContext(), true);
+        SearchResult<Optional<GraphMorphism>> some = matcher.randomMatch(FORK, HUB_HOST, SearchBudget.unlimited());
+        assertTrue(some.getResult().isPresent());
+        assertEquals(id("hub"), some.getResult().get().map(id("X")).get());
+        assertTrue(matcher.existMatch(FORK, HUB_HOST, SearchBudget.unlimited()).getResult());
+        SearchResult<Boolean> stopped = matcher.existMatch(FORK, HUB_HOST, SearchBudget.unlimited().withMaxExpansions(0));
+        assertFalse(stopped.getResult());
+        assertEquals(SearchBudget.Status.EXPANSION_LIMIT_REACHED, stopped.getStatus());
     }
 
 
+    @Test
+    public void testIncrementalMatching() throws GraphError {
+        Graph changed = getContextCreatingBuilder()
+                .edge("hub", "h1", "a")
+                .edge("a", "ab", "b")
+                .edge("a", "ad", "d")
+                .edge("b", "bc", "c")
+                .edge("c", "cc", "c")
+                .graph("CHANGED")
+                .getResult(Graph.class);
+
+        IncrementalMatcher injective = new IncrementalMatcher(true);
+        IncrementalMatcher nonInjective = new IncrementalMatcher(false);
+        int[] events = new int[2];
+        injective.addListener(new IncrementalMatcher.Listener() {
+            @Override
+            public void matchAdded(Graph pattern, Map<Name, Name> match) {
+                events[0]++;
+            }
+
+            @Override
+            public void matchRemoved(Graph pattern, Map<Name, Name> match) {
+                events[1]++;
+            }
+        });
+        injective.register(FORK);
+        nonInjective.register(FORK);
+        injective.update(HUB_HOST);
+        nonInjective.update(HUB_HOST);
+        SearchPlan plan = new SearchPlanCompiler().compile(FORK, GraphStatistics.of(HUB_HOST));
+        assertEquals(plan.execute(HUB_HOST, true).collect(Collectors.toSet()), injective.matches(FORK));
+        assertEquals(plan.execute(HUB_HOST, false).collect(Collectors.toSet()), nonInjective.matches(FORK));
+        assertEquals(2, events[0]);
+        assertEquals(0, events[1]);
+
+        // the hub loses one edge, the fork moves to a
+        injective.update(changed);
+        nonInjective.update(changed);
+        assertEquals(plan.execute(changed, true).collect(Collectors.toSet()), injective.matches(FORK));
+        assertEquals(plan.execute(changed, false).collect(Collectors.toSet()), nonInjective.matches(FORK));
+        assertEquals(4, events[0]);
+        assertEquals(2, events[1]);
+
+        // removing a node removes the matches using it
+        nonInjective.remove(Triple.node(id("d")));
+        assertTrue(nonInjective.matches(FORK).stream().noneMatch(m -> m.containsValue(id("d"))));
+
+        // patterns registered later see the current host
+        IncrementalMatcher late = new IncrementalMatcher(true);
+        late.update(changed);
+        late.register(FORK);
+        assertEquals(injective.matches(FORK), late.matches(FORK));
+    }
+
+    private static Set<Map<Name, Name>> asMaps(Collection<GraphMorphism> matches) {
+        return matches.stream()
+                .map(m -> m.domain().elements().collect(Collectors.toMap(Triple::getLabel, t -> m.map(t.getLabel()).get())))
+                .collect(Collectors.toSet());
+    }
+
+    @Test
+    public void testSymmetryBreaking() throws GraphError {
+        Graph host = getContextCreatingBuilder()
+                .importGraph(HUB_HOST)
+                .edge("hub", "h3", "c")
+                .graph("THREE_LEGGED_HUB_HOST")
+                .getResult(Graph.class);
+
+        for (boolean injective : new boolean[]{true, false}) {
+            Set<GraphMorphism> all = new GraphMatcher(getExecutionContext(), injective).allMatches(Universe.SPAN, host);
+            GraphMatcher matcher = new GraphMatcher(getExecutionContext(), injective).breakSymmetries(true);
+            Set<GraphMorphism> representatives = matcher.allMatches(Universe.SPAN, host);
+            assertTrue(representatives.size() < all.size());
+            assertEquals(asMaps(all), asMaps(representatives.stream().flatMap(matcher::symmetricMatches).collect(Collectors.toList())));
+            if (injective) {
+                // the legs are swapped by the only non-trivial automorphism
+                assertEquals(all.size(), 2 * representatives.size());
+            }
+        }
+
+        Graph triangle = getContextCreatingBuilder()
+                .edge("x", "xy", "y")
+                .edge("y", "yz", "z")
+                .edge("z", "zx", "x")
+                .graph("TRIANGLE")
+                .getResult(Graph.class);
+        Graph twoTriangles = getContextCreatingBuilder()
+                .edge("1", "12", "2")
+                .edge("2", "23", "3")
+                .edge("3", "31", "1")
+                .edge("4", "45", "5")
+                .edge("5", "56", "6")
+                .edge("6", "64", "4")
+                .graph("TWO_TRIANGLES")
+                .getResult(Graph.class);
+        assertEquals(6, new GraphMatcher(getExecutionContext(), true).allMatches(triangle, twoTriangles).size());
+        assertEquals(2, new GraphMatcher(getExecutionContext(), true).breakSymmetries(true).allMatches(triangle, twoTriangles).size());
+    }
+
 }
@@ -10,9 +10,11 @@ import no.hvl.past.names.URIName;
 import no.hvl.past.util.Multiplicity;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.nio.file.Path;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -219,5 +221,17 @@ public class RoundtripTests extends TestWithGraphLib {
         assertMorphismsEqual(expected, actual);
     }
 
+    @Test
+    public void testMappedGraphReading(@TempDir Path dir) throws Exception {
+        FileInputStream inputStream = new FileInputStream("src/test/resources/trees/objects.xml");
+        ToGraphTreeReceiver receiver = new ToGraphTreeReceiver(getUniverse());
+        XmlLibrary.getInstance().reader().treeName(id("import")).read(inputStream).emitEvents(receiver);
+
+        Graph expected = receiver.getGraphResult();
+        Graph mapped = receiver.getMappedGraphResult(dir.resolve("import.graph"));
+        assertEquals(expected.getName(), mapped.getName());
+        assertStreamEquals(expected.elements(), mapped.elements());
+    }
+
 
 }
@@ -1,9 +1,15 @@
 package no.hvl.past.names;
 
 
+import no.hvl.past.util.ByteUtils;
 import no.hvl.past.util.ProperComparator;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 
@@ -56,6 +62,112 @@ public class NamesTest {
    }
 
 
+    @Test
+    public void testInterning() {
+        NameTable table = new NameTable();
+        Name a1 = Name.identifier("A").prefixWith(Name.identifier("G"));
+        Name a2 = Name.identifier("A").prefixWith(Name.identifier("G"));
+        Name b = Name.identifier("B");
+        assertNotSame(a1, a2);
+
+        int idA = table.idOf(a1);
+        int idB = table.idOf(b);
+        assertEquals(0, idA);
+        assertEquals(1, idB);
+        assertEquals(idA, table.idOf(a2));
+        assertSame(a1, table.intern(a2));
+        assertSame(b, table.get(idB));
+        assertEquals(2, table.size());
+
+        assertEquals(-1, table.lookup(Name.identifier("C")));
+        assertFalse(table.contains(Name.identifier("C")));
+        assertEquals(2, table.size());
+
+        assertEquals(table.intern(a2), table.intern(a1));
+        assertNotEquals(table.intern(a1), table.intern(b));
+        assertEquals(a2, table.intern(a1));
+
+        // only the global table is remembered by its canonical names
+        assertNull(a1.internedIn);
+        Name c = Name.identifier("C").prefixWith(Name.identifier("testInterning"));
+        int idC = NameTable.global().idOf(c);
+        assertSame(NameTable.global(), c.internedIn);
+        assertEquals(idC, c.internId);
+    }
+
+    @Test
+    public void testFingerprint() {
+        Name complex1 = Name.identifier("a").prefixWith(Name.identifier("G")).times(Name.value(42)).index(3);
+        Name complex2 = Name.identifier("a").prefixWith(Name.identifier("G")).times(Name.value(42)).index(3);
+        Name other = Name.identifier("a").prefixWith(Name.identifier("G")).times(Name.value(43)).index(3);
+        assertEquals(complex1.fingerprint(), complex2.fingerprint());
+        assertEquals(complex1.hashCode(), complex2.hashCode());
+        assertNotEquals(complex1.fingerprint(), other.fingerprint());
+        assertEquals(ByteUtils.hash64(complex1.getValue()), complex1.fingerprint());
+
+        // reference values of XXH64 (seed 0)
+        assertEquals(0xEF46DB3751D8E999L, ByteUtils.hash64(new byte[0]));
+        assertEquals(0x44BC2CF5AD770999L, ByteUtils.hash64("abc".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(0xFBCEA83C8A378BF1L, ByteUtils.hash64("Nobody inspects the spammish repetition".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    public void testSegmentedRepresentation() {
+        Name deep = Name.identifier("someAttribute").prefixWith(Name.identifier("SomeClass")).prefixWith(Name.identifier("somePackage"))
+                .typeBy(Name.identifier("EAttribute").prefixWith(Name.identifier("Ecore")))
+                .mergeWith(Name.identifier("x").index(7), Name.identifier("y").inverse());
+        byte[] flat = deep.getValue();
+        assertTrue(flat.length > 64);
+        assertArrayEquals(flat, ByteUtils.flatten(deep.segments()));
+        assertEquals(ByteUtils.hash64(flat), deep.fingerprint());
+        assertEquals(java.util.Arrays.hashCode(flat), ByteUtils.segmentsHashCode(deep.segments()));
+
+        byte[][] split1 = {java.util.Arrays.copyOfRange(flat, 0, 5), java.util.Arrays.copyOfRange(flat, 5, 40), java.util.Arrays.copyOfRange(flat, 40, flat.length)};
+        byte[][] split2 = {java.util.Arrays.copyOfRange(flat, 0, 33), new byte[0], java.util.Arrays.copyOfRange(flat, 33, flat.length)};
+        assertTrue(ByteUtils.segmentsEqual(split1, split2));
+        assertTrue(ByteUtils.segmentsEqual(split1, deep.segments()));
+        assertEquals(deep.fingerprint(), ByteUtils.hash64(split1));
+        assertEquals(deep.fingerprint(), ByteUtils.hash64(split2));
+        split2[2][3]++;
+        assertFalse(ByteUtils.segmentsEqual(split1, split2));
+    }
+
+    @Test
+    public void testSerialization() {
+        NameSerializer serializer = new NameSerializer();
+        NameDeserializer deserializer = new NameDeserializer();
+        Name anonymous = Name.anonymousIdentifier();
+        List<Name> names = Arrays.asList(
+                Name.identifier("Ø-Person"),
+                new URIName("http://example.org/model#Person"),
+                Name.randomUUID(),
+                Name.variable("x"),
+                Name.value("some text"),
+                Name.value(-123456789123L),
+                Name.value(3.25),
+                Name.trueValue(),
+                anonymous,
+                Name.identifier("someAttribute").prefixWith(Name.identifier("SomeClass"))
+                        .typeBy(Name.identifier("EAttribute"))
+                        .mergeWith(Name.identifier("x").index(7), Name.identifier("y").inverse()),
+                new NamePath(Arrays.asList(Name.identifier("root"), Name.identifier("child").index(2))));
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        for (Name n : names) {
+            buffer.put(serializer.serialize(n));
+        }
+        buffer.flip();
+        for (Name n : names) {
+            Name read = deserializer.deserialize(buffer);
+            assertEquals(n, read);
+            assertEquals(n.fingerprint(), read.fingerprint());
+            if (n != anonymous) {
+                assertEquals(n.print(PrintingStrategy.IGNORE_PREFIX), read.print(PrintingStrategy.IGNORE_PREFIX));
+            }
+        }
+        assertFalse(buffer.hasRemaining());
+        assertThrows(IllegalArgumentException.class, () -> deserializer.deserialize(ByteBuffer.wrap(new byte[]{(byte) 0xE0, 100, 65})));
+    }
+
     @Test
     public void testUUIDs() {
         UUIDIdentifier id1 = Name.randomUUID();
@@ -4,10 +4,9 @@ import com.google.common.collect.Sets;
 import org.junit.jupiter.api.Test;
 
 
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Map;
-import java.util.Set;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -109,4 +108,213 @@ public class CSPTest {
         assertEquals(18, allSolutions.size()); // There are 18 solutions.
 
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSolvingTwiceOnTheSameProblem() {
+        ColoredState wa = new ColoredState("Western Australia");
+        ColoredState nt = new ColoredState("Northern Territory");
+        ColoredState sa = new ColoredState("South Australia");
+        ColoredState q = new ColoredState("Queensland");
+        ColoredState t = new ColoredState("Tasmania");
+        CSPSolver<Color, ColoredState> problem = CSPSolver.createProblem(
+                Sets.newHashSet(wa, nt, sa, q, t),
+                Sets.newHashSet(new AdjacentStates(wa, nt), new AdjacentStates(wa, sa), new AdjacentStates(nt, sa), new AdjacentStates(nt, q), new AdjacentStates(sa, q)));
+
+        // the domains that have been pruned during the first search must be restored afterwards
+        Map<ColoredState, Color> first = problem.backTrackOneSolution();
+        assertEquals(5, first.size());
+        Set<Map<ColoredState, Color>> allSolutions = problem.backtrackAllSolutions();
+        assertEquals(18, allSolutions.size()); // 6 for the mainland times 3 for Tasmania
+        assertTrue(allSolutions.contains(first));
+        assertEquals(allSolutions, problem.backtrackAllSolutions());
+    }
+
+    private static class Queen implements CSPSolver.Variable<Integer> {
+        private final int column;
+        private final int size;
+
+        private Queen(int column, int size) {
+            this.column = column;
+            this.size = size;
+        }
+
+        @Override
+        public Set<Integer> possibleValues() {
+            Set<Integer> rows = new HashSet<>();
+            for (int row = 0; row < size; row++) {
+                rows.add(row);
+            }
+            return rows;
+        }
+    }
+
+    private static class NoDiagonalAttack implements CSPSolver.BinaryConstraint<Integer> {
+        private final Queen left;
+        private final Queen right;
+
+        private NoDiagonalAttack(Queen left, Queen right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public CSPSolver.Variable<Integer> lhs() {
+            return left;
+        }
+
+        @Override
+        public CSPSolver.Variable<Integer> rhs() {
+            return right;
+        }
+
+        @Override
+        public boolean satisfied(Integer lhs, Integer rhs) {
+            return Math.abs(lhs - rhs) != Math.abs(left.column - right.column);
+        }
+    }
+
+    private CSPSolver<Integer, Queen> queens(int size) {
+        List<Queen> queens = new ArrayList<>();
+        Set<CSPSolver.BinaryConstraint<Integer>> constraints = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            Queen queen = new Queen(i, size);
+            for (Queen other : queens) {
+                constraints.add(new NoDiagonalAttack(other, queen));
+            }
+            queens.add(queen);
+        }
+        // rows are distinct by the all-diff constraint, diagonals by the binary constraints
+        return CSPSolver.createProblem(
+                new HashSet<>(queens),
+                constraints,
+                Collections.singleton(new CSPSolver.AllDiffConstraint<>(new ArrayList<>(queens))));
+    }
+
+    private Set<Map<Queen, Integer>> solveQueens(int size) {
+        return queens(size).backtrackAllSolutions();
+    }
+
+    @Test
+    public void testQueens() {
+        assertEquals(0, solveQueens(3).size());
+        assertEquals(2, solveQueens(4).size());
+        assertEquals(4, solveQueens(6).size());
+        assertEquals(92, solveQueens(8).size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMoreStatesThanColors() {
+        ColoredState t = new ColoredState("Tasmania");
+        ColoredState v = new ColoredState("Victoria");
+        ColoredState nsw = new ColoredState("New South Wales");
+        ColoredState q = new ColoredState("Queensland");
+        assertTrue(CSPSolver.createProblem(
+                Sets.newHashSet(t, v, nsw, q),
+                Collections.emptySet(),
+                Collections.singleton(new CSPSolver.AllDiffConstraint<>(Arrays.asList(t, v, nsw, q)))
+        ).backtrackAllSolutions().isEmpty());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLazySolutions() {
+        ColoredState t = new ColoredState("Tasmania");
+        ColoredState v = new ColoredState("Victoria");
+        ColoredState nsw = new ColoredState("New South Wales");
+        CSPSolver<Color, ColoredState> problem = CSPSolver.createProblem(
+                Sets.newHashSet(t, v, nsw),
+                Sets.newHashSet(new AdjacentStates(v, nsw)));
+
+        assertEquals(2, problem.solutions().limit(2).count());
+        assertEquals(18, problem.solutions().count());
+
+        Iterator<Map<ColoredState, Color>> first = problem.solutionIterator();
+        assertTrue(first.hasNext());
+        first.next();
+        Iterator<Map<ColoredState, Color>> second = problem.solutionIterator();
+        assertThrows(ConcurrentModificationException.class, first::hasNext);
+        int count = 0;
+        while (second.hasNext()) {
+            second.next();
+            count++;
+        }
+        assertEquals(18, count);
+        assertFalse(second.hasNext());
+    }
+
+    @Test
+    public void testParallelSearch() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int splitDepth = 0; splitDepth < 4; splitDepth++) {
+                CSPSolver<Integer, Queen> problem = queens(8);
+                Set<Map<Queen, Integer>> parallel = problem.backtrackAllSolutions(pool, splitDepth);
+                assertEquals(92, parallel.size());
+                assertEquals(problem.backtrackAllSolutions(), parallel);
+            }
+            assertTrue(queens(3).backtrackAllSolutions(pool, 2).isEmpty());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSearchBudget() {
+        CSPSolver<Integer, Queen> problem = queens(8);
+
+        SearchResult<Set<Map<Queen, Integer>>> limited = problem.backtrackAllSolutions(SearchBudget.unlimited().withMaxSolutions(10));
+        assertEquals(SearchBudget.Status.SOLUTION_LIMIT_REACHED, limited.getStatus());
+        assertEquals(10, limited.getResult().size());
+        assertTrue(problem.backtrackAllSolutions().containsAll(limited.getResult()));
+
+        SearchBudget expansions = SearchBudget.unlimited().withMaxExpansions(50);
+        SearchResult<Set<Map<Queen, Integer>>> partial = problem.backtrackAllSolutions(expansions);
+        assertEquals(SearchBudget.Status.EXPANSION_LIMIT_REACHED, partial.getStatus());
+        assertFalse(partial.isComplete());
+        assertTrue(partial.getResult().size() < 92);
+        assertEquals(50, expansions.getExpansions());
+
+        SearchBudget cancelled = SearchBudget.unlimited();
+        cancelled.cancel();
+        SearchResult<Set<Map<Queen, Integer>>> nothing = problem.backtrackAllSolutions(cancelled);
+        assertEquals(SearchBudget.Status.CANCELLED, nothing.getStatus());
+        assertTrue(nothing.getResult().isEmpty());
+
+        SearchResult<Set<Map<Queen, Integer>>> late = queens(10).backtrackAllSolutions(SearchBudget.unlimited().withTimeout(Duration.ZERO));
+        assertEquals(SearchBudget.Status.DEADLINE_EXCEEDED, late.getStatus());
+
+        SearchResult<Set<Map<Queen, Integer>>> complete = problem.backtrackAllSolutions(SearchBudget.unlimited().withTimeout(Duration.ofMinutes(1)));
+        assertTrue(complete.isComplete());
+        assertEquals(92, complete.getResult().size());
+
+        // the limit is only reached if there are more solutions
+        SearchResult<Set<Map<Queen, Integer>>> exact = problem.backtrackAllSolutions(SearchBudget.unlimited().withMaxSolutions(92));
+        assertTrue(exact.isComplete());
+        assertEquals(92, exact.getResult().size());
+        SearchResult<Set<Map<Queen, Integer>>> oneLess = problem.backtrackAllSolutions(SearchBudget.unlimited().withMaxSolutions(91));
+        assertEquals(SearchBudget.Status.SOLUTION_LIMIT_REACHED, oneLess.getStatus());
+        assertEquals(91, oneLess.getResult().size());
+
+        // timeouts beyond the range of nano times do not overflow
+        assertTrue(problem.backtrackAllSolutions(SearchBudget.unlimited().withTimeout(Duration.ofSeconds(Long.MAX_VALUE))).isComplete());
+
+        SearchResult<Optional<Map<Queen, Integer>>> one = problem.backTrackOneSolution(SearchBudget.unlimited());
+        assertTrue(one.getResult().isPresent());
+        assertTrue(complete.getResult().contains(one.getResult().get()));
+        SearchResult<Optional<Map<Queen, Integer>>> none = queens(10).backTrackOneSolution(SearchBudget.unlimited().withMaxExpansions(2));
+        assertFalse(none.getResult().isPresent());
+        assertEquals(SearchBudget.Status.EXPANSION_LIMIT_REACHED, none.getStatus());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            SearchResult<Set<Map<Queen, Integer>>> parallel = problem.backtrackAllSolutions(pool, 2, SearchBudget.unlimited().withMaxSolutions(5));
+            assertEquals(SearchBudget.Status.SOLUTION_LIMIT_REACHED, parallel.getStatus());
+            assertTrue(parallel.getResult().size() <= 5);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
 }
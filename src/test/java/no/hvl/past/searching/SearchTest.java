@@ -5,6 +5,7 @@ import no.hvl.past.util.Pair;
 import org.junit.jupiter.api.Test;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -278,6 +279,241 @@ public class SearchTest {
     }
 
 
+    @Test
+    public void testSearchBudget() {
+        int[] numbers = new int[9];
+        numbers[0] = 7;
+        numbers[1] = 2;
+        numbers[2] = 4;
+        numbers[3] = 5;
+        numbers[4] = 0;
+        numbers[5] = 6;
+        numbers[6] = 8;
+        numbers[7] = 3;
+        numbers[8] = 1;
+        BlockPuzzle blockPuzzle = new BlockPuzzle(numbers, 3);
+        SearchEngine<BlockPuzzle, BlockPuzzleMove> searchEngine = new SearchEngine<>(blockPuzzle);
+        SearchResult<Pair<List<BlockPuzzleMove>, Integer>> searchResult = searchEngine.searchWithTrace(SearchStrategy.Strategies.A_STAR,
+                blockPuzzle,
+                BlockPuzzle::isGoal,
+                move -> 0,
+                move -> move.current.perform(move).manhattanDistanceMetric(),
+                SearchBudget.unlimited().withMaxExpansions(3));
+        assertEquals(SearchBudget.Status.EXPANSION_LIMIT_REACHED, searchResult.getStatus());
+        assertTrue(searchResult.getResult().getFirst().isEmpty());
+        assertEquals(-1, searchResult.getResult().getSecond().intValue());
+
+        SearchBudget cancelled = SearchBudget.unlimited();
+        cancelled.cancel();
+        SearchResult<Optional<BlockPuzzle>> goal = searchEngine.searchForGoal(SearchStrategy.Strategies.BREADTH_FIRST_GRAPH,
+                blockPuzzle,
+                BlockPuzzle::isGoal,
+                move -> 1,
+                move -> 1,
+                cancelled);
+        assertEquals(SearchBudget.Status.CANCELLED, goal.getStatus());
+        assertFalse(goal.getResult().isPresent());
+
+        SearchResult<Optional<BlockPuzzle>> simple = searchEngine.simpleSearch(blockPuzzle, BlockPuzzle::isGoal, SearchBudget.unlimited().withMaxExpansions(10));
+        assertEquals(SearchBudget.Status.EXPANSION_LIMIT_REACHED, simple.getStatus());
+        assertFalse(simple.getResult().isPresent());
+    }
+
+    /**
+     * A grid where one can move right or down, with varying costs.
+     */
+    private static class Grid implements StateSpace<Integer, int[]> {
+        private final int size;
+
+        private Grid(int size) {
+            this.size = size;
+        }
+
+        private int cost(int x, int y) {
+            return 1 + (x * 7 + y * 3) % 5;
+        }
+
+        @Override
+        public List<int[]> availableActions(Integer current) {
+            int x = current % size;
+            int y = current / size;
+            List<int[]> result = new ArrayList<>();
+            if (x + 1 < size) {
+                result.add(new int[]{current, current + 1, cost(x, y), (size - 2 - x) + (size - 1 - y)});
+            }
+            if (y + 1 < size) {
+                result.add(new int[]{current, current + size, cost(y, x), (size - 1 - x) + (size - 2 - y)});
+            }
+            return result;
+        }
+
+        @Override
+        public Optional<Integer> applyAction(Integer current, int[] action) {
+            return action[0] == current ? Optional.of(action[1]) : Optional.empty();
+        }
+
+        @Override
+        public boolean isInfinite() {
+            return false;
+        }
+
+        private int cheapest() {
+            int[] best = new int[size * size];
+            for (int state = 1; state < size * size; state++) {
+                best[state] = Integer.MAX_VALUE;
+            }
+            for (int state = 0; state < size * size; state++) {
+                for (int[] action : availableActions(state)) {
+                    best[action[1]] = Math.min(best[action[1]], best[state] + action[2]);
+                }
+            }
+            return best[size * size - 1];
+        }
+    }
+
+    @Test
+    public void testIndexedFrontier() {
+        Grid grid = new Grid(25);
+        SearchEngine<Integer, int[]> searchEngine = new SearchEngine<>(grid);
+        int goal = 25 * 25 - 1;
+
+        SearchResult<Pair<List<int[]>, Integer>> uniform = searchEngine.searchWithTrace(SearchStrategy.Strategies.UNIFORM_COST,
+                0,
+                state -> state == goal,
+                action -> action[2],
+                action -> 0,
+                SearchBudget.unlimited());
+        assertEquals(grid.cheapest(), uniform.getResult().getSecond().intValue());
+        assertEquals(48, uniform.getResult().getFirst().size());
+        // every state is expanded at most once and is at most once in the frontier
+        assertTrue(uniform.getExpanded() <= 25 * 25);
+        assertTrue(uniform.getFrontierPeak() > 0);
+        assertTrue(uniform.getFrontierPeak() <= 2 * 25);
+
+        SearchResult<Pair<List<int[]>, Integer>> aStar = searchEngine.searchWithTrace(SearchStrategy.Strategies.A_STAR,
+                0,
+                state -> state == goal,
+                action -> action[2],
+                action -> action[3],
+                SearchBudget.unlimited());
+        assertEquals(grid.cheapest(), aStar.getResult().getSecond().intValue());
+        assertTrue(aStar.getExpanded() <= uniform.getExpanded());
+
+        IndexedHeap heap = new IndexedHeap();
+        heap.insertOrDecrease(3, 30);
+        heap.insertOrDecrease(1, 10);
+        heap.insertOrDecrease(40, 20);
+        assertFalse(heap.insertOrDecrease(3, 35));
+        assertTrue(heap.insertOrDecrease(3, 5));
+        assertEquals(3, heap.size());
+        assertEquals(3, heap.poll());
+        assertEquals(1, heap.poll());
+        assertEquals(40, heap.poll());
+        assertTrue(heap.isEmpty());
+    }
+
+    /**
+     * A complete binary tree over the numbers below the size, which can be searched backwards.
+     */
+    private static class BinaryTree implements StateSpace<Integer, Integer> {
+        private final int size;
+
+        private BinaryTree(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public List<Integer> availableActions(Integer current) {
+            List<Integer> result = new ArrayList<>();
+            for (int child = 2 * current + 1; child <= 2 * current + 2 && child < size; child++) {
+                result.add(child);
+            }
+            return result;
+        }
+
+        @Override
+        public Optional<Integer> applyAction(Integer current, Integer action) {
+            return (action - 1) / 2 == current ? Optional.of(action) : Optional.empty();
+        }
+
+        @Override
+        public boolean isInfinite() {
+            return false;
+        }
+
+        @Override
+        public boolean isReversible() {
+            return true;
+        }
+
+        @Override
+        public List<Integer> incomingActions(Integer current) {
+            return current == 0 ? Collections.emptyList() : Collections.singletonList(current);
+        }
+
+        @Override
+        public Optional<Integer> revertAction(Integer current, Integer action) {
+            return action.equals(current) ? Optional.of((current - 1) / 2) : Optional.empty();
+        }
+    }
+
+    @Test
+    public void testBidirectionalSearch() {
+        BinaryTree tree = new BinaryTree(1 << 12);
+        SearchEngine<Integer, Integer> searchEngine = new SearchEngine<>(tree);
+        int leaf = (1 << 12) - 2;
+
+        SearchResult<Optional<List<Integer>>> bidirectional = searchEngine.bidirectionalSearch(0, leaf, SearchBudget.unlimited());
+        List<Integer> path = bidirectional.getResult().get();
+        assertEquals(11, path.size());
+        int state = 0;
+        for (int action : path) {
+            state = tree.applyAction(state, action).get();
+        }
+        assertEquals(leaf, state);
+
+        SearchResult<Optional<Integer>> forward = searchEngine.searchForGoal(SearchStrategy.Strategies.BREADTH_FIRST_GRAPH,
+                0,
+                s -> s == leaf,
+                action -> 1,
+                action -> 1,
+                SearchBudget.unlimited());
+        assertTrue(forward.getResult().isPresent());
+        // about the square root of the 4096 states
+        assertTrue(bidirectional.getExpanded() < 64);
+
+        assertFalse(searchEngine.bidirectionalSearch(5, 6, SearchBudget.unlimited()).getResult().isPresent());
+        assertTrue(searchEngine.bidirectionalSearch(7, 7, SearchBudget.unlimited()).getResult().get().isEmpty());
+        assertFalse(searchEngine.bidirectionalSearch(0, leaf, SearchBudget.unlimited().withMaxExpansions(3)).getResult().isPresent());
+    }
+
+    @Test
+    public void testParallelBreadthFirstSearch() {
+        BinaryTree tree = new BinaryTree((1 << 14) - 1);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelBreadthFirstSearch<Integer, Integer> search = new ParallelBreadthFirstSearch<>(tree, pool);
+            List<Set<Integer>> layers = search.layers(Collections.singleton(0));
+            assertEquals(14, layers.size());
+            for (int depth = 0; depth < 14; depth++) {
+                assertEquals(1 << depth, layers.get(depth).size());
+                assertTrue(layers.get(depth).contains((1 << depth) - 1));
+            }
+            // the subtrees below 1 and 2 cover everything but the root
+            assertEquals((1 << 14) - 2, search.reachable(Arrays.asList(1, 2)).size());
+            assertEquals((1 << 13) - 1, search.reachable(Arrays.asList(1, 3, 4)).size());
+
+            SearchResult<Set<Integer>> partial = search.reachable(Collections.singleton(0), SearchBudget.unlimited().withMaxExpansions(1000));
+            assertEquals(SearchBudget.Status.EXPANSION_LIMIT_REACHED, partial.getStatus());
+            assertTrue(partial.getResult().size() < (1 << 14) - 1);
+            assertEquals(1000, partial.getExpanded());
+
+            assertEquals((1 << 14) - 1, search.layers(Collections.singleton(0), SearchBudget.unlimited()).getExpanded());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     @Test
     public void testBlockPuzzleCornerCase() {
         int[] numbers = new int[9];
@@ -4,10 +4,13 @@ import com.google.common.collect.Sets;
 import org.junit.jupiter.api.Test;
 
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 
 public class PartititionTest {
@@ -24,4 +27,55 @@ public class PartititionTest {
         assertEquals(1, result.size());
         assertEquals(input, result.iterator().next());
     }
+
+    @Test
+    public void testSeveralClasses() {
+        PartitionAlgorithm<String> alg = new PartitionAlgorithm<>(Sets.newHashSet("A", "B", "C", "D", "E"));
+        alg.relate("A", "C");
+        alg.relate("D", "E");
+        alg.relate("E", "D");
+        alg.relate("B", "B");
+        assertTrue(alg.related("C", "A"));
+        assertFalse(alg.related("A", "D"));
+        assertEquals(Sets.newHashSet(Sets.newHashSet("A", "C"), Sets.newHashSet("B"), Sets.newHashSet("D", "E")), alg.getResult());
+
+        alg.relate("B", "C", "X", "E");
+        assertEquals(Collections.singleton(Sets.newHashSet("A", "B", "C", "D", "E", "X")), alg.getResult());
+    }
+
+    @Test
+    public void testLongChain() {
+        int n = 200000;
+        List<Integer> input = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            input.add(i);
+        }
+        PartitionAlgorithm<Integer> alg = new PartitionAlgorithm<>(input);
+        for (int i = 2; i < n; i++) {
+            // two long chains: the even and the odd numbers
+            alg.relate(i, i - 2);
+        }
+        Set<Set<Integer>> result = alg.getResult();
+        assertEquals(2, result.size());
+        assertTrue(result.stream().allMatch(c -> c.size() == n / 2));
+        assertTrue(alg.related(0, n - 2));
+        assertFalse(alg.related(1, n - 2));
+    }
+
+    @Test
+    public void testIntPartition() {
+        IntPartitionAlgorithm alg = new IntPartitionAlgorithm(6);
+        assertEquals(6, alg.classCount());
+        assertTrue(alg.relate(5, 3));
+        assertTrue(alg.relate(0, 3));
+        assertFalse(alg.relate(5, 0));
+        assertTrue(alg.relate(1, 2));
+        assertEquals(3, alg.classCount());
+        int extra = alg.add();
+        assertEquals(6, extra);
+        alg.relate(extra, 4);
+        assertArrayEquals(new int[][]{{0, 3, 5}, {1, 2}, {4, 6}}, alg.getResult());
+        assertArrayEquals(new int[]{0, 1, 1, 0, 2, 0, 2}, alg.classOf());
+        assertEquals(alg.find(5), alg.find(0));
+    }
 }